@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business;
+
+import java.util.Map;
+import org.apache.roller.weblogger.WebloggerException;
+
+
+/**
+ * Default HitCountAggregator, which keeps the shared counts in the
+ * roller_hitcounts table.
+ *
+ * Hits are added with relative updates of the count columns, so the
+ * database takes care of concurrent increments from other nodes, and each
+ * call is committed as a single transaction.
+ */
+public class DatabaseHitCountAggregator implements HitCountAggregator {
+    
+    public DatabaseHitCountAggregator() {}
+    
+    
+    @Override
+    public void addHits(Map<String, Long> hits) throws WebloggerException {
+        
+        Weblogger roller = WebloggerFactory.getWeblogger();
+        try {
+            roller.getWeblogEntryManager().incrementHitCounts(hits);
+            roller.flush();
+        } finally {
+            // roll back whatever was not committed
+            roller.release();
+        }
+    }
+    
+    
+    @Override
+    public void resetHits() throws WebloggerException {
+        
+        Weblogger roller = WebloggerFactory.getWeblogger();
+        try {
+            roller.getWeblogEntryManager().resetAllHitCounts();
+            roller.flush();
+        } finally {
+            roller.release();
+        }
+    }
+    
+}
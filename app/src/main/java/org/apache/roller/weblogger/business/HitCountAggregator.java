@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business;
+
+import java.util.Map;
+import org.apache.roller.weblogger.WebloggerException;
+
+
+/**
+ * Merges the hits counted by this node into the hit counts shared by all
+ * nodes of a cluster.
+ *
+ * Each node tallies its own hits in the HitCountQueue and regularly hands
+ * them over to the aggregator.  Several nodes may do so at the same time,
+ * so implementations must add hits to the shared counts as increments
+ * rather than by reading a count and writing back a new one, which would
+ * lose the hits added by another node in between.
+ *
+ * The implementation is chosen with the hitcount.aggregator.classname
+ * property and needs a public no-argument constructor.
+ */
+public interface HitCountAggregator {
+    
+    /**
+     * Add hits to the shared counts.  Either all of them are added or, if
+     * an exception is thrown, none are, since the caller will try again
+     * with the same hits later on.
+     *
+     * @param hits Number of hits to add, keyed by weblog id.
+     * @throws WebloggerException If there was a problem with the backend.
+     */
+    void addHits(Map<String, Long> hits) throws WebloggerException;
+    
+    
+    /**
+     * Reset the shared counts of all weblogs back to 0.
+     *
+     * @throws WebloggerException If there was a problem with the backend.
+     */
+    void resetHits() throws WebloggerException;
+    
+}
@@ -18,25 +18,35 @@
 
 package org.apache.roller.weblogger.business;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.business.runnable.ContinuousWorkerThread;
 import org.apache.roller.weblogger.business.runnable.HitCountProcessingJob;
 import org.apache.roller.weblogger.business.runnable.WorkerThread;
+import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.util.Reflection;
 
 
 /**
  * Queue's up incoming hit counts so that they can be recorded to the db in
  * an asynchronous manner at give intervals.
  *
+ * Hits are tallied as they come in, in a map of weblog id to counter
+ * which is swapped out for an empty one each time the hits are drained, so
+ * recording a hit never blocks.
+ *
  * We also start up a single thread which runs continously to take the queued
- * hit counts, tally them, and record them into the db.
+ * hit counts and hand them to the HitCountAggregator, which merges the hits
+ * counted by every node of a cluster into the counts in the db.
  *
  * TODO: we may want to make this an interface that is pluggable if there is
  *   some indication that users want to override this implementation.
@@ -48,7 +58,16 @@ public final class HitCountQueue {
     private static HitCountQueue instance = null;
     
     private WorkerThread worker = null;
-    private List<String> queue = null;
+    
+    private final HitCountAggregator aggregator;
+    
+    // hits per weblog id since the last drain
+    private final AtomicReference<Map<String, LongAdder>> hits =
+            new AtomicReference<>(new ConcurrentHashMap<>());
+    
+    // the map swapped out by the last drain, which a hit being recorded
+    // while we swapped may still have gone into
+    private Map<String, LongAdder> drainedHits = Collections.emptyMap();
     
     
     static {
@@ -58,6 +77,19 @@ public final class HitCountQueue {
     
     // non-instantiable because we are a singleton
     private HitCountQueue() {
+        this(createAggregator(), true);
+    }
+    
+    
+    // package-private so that tests can use a queue without a worker
+    HitCountQueue(HitCountAggregator aggregator, boolean startWorker) {
+        
+        this.aggregator = aggregator;
+        
+        if (!startWorker) {
+            return;
+        }
+        
         int sleepTime = 3 * RollerConstants.MIN_IN_MS;
         String sleep = WebloggerConfig.getProperty("hitcount.queue.sleepTime", "180");
         
@@ -68,9 +100,6 @@ public final class HitCountQueue {
             log.warn("Invalid sleep time ["+sleep+"], using default");
         }
         
-        // create the hits queue
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
-        
         // start up a worker to process the hits at intervals
         HitCountProcessingJob job = new HitCountProcessingJob();
         worker = new ContinuousWorkerThread("HitCountQueueProcessor", job, sleepTime);
@@ -78,31 +107,87 @@ public final class HitCountQueue {
     }
     
     
+    private static HitCountAggregator createAggregator() {
+        
+        String name = WebloggerConfig.getProperty("hitcount.aggregator.classname");
+        if (name != null) {
+            try {
+                return (HitCountAggregator) Reflection.newInstance(name);
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                log.error("Unable to instantiate hit count aggregator ["+name+"]"+
+                        " falling back on default", e);
+            }
+        }
+        return new DatabaseHitCountAggregator();
+    }
+    
+    
     public static HitCountQueue getInstance() {
         return instance;
     }
     
     
+    public HitCountAggregator getAggregator() {
+        return aggregator;
+    }
+    
+    
     public void processHit(Weblog weblog) {
         
-        // if the weblog isn't null then just drop its handle in the queue
-        // each entry in the queue is a weblog handle and indicates a single hit
+        // if the weblog isn't null then just count a hit against its id
         if(weblog != null) {
-            this.queue.add(weblog.getHandle());
+            this.hits.get().computeIfAbsent(weblog.getId(), id -> new LongAdder()).increment();
         }
     }
     
     
-    public List<String> getHits() {
-        return new ArrayList<>(this.queue);
+    /**
+     * Get the hits recorded since the last call, tallied by weblog id,
+     * and start counting from zero again.
+     */
+    public synchronized Map<String, Long> drainHits() {
+        
+        Map<String, LongAdder> current = this.hits.getAndSet(new ConcurrentHashMap<>());
+        
+        Map<String, Long> tally = new HashMap<>();
+        addHits(tally, this.drainedHits);
+        addHits(tally, current);
+        this.drainedHits = current;
+        
+        return tally;
     }
     
     
     /**
-     * Reset the queued hits.
+     * Hand the hits recorded since the last call to the aggregator.  If
+     * that fails they are queued again, to go along with the next flush.
      */
-    public synchronized void resetHits() {
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
+    public void flush() throws WebloggerException {
+        
+        Map<String, Long> tally = drainHits();
+        if (tally.isEmpty()) {
+            return;
+        }
+        
+        try {
+            aggregator.addHits(tally);
+        } catch (WebloggerException | RuntimeException e) {
+            Map<String, LongAdder> current = this.hits.get();
+            for (Map.Entry<String, Long> count : tally.entrySet()) {
+                current.computeIfAbsent(count.getKey(), id -> new LongAdder()).add(count.getValue());
+            }
+            throw e;
+        }
+    }
+    
+    
+    private static void addHits(Map<String, Long> tally, Map<String, LongAdder> counters) {
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            long count = counter.getValue().sumThenReset();
+            if (count > 0) {
+                tally.merge(counter.getKey(), count, Long::sum);
+            }
+        }
     }
     
     
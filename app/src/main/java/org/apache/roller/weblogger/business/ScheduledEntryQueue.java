@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
+
+
+/**
+ * Keeps the publication times of SCHEDULED weblog entries in memory, so that
+ * they can be published right when they are due instead of polling the
+ * database for them.
+ *
+ * The queue is kept up to date as entries are saved and removed on this
+ * server.  Once started it wakes up when the first entry is due and hands
+ * control to whoever started it, which takes the due entries and publishes
+ * them.  Entries scheduled on other cluster members only get here through
+ * replaceAll(), called by a periodic check of the database.
+ */
+public final class ScheduledEntryQueue {
+    
+    private static Log log = LogFactory.getLog(ScheduledEntryQueue.class);
+    
+    private static final ScheduledEntryQueue instance = new ScheduledEntryQueue();
+    
+    // wait this long before trying again when due entries were not taken
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(10);
+    
+    // entries by publication time, and the same entries by id
+    private final TreeSet<Due> queue = new TreeSet<>();
+    private final Map<String, Due> entries = new HashMap<>();
+    
+    // counts calls to schedule(), see getChanges()
+    private long changes = 0;
+    
+    private ScheduledThreadPoolExecutor timer = null;
+    private Runnable onDue = null;
+    private ScheduledFuture<?> wakeUp = null;
+    private long wakeUpTime = Long.MAX_VALUE;
+    
+    
+    // package-private so that tests can have a queue of their own
+    ScheduledEntryQueue() {
+    }
+    
+    
+    public static ScheduledEntryQueue getInstance() {
+        return instance;
+    }
+    
+    
+    /**
+     * Start waking up when entries are due.
+     *
+     * @param onDue run on the queue's own thread whenever entries are due,
+     *            expected to takeDue() them.
+     */
+    public synchronized void start(Runnable onDue) {
+        if (timer != null) {
+            return;
+        }
+        this.onDue = onDue;
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Roller Scheduled Entry Publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        wakeUpAt(getNextDue());
+    }
+    
+    
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+            wakeUp = null;
+            wakeUpTime = Long.MAX_VALUE;
+        }
+    }
+    
+    
+    /**
+     * Queue the entry if it is scheduled, or drop it from the queue if not.
+     */
+    public void update(WeblogEntry entry) {
+        if (PubStatus.SCHEDULED.equals(entry.getStatus()) && entry.getPubTime() != null) {
+            schedule(entry.getId(), entry.getPubTime());
+        } else {
+            remove(entry.getId());
+        }
+    }
+    
+    
+    public synchronized void schedule(String entryId, Date pubTime) {
+        Due due = new Due(entryId, pubTime.getTime(), ++changes);
+        Due previous = entries.put(entryId, due);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        queue.add(due);
+        wakeUpAt(due.time);
+    }
+    
+    
+    public synchronized void remove(String entryId) {
+        Due previous = entries.remove(entryId);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+    }
+    
+    
+    /**
+     * Get a marker for the state of the queue, to take before reading the
+     * scheduled entries from the database, see replaceAll().
+     */
+    public synchronized long getChanges() {
+        return changes;
+    }
+    
+    
+    /**
+     * Replace the queue with the given entries, as read from the database.
+     * Entries scheduled since the given marker was taken are kept as they
+     * are, the read may have missed them.  Entries removed since may come
+     * back, publishing skips them once it reads them again.
+     *
+     * @param scheduled publication time by entry id.
+     * @param since marker from getChanges() taken before the read.
+     */
+    public synchronized void replaceAll(Map<String, Date> scheduled, long since) {
+        List<Due> newer = new ArrayList<>();
+        for (Due due : entries.values()) {
+            if (due.change > since) {
+                newer.add(due);
+            }
+        }
+        queue.clear();
+        entries.clear();
+        for (Map.Entry<String, Date> entry : scheduled.entrySet()) {
+            Due due = new Due(entry.getKey(), entry.getValue().getTime(), since);
+            entries.put(due.entryId, due);
+            queue.add(due);
+        }
+        for (Due due : newer) {
+            Due previous = entries.put(due.entryId, due);
+            if (previous != null) {
+                queue.remove(previous);
+            }
+            queue.add(due);
+        }
+        wakeUpAt(getNextDue());
+    }
+    
+    
+    /**
+     * Remove and return the ids of all entries due by the given time.
+     */
+    public synchronized List<String> takeDue(long now) {
+        List<String> due = new ArrayList<>();
+        while (!queue.isEmpty() && queue.first().time <= now) {
+            Due first = queue.pollFirst();
+            entries.remove(first.entryId);
+            due.add(first.entryId);
+        }
+        return due;
+    }
+    
+    
+    /**
+     * Time the first entry is due, or Long.MAX_VALUE if none are queued.
+     */
+    public synchronized long getNextDue() {
+        return queue.isEmpty() ? Long.MAX_VALUE : queue.first().time;
+    }
+    
+    
+    public synchronized int size() {
+        return queue.size();
+    }
+    
+    
+    synchronized boolean isQueued(String entryId) {
+        return entries.containsKey(entryId);
+    }
+    
+    
+    // make sure we wake up no later than the given time
+    private void wakeUpAt(long time) {
+        
+        if (timer == null || time == Long.MAX_VALUE || time >= wakeUpTime) {
+            return;
+        }
+        
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+        }
+        long delay = Math.max(time - System.currentTimeMillis(), 0);
+        wakeUpTime = time;
+        wakeUp = timer.schedule(this::wokeUp, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    
+    private void wokeUp() {
+        
+        Runnable callback;
+        synchronized (this) {
+            wakeUp = null;
+            wakeUpTime = Long.MAX_VALUE;
+            callback = onDue;
+        }
+        
+        try {
+            callback.run();
+        } catch (Exception e) {
+            log.error("Error publishing scheduled entries", e);
+        }
+        
+        synchronized (this) {
+            long next = getNextDue();
+            if (next <= System.currentTimeMillis()) {
+                // entries were left behind, don't spin on them
+                next = System.currentTimeMillis() + RETRY_DELAY;
+            }
+            wakeUpAt(next);
+        }
+    }
+    
+    
+    /**
+     * An entry and when it is due.
+     */
+    private static final class Due implements Comparable<Due> {
+        
+        private final String entryId;
+        private final long time;
+        
+        // value of the change counter when queued
+        private final long change;
+        
+        Due(String entryId, long time, long change) {
+            this.entryId = entryId;
+            this.time = time;
+            this.change = change;
+        }
+        
+        @Override
+        public int compareTo(Due other) {
+            int result = Long.compare(time, other.time);
+            return result != 0 ? result : entryId.compareTo(other.entryId);
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Due && compareTo((Due) other) == 0;
+        }
+        
+        @Override
+        public int hashCode() {
+            return entryId.hashCode();
+        }
+    }
+    
+}
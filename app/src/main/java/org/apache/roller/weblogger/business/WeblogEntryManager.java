@@ -54,6 +54,13 @@ public interface WeblogEntryManager {
      */
     WeblogEntry getWeblogEntry(String id) throws WebloggerException;
     
+    /**
+     * Get weblog entry by id, freshly read and with its row locked until
+     * the changes are flushed, so that other cluster members changing the
+     * same entry wait for them.
+     */
+    WeblogEntry getWeblogEntryForUpdate(String id) throws WebloggerException;
+    
     /** 
      * Get weblog entry by anchor. 
      */
@@ -70,6 +77,19 @@ public interface WeblogEntryManager {
     List<WeblogEntry> getWeblogEntries(WeblogEntrySearchCriteria wesc)
             throws WebloggerException;
 
+    /**
+     * Get published entries in id order, starting after the given id.  Unlike
+     * paging by offset, each page costs the same however far into the entries
+     * it is, so this suits walking through all of them in batches.
+     * @param weblog Weblog to get entries of, or null for all weblogs
+     * @param afterId Id of the last entry of the previous batch, or null to start
+     * @param max Maximum number of entries to return
+     * @return List of WeblogEntry objects ordered by id
+     * @throws WebloggerException
+     */
+    List<WeblogEntry> getPublishedEntriesAfter(Weblog weblog, String afterId, int max)
+            throws WebloggerException;
+
     /**
      * Get Weblog Entries grouped by day.
      * @param wesc WeblogEntrySearchCriteria object listing desired search parameters
@@ -357,6 +377,20 @@ public interface WeblogEntryManager {
         throws WebloggerException;
     
     
+    /**
+     * Increment the hit counts of many weblogs at once.
+     *
+     * Unlike calling incrementHitCount() for each weblog this doesn't load
+     * each hit count, weblogs incremented by the same amount are updated by
+     * a single statement.
+     *
+     * @param amounts How much to increment by, keyed by weblog id.
+     * @throws WebloggerException If there was a problem with the backend.
+     */
+    void incrementHitCounts(Map<String, Long> amounts)
+        throws WebloggerException;
+    
+    
     /**
      * Reset the hit counts for all weblogs.  This sets the counts back to 0.
      *
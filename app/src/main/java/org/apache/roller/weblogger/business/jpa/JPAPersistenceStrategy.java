@@ -18,8 +18,10 @@
 
 package org.apache.roller.weblogger.business.jpa;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,6 +30,7 @@ import org.apache.roller.weblogger.config.WebloggerConfig;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.FlushModeType;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.Persistence;
 import jakarta.persistence.PersistenceException;
 import jakarta.persistence.Query;
@@ -52,6 +55,11 @@ public class JPAPersistenceStrategy {
      */
     private final ThreadLocal<EntityManager> threadLocalEntityManager = new ThreadLocal<>();
     
+    /**
+     * Work to do once the current transaction of the thread commits.
+     */
+    private final ThreadLocal<List<Runnable>> threadLocalAfterCommit = new ThreadLocal<>();
+    
     /**
      * The EntityManagerFactory for this Roller instance.
      */
@@ -130,18 +138,45 @@ public class JPAPersistenceStrategy {
      * @throws org.apache.roller.weblogger.WebloggerException on any error
      */
     public void flush() throws WebloggerException {
+        List<Runnable> afterCommit = threadLocalAfterCommit.get();
+        threadLocalAfterCommit.remove();
         try {
             EntityManager em = getEntityManager(true);
             em.getTransaction().commit();
         } catch (PersistenceException pe) {
             throw new WebloggerException(pe);
         }
+        if (afterCommit != null) {
+            for (Runnable work : afterCommit) {
+                try {
+                    work.run();
+                } catch (Exception e) {
+                    logger.error("error running work after commit", e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Run the given work once the current transaction commits, or never
+     * if it is rolled back or released uncommitted.  Used for state kept
+     * outside the database which must not get ahead of it.
+     * @param work what to run on this thread right after the commit
+     */
+    public void afterCommit(Runnable work) {
+        List<Runnable> afterCommit = threadLocalAfterCommit.get();
+        if (afterCommit == null) {
+            afterCommit = new ArrayList<>();
+            threadLocalAfterCommit.set(afterCommit);
+        }
+        afterCommit.add(work);
     }
     
     /**
      * Release database session, rolls back any uncommitted changes.
      */
     public void release() {
+        threadLocalAfterCommit.remove();
         EntityManager em = null;
         try {
             em = getEntityManager(false);
@@ -223,6 +258,19 @@ public class JPAPersistenceStrategy {
         return em.find(clazz, id);
     }
     
+    /**
+     * Retrieve object and lock its row until the current transaction ends,
+     * so that other cluster members wanting the same lock wait for it.
+     * @param clazz the class of object to retrieve
+     * @param id the id of the object to retrieve
+     * @return the object retrieved
+     * @throws WebloggerException on any error retrieving object
+     */
+    public Object loadForUpdate(Class<?> clazz, String id) throws WebloggerException {
+        EntityManager em = getEntityManager(true);
+        return em.find(clazz, id, LockModeType.PESSIMISTIC_WRITE);
+    }
+    
     /**
      * Return true if a transaction is active on the current EntityManager.
      * @param em the persistence manager
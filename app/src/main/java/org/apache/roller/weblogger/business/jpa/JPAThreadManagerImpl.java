@@ -108,6 +108,15 @@ public class JPAThreadManagerImpl extends ThreadManagerImpl {
                     LOG.debug("lease expiration = "+leaseExpiration);
                 }
 
+                // another cluster member may have run it for this period
+                // already, if it had the lease since we looked then the
+                // update below fails anyway since timeAcquired changed
+                if(task.isOncePerPeriod() && taskLock.getLastRun() != null &&
+                        !taskLock.getLastRun().before(runTime)) {
+                    LOG.debug("Task already ran for this period - " + task.getName());
+                    return false;
+                }
+
                 Query q = strategy.getNamedUpdate(
                         "TaskLock.updateClient&Timeacquired&Timeleased&LastRunByName&Timeacquired");
                 q.setParameter(1, task.getClientId());
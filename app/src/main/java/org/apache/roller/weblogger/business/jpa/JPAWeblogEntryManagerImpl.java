@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.business.jpa;
 import java.util.*;
 import java.text.SimpleDateFormat;
 import java.sql.Timestamp;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
@@ -31,6 +32,7 @@ import org.apache.commons.logging.LogFactory;
 
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.ScheduledEntryQueue;
 import org.apache.roller.weblogger.business.Weblogger;
 import org.apache.roller.weblogger.pojos.CommentSearchCriteria;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
@@ -51,6 +53,7 @@ import org.apache.roller.weblogger.pojos.WeblogEntryAttribute;
 import org.apache.roller.weblogger.pojos.StatCountCountComparator;
 import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -78,6 +81,9 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     private static final Comparator<StatCount> STAT_COUNT_COUNT_REVERSE_COMPARATOR =
             Collections.reverseOrder(StatCountCountComparator.getInstance());
     
+    // how many ids we put into the IN clause of a single query
+    private static final int MAX_IN_CLAUSE_SIZE = 500;
+    
     
     @com.google.inject.Inject
     protected JPAWeblogEntryManagerImpl(Weblogger roller, JPAPersistenceStrategy strategy) {
@@ -240,6 +246,10 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         
         this.strategy.store(entry);
         
+        // have the entry published when it is due, or no longer if it isn't,
+        // once that is committed
+        strategy.afterCommit(() -> ScheduledEntryQueue.getInstance().update(entry));
+        
         // update weblog last modified date.  date updated by saveWebsite()
         if(entry.isPublished()) {
             roller.getWeblogManager().saveWeblog(entry.getWebsite());
@@ -285,6 +295,8 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
 
         // remove entry
         this.strategy.remove(entry);
+        String entryId = entry.getId();
+        strategy.afterCommit(() -> ScheduledEntryQueue.getInstance().remove(entryId));
         
         // update weblog last modified date.  date updated by saveWebsite()
         if (entry.isPublished()) {
@@ -380,6 +392,8 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     @Override
     public List<WeblogEntry> getWeblogEntries(WeblogEntrySearchCriteria wesc) throws WebloggerException {
 
+        CacheDependencies.record(CacheDependencies.entries(wesc.getWeblog()));
+
         WeblogCategory cat = null;
         if (StringUtils.isNotEmpty(wesc.getCatName()) && wesc.getWeblog() != null) {
             cat = getWeblogCategoryByName(wesc.getWeblog(), wesc.getCatName());
@@ -474,12 +488,35 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         return query.getResultList();
     }
     
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<WeblogEntry> getPublishedEntriesAfter(Weblog weblog, String afterId, int max)
+    throws WebloggerException {
+        TypedQuery<WeblogEntry> query;
+        if (weblog != null) {
+            query = strategy.getNamedQuery(
+                    "WeblogEntry.getByWebsite&Status&IdGreaterThanOrderById", WeblogEntry.class);
+            query.setParameter(3, weblog);
+        } else {
+            query = strategy.getNamedQuery(
+                    "WeblogEntry.getByStatus&IdGreaterThanOrderById", WeblogEntry.class);
+        }
+        query.setParameter(1, PubStatus.PUBLISHED);
+        // ids are never empty, so this matches everything
+        query.setParameter(2, afterId != null ? afterId : "");
+        query.setMaxResults(max);
+        return query.getResultList();
+    }
+    
     /**
      * @inheritDoc
      */
     @Override
     public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
     throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.entries(null));
         TypedQuery<WeblogEntry> query = strategy.getNamedQuery(
                 "WeblogEntry.getByPinnedToMain&statusOrderByPubTimeDesc", WeblogEntry.class);
         query.setParameter(1, Boolean.TRUE);
@@ -629,6 +666,12 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     @Override
     public List<WeblogEntryComment> getComments(CommentSearchCriteria csc) throws WebloggerException {
         
+        if (csc.getEntry() != null) {
+            CacheDependencies.record(CacheDependencies.comments(csc.getEntry().getId()));
+        } else {
+            CacheDependencies.record(CacheDependencies.weblogComments(csc.getWeblog()));
+        }
+        
         List<Object> params = new ArrayList<>();
         int size = 0;
         StringBuilder queryString = new StringBuilder();
@@ -763,6 +806,14 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         return (WeblogEntry)strategy.load(WeblogEntry.class, id);
     }
     
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public WeblogEntry getWeblogEntryForUpdate(String id) throws WebloggerException {
+        return (WeblogEntry)strategy.loadForUpdate(WeblogEntry.class, id);
+    }
+    
     /**
      * @inheritDoc
      */
@@ -818,6 +869,8 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     public List<StatCount> getMostCommentedWeblogEntries(Weblog website,
             Date startDate, Date endDate, int offset,
             int length) throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.entries(website));
+        CacheDependencies.record(CacheDependencies.weblogComments(website));
         TypedQuery<WeblogEntryComment> query;
         List<WeblogEntryComment> queryResults;
 
@@ -880,6 +933,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     @Override
     public WeblogEntry getNextEntry(WeblogEntry current,
             String catName, String locale) throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.entries(current.getWebsite()));
         WeblogEntry entry = null;
         List<WeblogEntry> entryList = getNextPrevEntries(current, catName, locale, 1, true);
         if (entryList != null && !entryList.isEmpty()) {
@@ -894,6 +948,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     @Override
     public WeblogEntry getPreviousEntry(WeblogEntry current,
             String catName, String locale) throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.entries(current.getWebsite()));
         WeblogEntry entry = null;
         List<WeblogEntry> entryList = getNextPrevEntries(current, catName, locale, 1, false);
         if (entryList != null && !entryList.isEmpty()) {
@@ -933,6 +988,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     @Override
     public List<TagStat> getPopularTags(Weblog website, Date startDate, int offset, int limit)
     throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.entries(website));
         TypedQuery<TagStat> query;
         List<TagStat> queryResults;
         
@@ -1001,6 +1057,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
     @Override
     public List<TagStat> getTags(Weblog website, String sortBy,
             String startsWith, int offset, int limit) throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.entries(website));
         Query query;
         List<?> queryResults;
         boolean sortByName = sortBy == null || !sortBy.equals("count");
@@ -1063,6 +1120,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
      */
     @Override
     public boolean getTagComboExists(List<String> tags, Weblog weblog) throws WebloggerException{
+        CacheDependencies.record(CacheDependencies.entries(weblog));
         
         if (tags == null || tags.isEmpty()) {
             return false;
@@ -1301,6 +1359,110 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
         }
     }
     
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void incrementHitCounts(Map<String, Long> amounts)
+    throws WebloggerException {
+        
+        // every node takes its row locks in weblog id order, so concurrent
+        // flushes of overlapping weblogs wait for each other, never deadlock
+        SortedMap<String, Integer> increments = new TreeMap<>();
+        for (Map.Entry<String, Long> amount : amounts.entrySet()) {
+            int increment = (int) Math.max(Integer.MIN_VALUE,
+                    Math.min(Integer.MAX_VALUE, amount.getValue()));
+            if (increment != 0) {
+                increments.put(amount.getKey(), increment);
+            }
+        }
+        
+        if (increments.isEmpty()) {
+            return;
+        }
+        
+        // lock the existing hit counts first, batch after batch in id order,
+        // so the updates below take no further locks (no ORDER BY, Derby
+        // refuses it together with FOR UPDATE)
+        Set<String> existing = new HashSet<>();
+        List<String> weblogIds = new ArrayList<>(increments.keySet());
+        for (List<String> batch : batches(weblogIds)) {
+            TypedQuery<WeblogHitCount> q = strategy.getNamedQueryCommitFirst(
+                    "WeblogHitCount.getByWeblogIdIn", WeblogHitCount.class);
+            q.setParameter(1, batch);
+            q.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+            for (WeblogHitCount hitCount : q.getResultList()) {
+                existing.add(hitCount.getWeblog().getId());
+            }
+        }
+        
+        // then create the missing ones, again in id order, and group the
+        // rest by amount since most get the same few amounts
+        Map<Integer, List<String>> weblogsByAmount = new TreeMap<>();
+        for (Map.Entry<String, Integer> increment : increments.entrySet()) {
+            String weblogId = increment.getKey();
+            int amount = increment.getValue();
+            // a failed create means another node made it since we looked
+            if (existing.contains(weblogId)
+                    || (amount > 0 && !createHitCount(weblogId, amount))) {
+                weblogsByAmount.computeIfAbsent(amount, k -> new ArrayList<>()).add(weblogId);
+            }
+        }
+        
+        // one update for all counts incremented by the same amount, all
+        // rows it touches are locked by us already
+        for (Map.Entry<Integer, List<String>> group : weblogsByAmount.entrySet()) {
+            for (List<String> batch : batches(group.getValue())) {
+                Query q = strategy.getNamedUpdate("WeblogHitCount.updateDailyHitsIncrementByWeblogIdIn");
+                q.setParameter(1, group.getKey());
+                q.setParameter(2, batch);
+                q.executeUpdate();
+            }
+        }
+    }
+    
+    
+    /**
+     * Create the hit count of a weblog which had none when we looked.
+     *
+     * Other nodes of a cluster may be doing the same at this moment, so we
+     * lock the weblog's row and look again before inserting.  Returns false
+     * if the hit count exists by now, true if it was created or the weblog
+     * is gone.
+     */
+    private boolean createHitCount(String weblogId, int amount)
+    throws WebloggerException {
+        
+        Weblog weblog = (Weblog) strategy.loadForUpdate(Weblog.class, weblogId);
+        if (weblog == null) {
+            return true;
+        }
+        
+        // a locking read, so we see counts committed since our first look
+        TypedQuery<WeblogHitCount> q = strategy.getNamedQuery("WeblogHitCount.getByWeblog", WeblogHitCount.class);
+        q.setParameter(1, weblog);
+        q.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        if (!q.getResultList().isEmpty()) {
+            return false;
+        }
+        
+        WeblogHitCount hitCount = new WeblogHitCount();
+        hitCount.setWeblog(weblog);
+        hitCount.setDailyHits(amount);
+        strategy.store(hitCount);
+        return true;
+    }
+    
+    
+    // split ids into lists small enough for an IN clause
+    private static List<List<String>> batches(List<String> ids) {
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += MAX_IN_CLAUSE_SIZE) {
+            batches.add(ids.subList(i, Math.min(ids.size(), i + MAX_IN_CLAUSE_SIZE)));
+        }
+        return batches;
+    }
+    
     /**
      * @inheritDoc
      */
@@ -1333,6 +1495,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
      */
     @Override
     public long getCommentCount() throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.weblogComments(null));
         TypedQuery<Long> q = strategy.getNamedQuery(
                 "WeblogEntryComment.getCountAllDistinctByStatus", Long.class);
         q.setParameter(1, ApprovalStatus.APPROVED);
@@ -1344,6 +1507,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
      */
     @Override
     public long getCommentCount(Weblog website) throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.weblogComments(website));
         TypedQuery<Long> q = strategy.getNamedQuery(
                 "WeblogEntryComment.getCountDistinctByWebsite&Status", Long.class);
         q.setParameter(1, website);
@@ -1356,6 +1520,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
      */
     @Override
     public long getEntryCount() throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.entries(null));
         TypedQuery<Long> q = strategy.getNamedQuery(
                 "WeblogEntry.getCountDistinctByStatus", Long.class);
         q.setParameter(1, PubStatus.PUBLISHED);
@@ -1367,6 +1532,7 @@ public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
      */
     @Override
     public long getEntryCount(Weblog website) throws WebloggerException {
+        CacheDependencies.record(CacheDependencies.entries(website));
         TypedQuery<Long> q = strategy.getNamedQuery(
                 "WeblogEntry.getCountDistinctByStatus&Website", Long.class);
         q.setParameter(1, PubStatus.PUBLISHED);
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.runnable;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * A named pool of a fixed number of threads which runs queued work in order
+ * of TaskPriority, keeping statistics about how long work waits and runs.
+ *
+ * The queue is bounded.  When it is full whoever hands in more work waits
+ * for room, up to a timeout, so a producer of lots of work, like an import,
+ * is slowed down to the pace of the pool instead of piling up work or
+ * threads.  What happens after the timeout depends on the priority:
+ * interactive and normal work run on the calling thread, so nobody waits
+ * for longer than the timeout plus the work itself, and bulk work is
+ * rejected.  Work which is queued runs in order of priority.
+ */
+public class BoundedPriorityExecutor {
+
+    private static final Log log = LogFactory.getLog(BoundedPriorityExecutor.class);
+
+    private final String name;
+    private final int queueSize;
+    private final long offerTimeout;
+
+    private final ThreadPoolExecutor executor;
+
+    // free places in the queue
+    private final Semaphore queueSlots;
+
+    // set on the threads of this pool
+    private final ThreadLocal<Boolean> poolThread = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    // breaks ties between work of the same priority
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final long startTime = System.currentTimeMillis();
+
+
+    /**
+     * @param name names the threads of the pool and its statistics
+     * @param threads number of threads, which are started as needed
+     * @param queueSize how much work may wait for a thread
+     * @param offerTimeout milliseconds work waits for room in a full queue
+     */
+    public BoundedPriorityExecutor(String name, int threads, int queueSize, long offerTimeout) {
+
+        if (threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("executor " + name
+                    + " needs at least one thread and queue slot");
+        }
+
+        this.name = name;
+        this.queueSize = queueSize;
+        this.offerTimeout = offerTimeout;
+        this.queueSlots = new Semaphore(queueSize);
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), new NamedThreadFactory(name));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * Run the given work on the pool, blocking while the queue is full.
+     * Interactive and normal work which still finds the queue full after
+     * the offer timeout is run on the calling thread before this returns.
+     *
+     * @return a future which completes when the work is done.
+     * @throws InterruptedException if interrupted waiting for the queue.
+     * @throws RejectedExecutionException if the pool is shut down, or if
+     *             the queue is still full after the offer timeout for bulk
+     *             work.
+     */
+    public Future<?> submit(Runnable runnable, TaskPriority priority)
+            throws InterruptedException {
+
+        PrioritizedTask task = new PrioritizedTask(runnable, priority);
+        submitted.increment();
+
+        if (!queueSlots.tryAcquire(offerTimeout, TimeUnit.MILLISECONDS)) {
+            if (priority == TaskPriority.BULK) {
+                rejected.increment();
+                throw new RejectedExecutionException(name + " queue is full");
+            }
+            // don't keep the caller, often a request, waiting any longer
+            // than it takes to do the work right here
+            log.debug(name + " queue full, running task on calling thread");
+            callerRuns.increment();
+            task.run();
+            return task;
+        }
+        return enqueue(task);
+    }
+
+
+    /**
+     * Queue the given work only if there is room right now, never blocking
+     * the caller, for callers which must not wait such as the thread which
+     * completes a future.
+     *
+     * @return a future which completes when the work is done.
+     * @throws RejectedExecutionException if the queue is full or the pool
+     *             is shut down.
+     */
+    public Future<?> offer(Runnable runnable, TaskPriority priority) {
+
+        PrioritizedTask task = new PrioritizedTask(runnable, priority);
+        submitted.increment();
+
+        if (!queueSlots.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException(name + " queue is full");
+        }
+        return enqueue(task);
+    }
+
+
+    // hand a task which took a queue slot to the pool
+    private Future<?> enqueue(PrioritizedTask task) {
+
+        task.holdsSlot = true;
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (task.holdsSlot) {
+                queueSlots.release();
+            }
+            throw e;
+        }
+        return task;
+    }
+
+
+    /**
+     * Stop all threads, interrupting running work and cancelling queued work,
+     * and wait up to the given time for them to finish.
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        // cancelled so that nobody waits on them forever
+        for (Runnable queued : executor.shutdownNow()) {
+            ((PrioritizedTask) queued).cancel(false);
+        }
+        if (!executor.awaitTermination(timeout, unit)) {
+            log.warn(name + " executor did not stop in time");
+        }
+    }
+
+
+    /**
+     * True if called from one of the threads of this pool, which must not
+     * wait on other work of the pool lest all of them end up waiting.
+     */
+    public boolean isPoolThread() {
+        return poolThread.get();
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Number of tasks waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+
+    /**
+     * Size, activity and timing statistics of the pool.
+     */
+    public Map<String, Object> getStats() {
+
+        Map<TaskPriority, Integer> queued = new EnumMap<>(TaskPriority.class);
+        for (TaskPriority priority : TaskPriority.values()) {
+            queued.put(priority, 0);
+        }
+        for (Runnable queuedTask : executor.getQueue()) {
+            queued.merge(((PrioritizedTask) queuedTask).priority, 1, Integer::sum);
+        }
+
+        long begun = started.sum();
+        long done = completed.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("startTime", new Date(startTime));
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("liveThreads", executor.getPoolSize());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queueSize", queueSize);
+        stats.put("queued", queued);
+        stats.put("submitted", submitted.sum());
+        stats.put("completed", done);
+        stats.put("failed", failed.sum());
+        stats.put("callerRuns", callerRuns.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("averageWaitMs", begun > 0 ? toMillis(waitNanos.sum()) / begun : 0.0);
+        stats.put("maxWaitMs", toMillis(maxWaitNanos.get()));
+        stats.put("averageRunMs", done > 0 ? toMillis(runNanos.sum()) / done : 0.0);
+        return stats;
+    }
+
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+
+    /**
+     * Work queued in the pool, ordered by priority and then age.
+     */
+    private final class PrioritizedTask extends FutureTask<Void>
+            implements Comparable<PrioritizedTask> {
+
+        private final TaskPriority priority;
+        private final long seq = sequence.getAndIncrement();
+        private final long created = System.nanoTime();
+
+        // set if a queue slot was taken for this task, to give back on start
+        private boolean holdsSlot = false;
+
+        PrioritizedTask(Runnable runnable, TaskPriority priority) {
+            super(runnable, null);
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+
+            long start = System.nanoTime();
+            if (holdsSlot) {
+                holdsSlot = false;
+                queueSlots.release();
+            }
+
+            started.increment();
+            long waited = start - created;
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+            try {
+                super.run();
+            } finally {
+                runNanos.add(System.nanoTime() - start);
+                completed.increment();
+            }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            failed.increment();
+            log.error("Error running task on " + name + " executor", t);
+            super.setException(t);
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int result = priority.compareTo(other.priority);
+            return result != 0 ? result : Long.compare(seq, other.seq);
+        }
+    }
+
+
+    /**
+     * Names threads after the pool, marks them as its own, and keeps them
+     * from holding up shutdown of the JVM.
+     */
+    private final class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.prefix = "Roller " + name + " executor-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                poolThread.set(Boolean.TRUE);
+                runnable.run();
+            }, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.runnable;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Locale;
+
+
+/**
+ * A cron expression, which tells when a task should run.
+ *
+ * Either five fields, "minute hour day-of-month month day-of-week", or six
+ * with seconds in front.  Each field is "*", a number, a range "a-b", any of
+ * those followed by a step "/n", or a comma separated list of them.  Months
+ * and days of the week may also be given by their first three letters, and
+ * Sunday is either 0 or 7.  As with cron, when both day of the month and day
+ * of the week are restricted a day matching either one is used.
+ *
+ * Examples: "0 0 * * *" is daily at midnight, "*&#47;15 * * * * *" every
+ * fifteen seconds, "0 9 * * MON-FRI" weekdays at nine.
+ */
+public final class CronExpression {
+
+    private static final String[] MONTHS = {
+        "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+    };
+
+    private static final String[] DAYS = {
+        "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"
+    };
+
+    // don't look further ahead than this for a matching time, so that
+    // expressions which never match, like the 30th of February, end
+    private static final int MAX_YEARS = 5;
+
+    private final String expression;
+    private final BitSet seconds;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+
+    private CronExpression(String expression, String[] fields) {
+        this.expression = expression;
+
+        int i = 0;
+        if (fields.length == 6) {
+            seconds = parseField(fields[i++], 0, 59, null);
+        } else {
+            seconds = new BitSet();
+            seconds.set(0);
+        }
+        minutes = parseField(fields[i++], 0, 59, null);
+        hours = parseField(fields[i++], 0, 23, null);
+        anyDayOfMonth = "*".equals(fields[i]) || "?".equals(fields[i]);
+        daysOfMonth = parseField(fields[i++], 1, 31, null);
+        months = parseField(fields[i++], 1, 12, MONTHS);
+        anyDayOfWeek = "*".equals(fields[i]) || "?".equals(fields[i]);
+        daysOfWeek = parseField(fields[i], 0, 7, DAYS);
+
+        // Sunday may be given as 7
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+    }
+
+
+    /**
+     * Parse a cron expression.
+     *
+     * @throws IllegalArgumentException if the expression is not valid.
+     */
+    public static CronExpression parse(String expression) {
+
+        if (expression == null) {
+            throw new IllegalArgumentException("No cron expression given");
+        }
+
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5 && fields.length != 6) {
+            throw new IllegalArgumentException("Cron expression needs 5 or 6 fields: " + expression);
+        }
+        return new CronExpression(expression.trim(), fields);
+    }
+
+
+    /**
+     * Get the first time after the given one which matches the expression.
+     *
+     * @return the next matching time, or null if there is none.
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        int lastYear = time.getYear() + MAX_YEARS;
+
+        while (time.getYear() <= lastYear) {
+
+            if (!months.get(time.getMonthValue())) {
+                time = time.toLocalDate().withDayOfMonth(1).plusMonths(1).atStartOfDay(time.getZone());
+                continue;
+            }
+            if (!matchesDay(time)) {
+                time = time.toLocalDate().plusDays(1).atStartOfDay(time.getZone());
+                continue;
+            }
+            if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+                continue;
+            }
+            if (!minutes.get(time.getMinute())) {
+                time = time.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+                continue;
+            }
+            if (!seconds.get(time.getSecond())) {
+                int second = seconds.nextSetBit(time.getSecond());
+                time = second < 0
+                        ? time.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1)
+                        : time.withSecond(second);
+                continue;
+            }
+            return time;
+        }
+
+        return null;
+    }
+
+
+    private boolean matchesDay(ZonedDateTime time) {
+
+        boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+        // java counts Monday as 1 through Sunday as 7, cron Sunday as 0
+        boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+
+        if (anyDayOfMonth) {
+            return dayOfWeek;
+        } else if (anyDayOfWeek) {
+            return dayOfMonth;
+        }
+        return dayOfMonth || dayOfWeek;
+    }
+
+
+    private static BitSet parseField(String field, int min, int max, String[] names) {
+
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max, null);
+                part = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if ("*".equals(part) || "?".equals(part)) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                if (dash > 0) {
+                    from = parseNumber(part.substring(0, dash), min, max, names);
+                    to = parseNumber(part.substring(dash + 1), min, max, names);
+                } else {
+                    from = parseNumber(part, min, max, names);
+                    // "5/10" means from 5 to the end in steps of 10
+                    to = slash >= 0 ? max : from;
+                }
+            }
+
+            if (from > to) {
+                throw new IllegalArgumentException("Bad range in cron field: " + field);
+            }
+            for (int i = from; i <= to; i += step) {
+                values.set(i);
+            }
+        }
+        return values;
+    }
+
+
+    private static int parseNumber(String value, int min, int max, String[] names) {
+
+        if (names != null) {
+            String upper = value.toUpperCase(Locale.ENGLISH);
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(upper)) {
+                    // month names count from 1, day names from 0
+                    return names.length == 12 ? i + 1 : i;
+                }
+            }
+        }
+
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value in cron expression: " + value, e);
+        }
+        if (number < min || number > max) {
+            throw new IllegalArgumentException("Cron value " + value
+                    + " is not between " + min + " and " + max);
+        }
+        return number;
+    }
+
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+}
@@ -18,18 +18,12 @@
 
 package org.apache.roller.weblogger.business.runnable;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.HitCountQueue;
-import org.apache.roller.weblogger.business.WebloggerFactory;
-import org.apache.roller.weblogger.business.WeblogEntryManager;
-import org.apache.roller.weblogger.business.WeblogManager;
-import org.apache.roller.weblogger.pojos.Weblog;
 
 
 /**
@@ -48,60 +42,24 @@ public class HitCountProcessingJob implements Job {
      * Execute the job.
      *
      * We want to extract the currently queued hits from the HitCounter and
-     * then propogate them to the db for persistent storage.
+     * then propogate them to the db for persistent storage, which the
+     * queue's aggregator takes care of.
      */
     @Override
     public void execute() {
         
-        WeblogManager wmgr = WebloggerFactory.getWeblogger().getWeblogManager();
-        WeblogEntryManager emgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
-        
-        HitCountQueue hitCounter = HitCountQueue.getInstance();
-        
-        // first get the current set of hits
-        List<String> currentHits = hitCounter.getHits();
-        
-        // now reset the queued hits
-        hitCounter.resetHits();
-        
-        // tally the counts, grouped by weblog handle
-        Map<String, Long> hitsTally = new HashMap<>();
-        for (String weblogHandle : currentHits) {
-            Long count = hitsTally.get(weblogHandle);
-            if(count == null) {
-                count = 1L;
-            } else {
-                count = count + 1;
-            }
-            hitsTally.put(weblogHandle, count);
-        }
-
-        // iterate over the tallied hits and store them in the db
         try {
             long startTime = System.currentTimeMillis();
             
-            Weblog weblog;
-            for (Map.Entry<String, Long> entry : hitsTally.entrySet()) {
-                try {
-                    weblog = wmgr.getWeblogByHandle(entry.getKey());
-                    emgr.incrementHitCount(weblog, entry.getValue().intValue());
-                } catch (WebloggerException ex) {
-                    log.error(ex);
-                }
-            }
-
-            // flush the results to the db
-            WebloggerFactory.getWeblogger().flush();
+            HitCountQueue.getInstance().flush();
             
             long endTime = System.currentTimeMillis();
             
             log.debug("Completed: "+ (endTime-startTime)/ RollerConstants.SEC_IN_MS + " secs");
             
         } catch (WebloggerException ex) {
+            // the hits have been queued again for the next run
             log.error("Error persisting updated hit counts", ex);
-        } finally {
-            // release session
-            WebloggerFactory.getWeblogger().release();
         }
     }
     
@@ -23,8 +23,8 @@ import java.util.Properties;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.HitCountQueue;
 import org.apache.roller.weblogger.business.WebloggerFactory;
-import org.apache.roller.weblogger.business.WeblogEntryManager;
 
 
 /**
@@ -75,6 +75,15 @@ public class ResetHitCountsTask extends RollerTaskWithLeasing {
         return this.leaseTime;
     }
 
+    /**
+     * Resetting twice in one day would throw away the hits counted in
+     * between, so other cluster members must not run us again once we ran.
+     */
+    @Override
+    public boolean isOncePerPeriod() {
+        return true;
+    }
+
 
     public void init() throws WebloggerException {
         this.init(ResetHitCountsTask.NAME);
@@ -130,9 +139,7 @@ public class ResetHitCountsTask extends RollerTaskWithLeasing {
         try {
             log.info("task started");
 
-            WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
-            mgr.resetAllHitCounts();
-            WebloggerFactory.getWeblogger().flush();
+            HitCountQueue.getInstance().getAggregator().resetHits();
 
             log.info("task completed");
 
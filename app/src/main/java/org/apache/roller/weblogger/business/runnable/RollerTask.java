@@ -45,6 +45,13 @@ public abstract class RollerTask implements Runnable {
     }
 
 
+    /**
+     * Called once when the task will not be run anymore, i.e. on shutdown.
+     */
+    public void destroy() {
+    }
+
+
     /**
      * Get the unique name for this task.
      *
@@ -110,6 +117,21 @@ public abstract class RollerTask implements Runnable {
     public abstract int getLeaseTime();
     
     
+    /**
+     * Should this task run at most once per start time period, i.e. once a
+     * day for a 'startOfDay' task, however many cluster members try to?
+     *
+     * Leases only keep cluster members from running a task at the same time,
+     * a member whose clock or schedule is a little behind would otherwise
+     * run the task again right after the lease was released.
+     *
+     * @return True if the task must not run twice in the same period.
+     */
+    public boolean isOncePerPeriod() {
+        return false;
+    }
+    
+    
     /**
      * Get the properties from WebloggerConfig which pertain to this task.
      * 
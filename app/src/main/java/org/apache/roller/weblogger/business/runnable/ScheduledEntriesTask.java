@@ -18,12 +18,17 @@
 
 package org.apache.roller.weblogger.business.runnable;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.ScheduledEntryQueue;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.search.IndexManager;
@@ -36,6 +41,13 @@ import org.apache.roller.weblogger.util.cache.CacheManager;
 /**
  * This task is used to promote SCHEDULED weblog entries to the PUBLISHED
  * status when their publication time has been reached.
+ *
+ * Entries are published right when they are due by the ScheduledEntryQueue,
+ * which is kept up to date as entries are saved and runs on every cluster
+ * member.  Each run of the task itself is a check of the database for
+ * anything the queues missed and refills the queue of the member running it.
+ * Entries are locked while they are published, so that the queues of several
+ * members and the check never publish the same entry twice.
  */
 public class ScheduledEntriesTask extends RollerTaskWithLeasing {
     private static Log log = LogFactory.getLog(ScheduledEntriesTask.class);
@@ -50,8 +62,8 @@ public class ScheduledEntriesTask extends RollerTaskWithLeasing {
     // a String description of when to start this task
     private String startTimeDesc = "immediate";
 
-    // interval at which the task is run, default is once per minute
-    private int interval = 1;
+    // interval at which the database is checked, default is every 10 minutes
+    private int interval = 10;
 
     // lease time given to task lock, default is 30 minutes
     private int leaseTime = RollerTaskWithLeasing.DEFAULT_LEASE_MINS;
@@ -125,6 +137,10 @@ public class ScheduledEntriesTask extends RollerTaskWithLeasing {
                 log.warn("Invalid leaseTime: "+leaseTimeStr);
             }
         }
+
+        // publish entries as soon as they are due, whether or not this
+        // member ever gets the lease for the task runs
+        ScheduledEntryQueue.getInstance().start(this::publishQueuedEntries);
     }
 
 
@@ -136,9 +152,9 @@ public class ScheduledEntriesTask extends RollerTaskWithLeasing {
 
         log.debug("task started");
 
+        ScheduledEntryQueue queue = ScheduledEntryQueue.getInstance();
         try {
             WeblogEntryManager wMgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
-            IndexManager searchMgr = WebloggerFactory.getWeblogger().getIndexManager();
 
             Date now = new Date();
 
@@ -148,26 +164,24 @@ public class ScheduledEntriesTask extends RollerTaskWithLeasing {
             WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
             wesc.setEndDate(now);
             wesc.setStatus(PubStatus.SCHEDULED);
-            List<WeblogEntry> scheduledEntries = wMgr.getWeblogEntries(wesc);
-            log.debug("promoting "+scheduledEntries.size()+" entries to PUBLISHED state");
-
-            for (WeblogEntry entry : scheduledEntries) {
-                entry.setStatus(PubStatus.PUBLISHED);
-                entry.setRefreshAggregates(true);
-                wMgr.saveWeblogEntry(entry);
+            List<String> overdue = new ArrayList<>();
+            for (WeblogEntry entry : wMgr.getWeblogEntries(wesc)) {
+                overdue.add(entry.getId());
             }
+            publish(overdue, now.getTime());
 
-            // commit the changes
-            WebloggerFactory.getWeblogger().flush();
-
-            // take a second pass to trigger reindexing and cache invalidations
-            // this is because we need the updated entries flushed first
-            for (WeblogEntry entry : scheduledEntries) {
-                // trigger a cache invalidation
-                CacheManager.invalidate(entry);
-                // trigger search index on entry
-                searchMgr.addEntryReIndexOperation(entry);
+            // and queue all those still to come, keeping any queued while
+            // we read them
+            long since = queue.getChanges();
+            wesc = new WeblogEntrySearchCriteria();
+            wesc.setStartDate(now);
+            wesc.setStatus(PubStatus.SCHEDULED);
+            Map<String, Date> upcoming = new HashMap<>();
+            for (WeblogEntry entry : wMgr.getWeblogEntries(wesc)) {
+                upcoming.put(entry.getId(), entry.getPubTime());
             }
+            queue.replaceAll(upcoming, since);
+            log.debug(upcoming.size() + " entries queued for publishing");
 
         } catch (WebloggerException e) {
             log.error("Error getting scheduled entries", e);
@@ -183,6 +197,112 @@ public class ScheduledEntriesTask extends RollerTaskWithLeasing {
     }
 
 
+    /**
+     * Publish the entries of the queue which are due, called by the queue
+     * when they are.  If publishing fails the entries are put back, so that
+     * the queue tries again a little later.
+     */
+    private void publishQueuedEntries() {
+
+        ScheduledEntryQueue queue = ScheduledEntryQueue.getInstance();
+        long now = System.currentTimeMillis();
+        List<String> taken = queue.takeDue(now);
+        try {
+            publish(taken, now);
+
+        } catch (Exception e) {
+            log.error("Error publishing queued entries", e);
+
+            // put them back so they are tried again a little later, those
+            // published after all are skipped then
+            for (String id : taken) {
+                queue.schedule(id, new Date(now));
+            }
+        } finally {
+            WebloggerFactory.getWeblogger().release();
+        }
+    }
+
+
+    /**
+     * Promote those of the given entries which are still scheduled and due
+     * by the given time to PUBLISHED, and update the caches and search index
+     * for just those entries.  Those scheduled for later meanwhile are queued
+     * again.
+     *
+     * Each entry is re-read with its row locked until the changes are
+     * flushed, in id order so that cluster members publishing overlapping
+     * entries can't deadlock.  A member waiting for the lock then finds the
+     * entry published and skips it.
+     */
+    private void publish(List<String> entryIds, long now) throws WebloggerException {
+
+        if (entryIds.isEmpty()) {
+            return;
+        }
+
+        WeblogEntryManager wMgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        ScheduledEntryQueue queue = ScheduledEntryQueue.getInstance();
+
+        List<WeblogEntry> due = new ArrayList<>();
+        for (String id : new TreeSet<>(entryIds)) {
+            WeblogEntry entry = wMgr.getWeblogEntryForUpdate(id);
+
+            // it may have been published, changed or removed meanwhile
+            if (entry == null || !PubStatus.SCHEDULED.equals(entry.getStatus())) {
+                continue;
+            }
+            if (entry.getPubTime().getTime() > now) {
+                queue.update(entry);
+            } else {
+                due.add(entry);
+            }
+        }
+        publish(due);
+    }
+
+
+    /**
+     * Promote the given entries to PUBLISHED, and update the caches and
+     * search index for just those entries.
+     */
+    private void publish(List<WeblogEntry> scheduledEntries) throws WebloggerException {
+
+        if (scheduledEntries.isEmpty()) {
+            return;
+        }
+
+        WeblogEntryManager wMgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        IndexManager searchMgr = WebloggerFactory.getWeblogger().getIndexManager();
+
+        log.debug("promoting "+scheduledEntries.size()+" entries to PUBLISHED state");
+
+        for (WeblogEntry entry : scheduledEntries) {
+            entry.setStatus(PubStatus.PUBLISHED);
+            entry.setRefreshAggregates(true);
+            wMgr.saveWeblogEntry(entry);
+        }
+
+        // commit the changes
+        WebloggerFactory.getWeblogger().flush();
+
+        // take a second pass to trigger reindexing and cache invalidations
+        // this is because we need the updated entries flushed first
+        for (WeblogEntry entry : scheduledEntries) {
+            // trigger a cache invalidation
+            CacheManager.invalidate(entry);
+            // trigger search index on entry
+            searchMgr.addEntryReIndexOperation(entry);
+        }
+    }
+
+
+    @Override
+    public void destroy() {
+        ScheduledEntryQueue.getInstance().stop();
+    }
+
+
     /**
      * Main method so that this task may be run from outside the webapp.
      */
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.runnable;
+
+
+/**
+ * How urgently work handed to a BoundedPriorityExecutor should run.  Queued
+ * work always starts in this order, and within a priority first come first
+ * served.
+ */
+public enum TaskPriority {
+
+    /**
+     * Someone is waiting on the work, i.e. removing an entry from the index.
+     * Run on the calling thread if the queue stays full.
+     */
+    INTERACTIVE,
+
+    /**
+     * Ordinary background work, i.e. indexing a saved entry.  Run on the
+     * calling thread if the queue stays full.
+     */
+    NORMAL,
+
+    /**
+     * Long running or bulk work, i.e. rebuilding the search index.
+     * Rejected if the queue stays full.
+     */
+    BULK
+
+}
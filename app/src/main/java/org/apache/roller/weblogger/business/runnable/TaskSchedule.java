@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.runnable;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.DateUtil;
+
+
+/**
+ * When a RollerTask runs, worked out from its tasks.<name>.* properties.
+ *
+ * By default a task runs every getInterval() minutes, for 'startOfHour' and
+ * 'startOfDay' tasks at the start of the hour or day.  This can be changed
+ * through these properties:
+ *
+ *   cron - a CronExpression, which replaces the interval and start time
+ *   intervalSeconds - an interval in seconds instead of minutes
+ *   jitter - up to how many seconds to randomly delay each run by
+ *   catchUp - what to do about runs missed while the task was running or
+ *       the server down, 'once' runs the task once right away and 'skip'
+ *       waits for the next run.  By default 'startOfHour' and 'startOfDay'
+ *       tasks skip, others catch up once.
+ */
+public final class TaskSchedule {
+
+    private static final Log log = LogFactory.getLog(TaskSchedule.class);
+
+    public enum CatchUp { ONCE, SKIP }
+
+    // a run this late is still run rather than treated as missed
+    private static final long MISSED_AFTER = TimeUnit.MINUTES.toMillis(2);
+
+    private final CronExpression cron;
+    private final long interval;
+    private final String startTimeDesc;
+    private final long jitter;
+    private final CatchUp catchUp;
+    private final ZoneId zone;
+
+
+    TaskSchedule(CronExpression cron, long interval, String startTimeDesc,
+            long jitter, CatchUp catchUp, ZoneId zone) {
+        this.cron = cron;
+        this.interval = interval;
+        this.startTimeDesc = startTimeDesc;
+        this.jitter = jitter;
+        this.catchUp = catchUp;
+        this.zone = zone;
+    }
+
+
+    /**
+     * Get the schedule of a task.
+     *
+     * @param props the task's properties, keyed by what follows tasks.<name>.
+     */
+    public static TaskSchedule forTask(RollerTask task, Properties props) {
+
+        CronExpression cron = null;
+        String cronStr = props.getProperty("cron");
+        if (cronStr != null && !cronStr.isBlank()) {
+            try {
+                cron = CronExpression.parse(cronStr);
+            } catch (IllegalArgumentException e) {
+                log.warn(task.getName() + ": invalid cron expression, using interval instead - "
+                        + e.getMessage());
+            }
+        }
+
+        long interval = TimeUnit.MINUTES.toMillis(Math.max(task.getInterval(),
+                ThreadManager.MIN_RATE_INTERVAL_MINS));
+        long intervalSeconds = getLong(task, props, "intervalSeconds", 0);
+        if (intervalSeconds > 0) {
+            interval = TimeUnit.SECONDS.toMillis(intervalSeconds);
+        }
+
+        long jitter = TimeUnit.SECONDS.toMillis(getLong(task, props, "jitter", 0));
+
+        String startTimeDesc = task.getStartTimeDesc();
+        CatchUp catchUp = cron == null && isAligned(startTimeDesc) ? CatchUp.SKIP : CatchUp.ONCE;
+        String catchUpStr = props.getProperty("catchUp");
+        if (catchUpStr != null) {
+            try {
+                catchUp = CatchUp.valueOf(catchUpStr.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warn(task.getName() + ": invalid catchUp: " + catchUpStr);
+            }
+        }
+
+        return new TaskSchedule(cron, interval, startTimeDesc, Math.max(jitter, 0),
+                catchUp, ZoneId.systemDefault());
+    }
+
+
+    private static long getLong(RollerTask task, Properties props, String name, long defaultValue) {
+        String value = props.getProperty(name);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn(task.getName() + ": invalid " + name + ": " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+
+    private static boolean isAligned(String startTimeDesc) {
+        return "startOfDay".equals(startTimeDesc) || "startOfHour".equals(startTimeDesc);
+    }
+
+
+    /**
+     * Get the time the task should next run after it last ran at the given
+     * time, without jitter.
+     *
+     * @return time in milliseconds, or Long.MAX_VALUE if it never runs again.
+     */
+    public long nextRun(long lastRun) {
+
+        if (cron != null) {
+            ZonedDateTime next = cron.next(Instant.ofEpochMilli(lastRun).atZone(zone));
+            return next != null ? next.toInstant().toEpochMilli() : Long.MAX_VALUE;
+        }
+
+        return align(lastRun + interval);
+    }
+
+
+    // move a time to the start of the following hour or day for tasks which
+    // run then, unless it already is at one
+    private long align(long time) {
+
+        Date start;
+        Date nextStart;
+        if ("startOfDay".equals(startTimeDesc)) {
+            start = DateUtil.getStartOfDay(new Date(time));
+            nextStart = DateUtil.getStartOfDay(new Date(time + TimeUnit.DAYS.toMillis(1)));
+        } else if ("startOfHour".equals(startTimeDesc)) {
+            start = DateUtil.getStartOfHour(new Date(time));
+            nextStart = DateUtil.getStartOfHour(new Date(time + TimeUnit.HOURS.toMillis(1)));
+        } else {
+            return time;
+        }
+        return start.getTime() == time ? time : nextStart.getTime();
+    }
+
+
+    /**
+     * Get the time the task should next run, given when it was last due
+     * and the current time, taking the catch up policy into account.
+     */
+    public long nextRun(long lastDue, long now) {
+
+        long next = nextRun(lastDue);
+        if (next < now - MISSED_AFTER) {
+            // missed a run, either do it now or go on with the first one
+            // still to come as if the missed ones had happened
+            if (catchUp == CatchUp.ONCE) {
+                next = now;
+            } else if (cron != null) {
+                next = nextRun(now);
+            } else {
+                long periods = (now - lastDue + interval - 1) / interval;
+                next = align(lastDue + periods * interval);
+            }
+        }
+        return Math.max(next, now);
+    }
+
+
+    /**
+     * Get a random delay, in milliseconds, to add to a run so that cluster
+     * members don't all start it at the very same moment.
+     */
+    public long getJitter() {
+        return jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0;
+    }
+
+
+    public CatchUp getCatchUp() {
+        return catchUp;
+    }
+
+
+    @Override
+    public String toString() {
+        if (cron != null) {
+            return "cron " + cron;
+        }
+        return "every " + TimeUnit.MILLISECONDS.toSeconds(interval) + "s, " + startTimeDesc;
+    }
+
+}
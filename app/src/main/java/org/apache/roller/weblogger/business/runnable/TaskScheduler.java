@@ -18,185 +18,181 @@
 
 package org.apache.roller.weblogger.business.runnable;
 
-import java.util.Calendar;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.roller.util.DateUtil;
-import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.TaskLock;
 
-import static org.apache.roller.util.RollerConstants.GRACEFUL_SHUTDOWN_WAIT_IN_SECONDS;
-
 
 /**
  * Manages scheduling of periodic tasks.
  * 
- * This scheduler is meant to be run on a single thread and once started it will
- * run continuously until the thread is interrupted.  The basic logic of the
- * scheduler is to accept some number of tasks to be run and once per minute
- * the scheduler will launch any tasks that need to be executed.  
+ * Each task is woken up by a timer when its TaskSchedule says it is due,
+ * down to the second, and is then run on the task pool of the ThreadManager.
+ * Before running a task its TaskLock is checked, so that a task which
+ * another cluster member has just run waits for its next turn instead.
  * 
- * Tasks are executed each on their own thread, so this scheduler does not run
- * serially like a TimerTask.  The threads used for running tasks are managed
- * by an instance of a ThreadPoolExecutor.
+ * A task is never run again while it is still running, its next run is only
+ * scheduled once it is done.  Runs missed in the meantime, or while the
+ * server was down, are caught up or skipped as the task's schedule says.
  */
-public class TaskScheduler implements Runnable {
+public class TaskScheduler {
     
     private static Log log = LogFactory.getLog(TaskScheduler.class);
-    private final ExecutorService pool;
-    private final List<RollerTask> tasks;
+    
+    // a run due within this time is started right away
+    private static final long TOLERANCE = 500;
+    
+    private final BoundedPriorityExecutor pool;
+    private final List<ScheduledTask> tasks = new ArrayList<>();
+    private final ScheduledThreadPoolExecutor timer;
     
     
-    public TaskScheduler(List<RollerTask> webloggerTasks) {
+    public TaskScheduler(List<RollerTask> webloggerTasks, BoundedPriorityExecutor pool) {
         
-        // store list of tasks available to run
-        tasks = webloggerTasks;
+        // the thread manager shuts the pool down
+        this.pool = pool;
+        
+        for (RollerTask task : webloggerTasks) {
+            TaskSchedule schedule = TaskSchedule.forTask(task, task.getTaskProperties());
+            log.info(task.getName() + ": scheduled " + schedule);
+            tasks.add(new ScheduledTask(task, schedule));
+        }
         
-        // use an expanding thread executor pool
-        pool = Executors.newCachedThreadPool();
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Roller Weblogger Task Scheduler");
+            // set thread priority between MAX and NORM so we get slightly preferential treatment
+            thread.setPriority((Thread.MAX_PRIORITY + Thread.NORM_PRIORITY) / 2);
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
     }
     
     
-    @Override
-    public void run() {
-        
-        boolean firstRun = true;
-        
-        // run forever, or until we get interrupted
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                // get current time
-                Date now = new Date();
-                log.debug("Current time = "+now);
-                
-                // run tasks, skip run on first pass
-                if(firstRun) {
-                    // add a slight delay to scheduler start
-                    Calendar cal = Calendar.getInstance();
-                    cal.setTime(now);
-                    cal.add(Calendar.MINUTE, 1);
-                    cal.set(Calendar.SECOND, cal.getMinimum(Calendar.SECOND));
-                    cal.set(Calendar.MILLISECOND, cal.getMinimum(Calendar.MILLISECOND));
-                    now = cal.getTime();
-                    log.debug("Start time = "+now);
-                    
-                    firstRun = false;
-                } else {
-                    try {
-                        runTasks(now);
-                    } finally {
-                        // always release session after each pass
-                        WebloggerFactory.getWeblogger().release();
-                    }
-                }
-                
-                // wait 'til next minute
-                // NOTE: we add 50ms of adjustment time to make sure we awaken
-                //       during the next minute, and not before.  awakening at
-                //       exactly the .000ms is not of any concern to us
-                Date endOfMinute = DateUtil.getEndOfMinute(now);
-                long sleepTime = (endOfMinute.getTime() + 50) - System.currentTimeMillis();
-                if(sleepTime > 0) {
-                    log.debug("sleeping - "+sleepTime);
-                    Thread.sleep(sleepTime);
-                } else {
-                    // it's taken us more than 1 minute for the last loop
-                    // so recalculate to sleep 'til the end of the current minute
-                    endOfMinute = DateUtil.getEndOfMinute(new Date());
-                    sleepTime = (endOfMinute.getTime() + 50) - System.currentTimeMillis();
-                    log.debug("sleeping - "+sleepTime);
-                    Thread.sleep(sleepTime);
-                }
-                
-            } catch (InterruptedException ex) {
-                log.debug("Thread interrupted, scheduler is stopping");
-                break;
-            }
+    /**
+     * Start the timers of all tasks, after a short delay to let the rest of
+     * the application start up.
+     */
+    public void start() {
+        long delay = TimeUnit.SECONDS.toMillis(
+                WebloggerConfig.getIntProperty("tasks.startDelay", 60));
+        for (ScheduledTask task : tasks) {
+            task.wakeUpAt(System.currentTimeMillis() + delay);
         }
-
-        // thread interrupted
-        pool.shutdownNow();
-        try {
-            pool.awaitTermination(GRACEFUL_SHUTDOWN_WAIT_IN_SECONDS, TimeUnit.SECONDS);
-            log.debug("TaskScheduler executor was terminated successfully");
-        } catch (InterruptedException e) {
-            log.debug(e.getMessage(), e);
+    }
+    
+    
+    /**
+     * Stop the timers, waiting up to the given time for them to stop.
+     * Tasks already running are stopped along with the task pool.
+     */
+    public void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        timer.shutdownNow();
+        for (ScheduledTask task : tasks) {
+            task.task.destroy();
+        }
+        if (timer.awaitTermination(timeout, unit)) {
+            log.debug("TaskScheduler timer was terminated successfully");
         }
     }
     
     
     /**
-     * Run the necessary tasks given a specific currentTime to work from.
+     * A task along with when it is to run next.
      */
-    private void runTasks(Date currentTime) {
+    private final class ScheduledTask {
         
-        log.debug("Started - "+currentTime);
+        private final RollerTask task;
+        private final TaskSchedule schedule;
+        
+        // when the task was last due to run on this server, the task lock
+        // only keeps the start of the minute, hour or day it last ran
+        private long lastDue = 0;
+        
+        ScheduledTask(RollerTask task, TaskSchedule schedule) {
+            this.task = task;
+            this.schedule = schedule;
+        }
+        
+        /**
+         * Have the timer hand the task to the pool at the given time.
+         */
+        void wakeUpAt(long time) {
+            if (time == Long.MAX_VALUE) {
+                log.info(task.getName() + ": will not run again");
+                return;
+            }
+            long delay = Math.max(time - System.currentTimeMillis(), 0) + schedule.getJitter();
+            log.debug(task.getName() + ": next check in " + delay + "ms");
+            try {
+                timer.schedule(this::submit, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.debug(task.getName() + ": not scheduled, scheduler is stopped");
+            }
+        }
         
-        ThreadManager tmgr = WebloggerFactory.getWeblogger().getThreadManager();
+        private void submit() {
+            try {
+                pool.submit(this::runIfDue, TaskPriority.NORMAL);
+            } catch (RejectedExecutionException e) {
+                log.debug(task.getName() + ": not launched, executor is shut down");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         
-        for (RollerTask task : tasks) {
+        /**
+         * Run the task if it is due, and in any case arrange for the next
+         * check.  Runs on the task pool.
+         */
+        private void runIfDue() {
+            
+            long next;
             try {
-                // get tasklock for the task
-                TaskLock tasklock = tmgr.getTaskLockByName(task.getName());
+                long now = System.currentTimeMillis();
                 
-                // TODO: check if task is enabled, otherwise skip
+                TaskLock tasklock = WebloggerFactory.getWeblogger().getThreadManager()
+                        .getTaskLockByName(task.getName());
                 if (tasklock == null) {
-                    continue;
+                    log.debug(task.getName() + ": no task lock, not running");
+                    wakeUpAt(schedule.nextRun(now));
+                    return;
                 }
                 
-                // first, calculate the next allowed run time for the task
-                // based on when the task was last run
-                Date nextRunTime = tasklock.getNextAllowedRun(task.getInterval());
-                log.debug(task.getName()+": next allowed run time = "+nextRunTime);
+                long lastRun = tasklock.getLastRun() != null ? tasklock.getLastRun().getTime() : 0;
+                long due = schedule.nextRun(Math.max(lastRun, lastDue), now);
                 
-                // if we missed the last scheduled run time then see when the
-                // most appropriate next run time should be and wait 'til then
-                boolean needToWait = false;
-                if(currentTime.getTime() > (nextRunTime.getTime() + RollerConstants.MIN_IN_MS)) {
-                    
-                    log.debug("MISSED last run, checking if waiting is necessary");
-                    // add delays if task is non-immediate
-                    if ("startOfDay".equals(task.getStartTimeDesc())) {
-                        // for daily tasks we only run during the first 
-                        // couple minutes of the day
-                        Date startOfDay = DateUtil.getStartOfDay(currentTime);
-                        if(currentTime.getTime() > startOfDay.getTime() + (2 * RollerConstants.MIN_IN_MS)) {
-                            needToWait = true;
-                            log.debug("WAITING for next reasonable run time");
-                        }
-                    } else if("startOfHour".equals(task.getStartTimeDesc())) {
-                        // for hourly tasks we only run during the first
-                        // couple minutes of the hour
-                        Date startOfHour = DateUtil.getStartOfHour(currentTime);
-                        if(currentTime.getTime() > startOfHour.getTime() + (2 * RollerConstants.MIN_IN_MS)) {
-                            needToWait = true;
-                            log.debug("WAITING for next reasonable run time");
-                        }
-                    }
+                if (due <= now + TOLERANCE) {
+                    log.debug(task.getName() + ": LAUNCHING task");
+                    lastDue = due;
+                    task.run();
+                } else {
+                    // not yet, or another cluster member already ran it
+                    log.debug(task.getName() + ": not due until " + due);
                 }
                 
-                // if we are within 1 minute of run time then execute,
-                // otherwise we do nothing
-                long differential = currentTime.getTime() - nextRunTime.getTime();
-                if (differential >= 0 && !needToWait) {
-                    log.debug(task.getName()+": LAUNCHING task");
-                    pool.submit(task);
-                }
+                next = schedule.nextRun(Math.max(lastDue, lastRun), System.currentTimeMillis());
+                
             } catch (ThreadDeath t) {
                 throw t;
             } catch (Throwable t) {
                 log.warn(task.getName() + ": Unhandled exception caught", t);
+                next = schedule.nextRun(System.currentTimeMillis());
+            } finally {
+                // always release session after each run
+                WebloggerFactory.getWeblogger().release();
             }
+            
+            wakeUpAt(next);
         }
-        
-        log.debug("Finished");
     }
     
 }
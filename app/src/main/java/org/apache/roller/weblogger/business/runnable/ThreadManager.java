@@ -18,6 +18,7 @@
 
 package org.apache.roller.weblogger.business.runnable;
 
+import java.util.Map;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
 import org.apache.roller.weblogger.pojos.TaskLock;
@@ -49,12 +50,46 @@ public interface ThreadManager {
     
     
     /**
-     * Execute runnable in foreground (synchronously).
+     * Execute runnable in background (asynchronously) with the given
+     * priority.  May block if too much background work is already queued,
+     * after which interactive and normal work runs on the calling thread
+     * and bulk work is rejected.
+     *
+     * @param runnable
+     * @param priority how soon the runnable should run relative to other
+     *            background work.
+     * @throws java.lang.InterruptedException
+     * @throws java.util.concurrent.RejectedExecutionException if bulk work
+     *             finds the queue still full, or if shutting down.
+     */
+    void executeInBackground(Runnable runnable, TaskPriority priority)
+        throws InterruptedException;
+    
+    
+    /**
+     * Execute runnable in background (asynchronously) with the given
+     * priority if there is room in the queue right now.  Never blocks, so
+     * it is safe to call from threads which must not wait.
+     *
+     * @return false if the runnable was not queued.
+     */
+    boolean tryExecuteInBackground(Runnable runnable, TaskPriority priority);
+    
+    
+    /**
+     * Execute runnable in foreground (synchronously).  Runs it right on the
+     * calling thread if that is a background thread itself.
      */
     void executeInForeground(Runnable runnable)
         throws InterruptedException;
     
     
+    /**
+     * Get the statistics of each of the thread pools, keyed by pool name.
+     */
+    Map<String, Map<String, Object>> getExecutorStats();
+    
+    
     /**
      * Lookup a TaskLock by name.
      * 
@@ -20,16 +20,18 @@ package org.apache.roller.weblogger.business.runnable;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
 import org.apache.roller.weblogger.config.WebloggerConfig;
@@ -47,18 +49,41 @@ public abstract class ThreadManagerImpl implements ThreadManager {
     
     private static final Log LOG = LogFactory.getLog(ThreadManagerImpl.class);
     
-    // our own scheduler thread
-    private Thread schedulerThread = null;
+    // our own task scheduler
+    private TaskScheduler scheduler = null;
     
-    // a simple thread executor
-    private final ExecutorService serviceScheduler;
+    // runs background work such as index operations
+    private final BoundedPriorityExecutor serviceScheduler;
+    
+    // runs scheduled tasks
+    private final BoundedPriorityExecutor taskExecutor;
     
     
     public ThreadManagerImpl() {
         
         LOG.info("Instantiating Thread Manager");
         
-        serviceScheduler = Executors.newCachedThreadPool();
+        serviceScheduler = createExecutor("background", 4, 1000);
+        taskExecutor = createExecutor("tasks", 4, 100);
+    }
+    
+    
+    /**
+     * Create a pool configured by the executor.<name>.* properties.
+     */
+    private static BoundedPriorityExecutor createExecutor(String name,
+            int defaultThreads, int defaultQueueSize) {
+        
+        String prefix = "executor." + name + ".";
+        int threads = WebloggerConfig.getIntProperty(prefix + "threads", defaultThreads);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        int queueSize = WebloggerConfig.getIntProperty(prefix + "queueSize", defaultQueueSize);
+        int offerTimeout = WebloggerConfig.getIntProperty(prefix + "offerTimeout", 5000);
+        
+        LOG.info("Executor " + name + ": " + threads + " threads, queue of " + queueSize);
+        return new BoundedPriorityExecutor(name, threads, Math.max(queueSize, 1), offerTimeout);
     }
     
     
@@ -108,16 +133,11 @@ public abstract class ThreadManagerImpl implements ThreadManager {
             }
         }
         
-        // create scheduler
-        TaskScheduler scheduler = new TaskScheduler(webloggerTasks);
-        
-        // start scheduler thread, but only if it's not already running
-        if (schedulerThread == null) {
-            LOG.debug("Starting scheduler thread");
-            schedulerThread = new Thread(scheduler, "Roller Weblogger Task Scheduler");
-            // set thread priority between MAX and NORM so we get slightly preferential treatment
-            schedulerThread.setPriority((Thread.MAX_PRIORITY + Thread.NORM_PRIORITY)/2);
-            schedulerThread.start();
+        // create and start scheduler, but only if it's not already running
+        if (scheduler == null) {
+            LOG.debug("Starting scheduler");
+            scheduler = new TaskScheduler(webloggerTasks, taskExecutor);
+            scheduler.start();
         }
     }
     
@@ -125,48 +145,96 @@ public abstract class ThreadManagerImpl implements ThreadManager {
     @Override
     public void executeInBackground(Runnable runnable)
             throws InterruptedException {
-        serviceScheduler.submit(runnable);
+        executeInBackground(runnable, TaskPriority.NORMAL);
+    }
+    
+    
+    @Override
+    public void executeInBackground(Runnable runnable, TaskPriority priority)
+            throws InterruptedException {
+        serviceScheduler.submit(runnable, priority);
+    }
+    
+    
+    @Override
+    public boolean tryExecuteInBackground(Runnable runnable, TaskPriority priority) {
+        try {
+            serviceScheduler.offer(runnable, priority);
+            return true;
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Background task not queued: " + e.getMessage());
+            return false;
+        }
     }
     
     
     @Override
     public void executeInForeground(Runnable runnable)
             throws InterruptedException {
-        Future<?> task = serviceScheduler.submit(runnable);
+        
+        if (serviceScheduler.isPoolThread()) {
+            // waiting on the pool from one of its own threads could leave
+            // every thread waiting for another, so just do it here
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                LOG.error("Error executing task", e);
+            }
+            return;
+        }
+        
+        Future<?> task = serviceScheduler.submit(runnable, TaskPriority.INTERACTIVE);
         
         // since this task is really meant to be executed within this calling 
-        // thread, here we can add a little code here to loop until it realizes 
-        // the task is done
-        while(!task.isDone()) {
-            Thread.sleep(RollerConstants.HALF_SEC_IN_MS);
+        // thread, we just block until it is done
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            // already logged by the executor
+            LOG.debug("Error executing task", e.getCause());
+        } catch (CancellationException e) {
+            LOG.debug("Task was cancelled by shutdown");
         }
     }
     
     
+    @Override
+    public Map<String, Map<String, Object>> getExecutorStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        stats.put(serviceScheduler.getName(), serviceScheduler.getStats());
+        stats.put(taskExecutor.getName(), taskExecutor.getStats());
+        return stats;
+    }
+    
+    
     @Override
     public void shutdown() {
         
         LOG.debug("starting shutdown sequence");
         
         // trigger an immediate shutdown of any backgrounded tasks
-        serviceScheduler.shutdownNow();
         try {
-            serviceScheduler.awaitTermination(GRACEFUL_SHUTDOWN_WAIT_IN_SECONDS, TimeUnit.SECONDS);
+            serviceScheduler.shutdown(GRACEFUL_SHUTDOWN_WAIT_IN_SECONDS, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             LOG.debug(e.getMessage(), e);
         }
 
         // only stop if we are already running
-        if(schedulerThread != null) {
+        if(scheduler != null) {
             LOG.debug("Stopping scheduler");
-            schedulerThread.interrupt();
             try {
-                schedulerThread.join(GRACEFUL_SHUTDOWN_WAIT_IN_MILLISECONDS);
+                scheduler.stop(GRACEFUL_SHUTDOWN_WAIT_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
                 LOG.debug("Scheduler was stopped successfully");
             } catch (InterruptedException e) {
                 LOG.debug(e.getMessage(), e);
             }
         }
+        
+        try {
+            taskExecutor.shutdown(GRACEFUL_SHUTDOWN_WAIT_IN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            LOG.debug(e.getMessage(), e);
+        }
     }
     
     
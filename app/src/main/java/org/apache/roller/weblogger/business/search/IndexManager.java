@@ -56,12 +56,21 @@ public interface IndexManager {
 
     void rebuildWeblogIndex() throws WebloggerException;
 
+    /**
+     * Progress of the running index rebuild, or of the last one if none is
+     * running.  Null if the index hasn't been rebuilt since startup.
+     */
+    IndexRebuildStatus getRebuildStatus();
+
     /** Remove weblog from index, returns immediately and operates in background */
     void removeWeblogIndex(Weblog weblog) throws WebloggerException;
 
     /** Remove entry from index, returns immediately and operates in background */
     void removeEntryIndexOperation(WeblogEntry entry) throws WebloggerException;
 
+    /**
+     * Search the index, returning the first page of newest results.
+     */
     SearchResultList search(
         String term,
         String weblogHandle,
@@ -71,6 +80,12 @@ public interface IndexManager {
         int entryCount,
         URLStrategy urlStrategy
     ) throws WebloggerException;
+
+    /**
+     * Search the index for a page of results in the given order.
+     */
+    SearchResultList search(SearchCriteria criteria, URLStrategy urlStrategy)
+        throws WebloggerException;
 }
 
 
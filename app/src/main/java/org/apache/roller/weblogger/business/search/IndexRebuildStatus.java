@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.roller.util.RollerConstants;
+
+/**
+ * Progress of a rebuild of the search index, safe to read from any thread
+ * while the rebuild is running.
+ */
+public class IndexRebuildStatus {
+
+    public enum State { RUNNING, COMPLETED, FAILED }
+
+    // handle of the weblog being rebuilt, null for the whole site
+    private final String weblogHandle;
+    private final long totalEntries;
+    private final long startTime;
+    private final AtomicLong indexedEntries = new AtomicLong();
+
+    private volatile State state = State.RUNNING;
+    private volatile long endTime;
+
+    public IndexRebuildStatus(String weblogHandle, long totalEntries) {
+        this.weblogHandle = weblogHandle;
+        this.totalEntries = totalEntries;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public void addIndexed(int count) {
+        indexedEntries.addAndGet(count);
+    }
+
+    public void finish(boolean success) {
+        endTime = System.currentTimeMillis();
+        state = success ? State.COMPLETED : State.FAILED;
+    }
+
+    public String getWeblogHandle() {
+        return weblogHandle;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /** Time the rebuild finished, or 0 while it is running. */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /** Number of entries there were to index when the rebuild started. */
+    public long getTotalEntries() {
+        return totalEntries;
+    }
+
+    public long getIndexedEntries() {
+        return indexedEntries.get();
+    }
+
+    /** Percentage of entries indexed so far, from 0 to 100. */
+    public int getPercentComplete() {
+        if (totalEntries <= 0) {
+            return isRunning() ? 0 : 100;
+        }
+        return (int) Math.min(100, getIndexedEntries() * 100 / totalEntries);
+    }
+
+    /** Average number of entries indexed per second since the start. */
+    public double getEntriesPerSecond() {
+        long end = isRunning() ? System.currentTimeMillis() : endTime;
+        long elapsed = Math.max(1, end - startTime);
+        return getIndexedEntries() * (double) RollerConstants.SEC_IN_MS / elapsed;
+    }
+}
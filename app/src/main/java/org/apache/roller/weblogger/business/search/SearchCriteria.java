@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search;
+
+/**
+ * What to search the index for and which page of the results to return.
+ */
+public class SearchCriteria {
+
+    public enum SortBy {PUBLICATION_TIME, RELEVANCE}
+
+    // Query to search for
+    private String term;
+    // Weblog handle or null to search all weblogs
+    private String weblogHandle;
+    // Category name or null for all categories
+    private String category;
+    // Locale or null for all locales
+    private String locale;
+    // Page of the results to return
+    private int pageNum = 0;
+    // Number of results per page
+    private int entryCount;
+    // Order of the results, newest first or best match first
+    private SortBy sortBy = SortBy.PUBLICATION_TIME;
+    // Cursor from the previous page of results, see SearchResultList.getNextCursor()
+    private String cursor;
+
+    public String getTerm() {
+        return term;
+    }
+
+    public void setTerm(String term) {
+        this.term = term;
+    }
+
+    public String getWeblogHandle() {
+        return weblogHandle;
+    }
+
+    public void setWeblogHandle(String weblogHandle) {
+        this.weblogHandle = weblogHandle;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public String getLocale() {
+        return locale;
+    }
+
+    public void setLocale(String locale) {
+        this.locale = locale;
+    }
+
+    public int getPageNum() {
+        return pageNum;
+    }
+
+    public void setPageNum(int pageNum) {
+        this.pageNum = pageNum;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(int entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    public SortBy getSortBy() {
+        return sortBy;
+    }
+
+    public void setSortBy(SortBy sortBy) {
+        this.sortBy = sortBy;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Continue from where the previous page of results ended.  With a cursor
+     * each page costs the same however deep it is, without one every result
+     * up to the requested page has to be gathered.
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+}
@@ -21,6 +21,7 @@
 package org.apache.roller.weblogger.business.search;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 
@@ -29,12 +30,21 @@ public class SearchResultList {
     int offset;
     Set<String> categories;
     List<WeblogEntryWrapper> results;
+    Map<String, Map<String, Integer>> facets;
+    Map<String, String> snippets = Map.of();
+    String nextCursor;
     public SearchResultList(
         List<WeblogEntryWrapper> results, Set<String> categories, int limit, int offset) {
+        this(results, categories, limit, offset, Map.of());
+    }
+    public SearchResultList(
+        List<WeblogEntryWrapper> results, Set<String> categories, int limit, int offset,
+        Map<String, Map<String, Integer>> facets) {
         this.results = results;
         this.categories = categories;
         this.limit = limit;
         this.offset = offset;
+        this.facets = facets;
     }
     public int getLimit() {
         return limit;
@@ -48,4 +58,32 @@ public class SearchResultList {
     public Set<String> getCategories() {
         return categories;
     }
+    /**
+     * Number of hits of the whole search by category, tag, weblog handle and
+     * publication month (yyyy-MM), keyed by those names.  The counts of each
+     * are ordered from the highest down.
+     */
+    public Map<String, Map<String, Integer>> getFacets() {
+        return facets;
+    }
+    /**
+     * Highlighted passages of the text of the results matching the search,
+     * keyed by entry id.  HTML apart from the highlighting is escaped.
+     */
+    public Map<String, String> getSnippets() {
+        return snippets;
+    }
+    public void setSnippets(Map<String, String> snippets) {
+        this.snippets = snippets;
+    }
+    /**
+     * Cursor to get the next page of results with, or null if this is the
+     * last page.  See SearchCriteria.setCursor().
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
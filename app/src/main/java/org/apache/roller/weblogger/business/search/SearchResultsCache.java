@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache for the hits of searches, so that popular searches don't have to be
+ * run against the index again and again.
+ *
+ * Hits are only valid for the generation of the index they were found in,
+ * the cache is cleared whenever the index is refreshed and any hits of an
+ * older generation are ignored.
+ */
+public final class SearchResultsCache {
+    
+    private static final Log log = LogFactory.getLog(SearchResultsCache.class);
+    
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.searchresults";
+    
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+    
+    // reference to our singleton instance
+    private static final SearchResultsCache singletonInstance = new SearchResultsCache();
+    
+    
+    private SearchResultsCache() {
+        
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+        
+        Map<String, String> cacheProps = new HashMap<>();
+        cacheProps.put("id", CACHE_ID);
+        
+        Enumeration<Object> allProps = WebloggerConfig.keys();
+        String prop;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+            
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1), 
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+        
+        log.info(cacheProps);
+        
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(null, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+    
+    
+    public static SearchResultsCache getInstance() {
+        return singletonInstance;
+    }
+    
+    
+    /**
+     * Get the hits cached for a search, if they were found in the given
+     * generation of the index.
+     */
+    public CachedHits get(String key, long generation) {
+        
+        if (!cacheEnabled) {
+            return null;
+        }
+        
+        CachedHits hits = (CachedHits) contentCache.get(key);
+        if (hits == null) {
+            log.debug("MISS "+key);
+        } else if (hits.getGeneration() != generation) {
+            log.debug("HIT-EXPIRED "+key);
+            contentCache.remove(key);
+            hits = null;
+        } else {
+            log.debug("HIT "+key);
+        }
+        
+        return hits;
+    }
+    
+    
+    public void put(String key, CachedHits hits) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        contentCache.put(key, hits);
+        log.debug("PUT "+key);
+    }
+    
+    
+    public void clear() {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        contentCache.clear();
+        log.debug("CLEAR");
+    }
+    
+    
+    /**
+     * Generate a cache key for a search.
+     *
+     * Runs of whitespace in the term don't change a search and are collapsed,
+     * the category and locale are compared without case when searching.  The
+     * case of the term is kept since it matters to operators like AND.
+     */
+    public static String generateKey(SearchCriteria criteria) {
+        
+        String term = criteria.getTerm();
+        String category = criteria.getCategory();
+        String locale = criteria.getLocale();
+        
+        StringBuilder key = new StringBuilder(128);
+        key.append(CACHE_ID).append(':');
+        key.append(term != null ? term.trim().replaceAll("\\s+", " ") : "");
+        key.append('|').append(criteria.getWeblogHandle() != null ? criteria.getWeblogHandle() : "");
+        key.append('|').append(category != null ? category.toLowerCase(Locale.ENGLISH) : "");
+        key.append('|').append(locale != null ? locale.toLowerCase(Locale.ENGLISH) : "");
+        key.append('|').append(criteria.getPageNum()).append('/').append(criteria.getEntryCount());
+        key.append('|').append(criteria.getSortBy());
+        if (criteria.getCursor() != null) {
+            key.append('|').append(criteria.getCursor());
+        }
+        return key.toString();
+    }
+    
+    
+    /**
+     * The hits on one page of results of a search.
+     */
+    public static class CachedHits {
+        
+        private final long generation;
+        private final int[] hits;
+        private final int offset;
+        private final Map<String, Map<String, Integer>> facets;
+        private String[] snippets;
+        private String nextCursor;
+        
+        /**
+         * @param generation generation of the index the hits were found in
+         * @param hits numbers of the documents on the page, which are only
+         *            valid for that generation
+         * @param offset offset of the page in all the hits
+         * @param facets facet counts of all the hits
+         */
+        public CachedHits(long generation, int[] hits, int offset,
+                Map<String, Map<String, Integer>> facets) {
+            this.generation = generation;
+            this.hits = hits;
+            this.offset = offset;
+            this.facets = facets;
+            this.snippets = new String[hits.length];
+        }
+        
+        public long getGeneration() {
+            return generation;
+        }
+        
+        public int[] getHits() {
+            return hits;
+        }
+        
+        public int getOffset() {
+            return offset;
+        }
+        
+        public int getLimit() {
+            return hits.length;
+        }
+        
+        public Map<String, Map<String, Integer>> getFacets() {
+            return facets;
+        }
+        
+        /**
+         * Highlighted passages of each hit, or null for hits without any.
+         */
+        public String[] getSnippets() {
+            return snippets;
+        }
+        
+        public void setSnippets(String[] snippets) {
+            this.snippets = snippets;
+        }
+        
+        public String getNextCursor() {
+            return nextCursor;
+        }
+        
+        public void setNextCursor(String nextCursor) {
+            this.nextCursor = nextCursor;
+        }
+    }
+    
+}
@@ -59,7 +59,7 @@ public class AddEntryOperation extends WriteToIndexOperation {
     
     @Override
     public void doRun() {
-        IndexWriter writer = beginWriting();
+        IndexWriter writer = getWriter();
         
         // since this operation can be run on a separate thread we must treat
         // the weblog object passed in as a detached object which is proned to
@@ -82,7 +82,6 @@ public class AddEntryOperation extends WriteToIndexOperation {
             if (roller != null) {
                 roller.release();
             }
-            endWriting();
         }
     }   
 }
@@ -43,4 +43,11 @@ public final class FieldConstants {
     public static final String CONSTANT_V = "v";
     public static final String WEBSITE_HANDLE = "handle";
     public static final String LOCALE = "locale";
+    public static final String SUMMARY = "summary";
+
+    // facet dimensions, these are not fields of their own
+    public static final String FACET_CATEGORY = "category";
+    public static final String FACET_TAG = "tag";
+    public static final String FACET_WEBLOG = "weblog";
+    public static final String FACET_MONTH = "month";
 }
@@ -21,23 +21,24 @@
 package org.apache.roller.weblogger.business.search.lucene;
 
 import java.io.IOException;
+import java.time.YearMonth;
 import java.util.List;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.util.BytesRef;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntryTag;
+import org.apache.roller.weblogger.util.Utilities;
 
 /**
  * This is the base class for all index operation. These operations include:<br>
@@ -50,13 +51,9 @@ import org.apache.roller.weblogger.pojos.WeblogEntryComment;
  */
 public abstract class IndexOperation implements Runnable {
 
-    private static Log logger = LogFactory.getFactory().getInstance(
-            IndexOperation.class);
-
     // ~ Instance fields
     // ========================================================
     protected LuceneIndexManager manager;
-    private IndexWriter writer;
 
     // ~ Constructors
     // ===========================================================
@@ -66,7 +63,7 @@ public abstract class IndexOperation implements Runnable {
 
     // ~ Methods
     // ================================================================
-    protected Document getDocument(WeblogEntry data) {
+    protected Document getDocument(WeblogEntry data) throws IOException {
 
         // Actual comment content is indexed only if search.index.comments
         // is true or absent from the (static) configuration properties.
@@ -108,6 +105,8 @@ public abstract class IndexOperation implements Runnable {
         // keyword
         doc.add(new StringField(FieldConstants.ID, data.getId(),
                 Field.Store.YES));
+        // SearchOperation breaks ties in its sort orders on the id
+        doc.add(new SortedDocValuesField(FieldConstants.ID, new BytesRef(data.getId())));
 
         // keyword
         doc.add(new StringField(FieldConstants.WEBSITE_HANDLE, data
@@ -131,6 +130,12 @@ public abstract class IndexOperation implements Runnable {
         doc.add(new TextField(FieldConstants.CONTENT, data.getText(),
                 Field.Store.NO));
 
+        // a plain text copy of it is stored to highlight search hits in
+        if (data.getText() != null) {
+            doc.add(new StoredField(FieldConstants.CONTENT_STORED,
+                    Utilities.removeHTML(data.getText())));
+        }
+
         // keyword
         doc.add(new StringField(FieldConstants.UPDATED, data.getUpdateTime()
                 .toString(), Field.Store.YES));
@@ -139,6 +144,16 @@ public abstract class IndexOperation implements Runnable {
         if (data.getPubTime() != null) {
             // SearchOperation sorts results by date
             doc.add(new SortedDocValuesField(FieldConstants.PUBLISHED, new BytesRef(data.getPubTime().toString())));
+            doc.add(new StoredField(FieldConstants.PUBLISHED, data.getPubTime().toString()));
+        }
+
+        // stored only, with the fields above enough to list the entry in
+        // search results without loading it from the database
+        if (data.getAnchor() != null) {
+            doc.add(new StoredField(FieldConstants.ANCHOR, data.getAnchor()));
+        }
+        if (data.getSummary() != null) {
+            doc.add(new StoredField(FieldConstants.SUMMARY, data.getSummary()));
         }
 
         // index Category, needs to be in lower case as it is used in a term
@@ -160,43 +175,38 @@ public abstract class IndexOperation implements Runnable {
         doc.add(new StringField(FieldConstants.C_NAME, commentName,
                 Field.Store.YES));
 
-        return doc;
-    }
-
-    /**
-     * Begin writing.
-     * 
-     * @return the index writer
-     */
-    protected IndexWriter beginWriting() {
-        try {
-
-            LimitTokenCountAnalyzer analyzer = new LimitTokenCountAnalyzer(
-                    LuceneIndexManager.getAnalyzer(),
-                    WebloggerConfig.getIntProperty("lucene.analyzer.maxTokenCount"));
-
-            IndexWriterConfig config = new IndexWriterConfig(analyzer);
-
-            writer = new IndexWriter(manager.getIndexDirectory(), config);
-
-        } catch (IOException e) {
-            logger.error("ERROR creating writer", e);
+        // facets, counted over all the hits of a search
+        doc.add(new SortedSetDocValuesFacetField(FieldConstants.FACET_WEBLOG,
+                data.getWebsite().getHandle()));
+        if (categorydata != null) {
+            doc.add(new SortedSetDocValuesFacetField(FieldConstants.FACET_CATEGORY,
+                    categorydata.getName()));
+        }
+        if (data.getTags() != null) {
+            for (WeblogEntryTag tag : data.getTags()) {
+                if (tag.getName() != null && !tag.getName().isEmpty()) {
+                    doc.add(new SortedSetDocValuesFacetField(FieldConstants.FACET_TAG,
+                            tag.getName()));
+                }
+            }
+        }
+        if (data.getPubTime() != null) {
+            doc.add(new SortedSetDocValuesFacetField(FieldConstants.FACET_MONTH,
+                    YearMonth.from(data.getPubTime().toLocalDateTime()).toString()));
         }
 
-        return writer;
+        return LuceneIndexManager.getFacetsConfig().build(doc);
     }
 
     /**
-     * End writing.
+     * Get the writer to make changes with.  The writer is shared with all
+     * other operations and must not be closed, changes become visible to
+     * searches on the next refresh of the index.
+     * 
+     * @return the index writer
      */
-    protected void endWriting() {
-        if (writer != null) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                logger.error("ERROR closing writer", e);
-            }
-        }
+    protected IndexWriter getWriter() {
+        return manager.getSharedIndexWriter();
     }
 
     /**
@@ -26,11 +26,16 @@ import java.nio.file.Path;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
 import org.apache.commons.beanutils.ConstructorUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,31 +43,57 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.Weblogger;
 import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.runnable.ContinuousWorkerThread;
+import org.apache.roller.weblogger.business.runnable.Job;
+import org.apache.roller.weblogger.business.runnable.TaskPriority;
+import org.apache.roller.weblogger.business.runnable.WorkerThread;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.IndexRebuildStatus;
+import org.apache.roller.weblogger.business.search.SearchCriteria;
 import org.apache.roller.weblogger.business.search.SearchResultList;
+import org.apache.roller.weblogger.business.search.SearchResultsCache;
+import org.apache.roller.weblogger.business.search.SearchResultsCache.CachedHits;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 
 /**
  * Lucene implementation of IndexManager. This is the central entry point into
  * the Lucene searching API.
+ *
+ * A single IndexWriter is kept open for as long as Roller runs and shared by
+ * all index operations.  Searches use near-real-time searchers taken from the
+ * writer, which are refreshed every search.index.refreshInterval so that they
+ * keep their warm segment caches, while changes are committed to disk every
+ * search.index.commitInterval.
  * 
  * @author Mindaugas Idzelis (min@idzelis.com)
  * @author mraible (formatting and making indexDir configurable)
@@ -70,7 +101,6 @@ import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 @com.google.inject.Singleton
 public class LuceneIndexManager implements IndexManager {
 
-    private IndexReader reader;
     private final Weblogger roller;
 
     private final static Log logger = LogFactory.getFactory().getInstance(LuceneIndexManager.class);
@@ -85,6 +115,46 @@ public class LuceneIndexManager implements IndexManager {
 
     private final ReadWriteLock rwl = new ReentrantReadWriteLock();
 
+    // how often searchers are refreshed and changes committed, in ms
+    private final long refreshInterval;
+    private final long commitInterval;
+
+    private Directory directory;
+
+    private IndexWriter writer;
+
+    private SearcherManager searcherManager;
+
+    private WorkerThread maintenanceWorker;
+
+    private long lastCommit;
+
+    // build search results from stored fields rather than loading entries
+    private final boolean storedResults;
+
+    // most hits gathered to page through without a cursor
+    private static final int MAX_HITS = 10000;
+
+    // stored fields needed to list a hit, leaving out the text
+    private static final Set<String> RESULT_FIELDS = Set.of(
+            FieldConstants.ID, FieldConstants.WEBSITE_HANDLE, FieldConstants.TITLE,
+            FieldConstants.ANCHOR, FieldConstants.PUBLISHED, FieldConstants.UPDATED,
+            FieldConstants.SUMMARY, FieldConstants.CATEGORY, FieldConstants.LOCALE);
+
+    private volatile IndexRebuildStatus rebuildStatus;
+
+    private static final FacetsConfig facetsConfig = new FacetsConfig();
+    static {
+        facetsConfig.setMultiValued(FieldConstants.FACET_TAG, true);
+    }
+
+    // facet ordinals of the last generation of the index searched
+    private volatile SortedSetDocValuesReaderState facetsState;
+
+    // what changed while the whole index is rebuilt, null the rest of the time
+    private Set<String> changedEntries;
+    private Set<String> changedWeblogs;
+
 
     /**
      * Creates a new lucene index manager. This should only be created once.
@@ -115,6 +185,14 @@ public class LuceneIndexManager implements IndexManager {
 
         String test = indexDir + File.separator + ".index-inconsistent";
         indexConsistencyMarker = new File(test);
+
+        this.storedResults = WebloggerConfig.getBooleanProperty(
+                "search.results.storedFields", true);
+
+        this.refreshInterval = WebloggerConfig.getIntProperty(
+                "search.index.refreshInterval", 500);
+        this.commitInterval = (long) WebloggerConfig.getIntProperty(
+                "search.index.commitInterval", 60) * RollerConstants.SEC_IN_MS;
     }
 
     /**
@@ -148,20 +226,35 @@ public class LuceneIndexManager implements IndexManager {
             if (indexExists()) {
 
                 // test if the index is readable, if the version is outdated or it fails we rebuild.
-                try {
-                    synchronized(this) {
-                        reader = DirectoryReader.open(getIndexDirectory());
-                    }
+                boolean outdated = false;
+                try (IndexReader reader = DirectoryReader.open(getIndexDirectory())) {
+                    logger.debug("Index contains " + reader.numDocs() + " documents");
+
+                    // ids indexed before they were sortable can't be mixed with new ones
+                    FieldInfo id = FieldInfos.getMergedFieldInfos(reader).fieldInfo(FieldConstants.ID);
+                    outdated = id != null && id.getDocValuesType() != DocValuesType.SORTED;
                 } catch (IOException | IllegalArgumentException ex) {  // IAE for incompatible codecs
                     logger.warn("Failed to open search index, scheduling rebuild.", ex);
                     inconsistentAtStartup = true;
                     deleteIndex();
                 }
+                if (outdated) {
+                    logger.info("Search index is outdated, scheduling rebuild.");
+                    inconsistentAtStartup = true;
+                    deleteIndex();
+                }
             } else {
                 logger.debug("Creating index");
                 inconsistentAtStartup = true;
                 deleteIndex();
-                createIndex(getIndexDirectory());
+            }
+
+            try {
+                openWriter();
+            } catch (IOException ex) {
+                logger.error("Failed to open search index, search disabled.", ex);
+                this.searchEnabled = false;
+                return;
             }
 
             if (inconsistentAtStartup) {
@@ -180,34 +273,108 @@ public class LuceneIndexManager implements IndexManager {
 
     @Override
     public void rebuildWeblogIndex() throws WebloggerException {
-        scheduleIndexOperation(new RebuildWebsiteIndexOperation(roller, this, null));
+        scheduleIndexOperation(new RebuildWebsiteIndexOperation(roller, this, null),
+                TaskPriority.BULK);
     }
 
     @Override
     public void rebuildWeblogIndex(Weblog website) throws WebloggerException {
-        scheduleIndexOperation(new RebuildWebsiteIndexOperation(roller, this, website));
+        recordWeblogChange(website);
+        scheduleIndexOperation(new RebuildWebsiteIndexOperation(roller, this, website),
+                TaskPriority.BULK);
     }
 
     @Override
     public void removeWeblogIndex(Weblog website) throws WebloggerException {
-        scheduleIndexOperation(new RemoveWebsiteIndexOperation(roller, this, website));
+        recordWeblogChange(website);
+        scheduleIndexOperation(new RemoveWebsiteIndexOperation(roller, this, website),
+                TaskPriority.INTERACTIVE);
     }
 
     @Override
     public void addEntryIndexOperation(WeblogEntry entry) throws WebloggerException {
-        scheduleIndexOperation(new AddEntryOperation(roller, this, entry));
+        recordEntryChange(entry);
+        scheduleIndexOperation(new AddEntryOperation(roller, this, entry), TaskPriority.NORMAL);
     }
 
     @Override
     public void addEntryReIndexOperation(WeblogEntry entry) throws WebloggerException {
-        scheduleIndexOperation(new ReIndexEntryOperation(roller, this, entry));
+        recordEntryChange(entry);
+        scheduleIndexOperation(new ReIndexEntryOperation(roller, this, entry), TaskPriority.NORMAL);
     }
 
     @Override
     public void removeEntryIndexOperation(WeblogEntry entry) throws WebloggerException {
+        recordEntryChange(entry);
         executeIndexOperationNow(new RemoveEntryOperation(roller, this, entry));
     }
 
+    @Override
+    public IndexRebuildStatus getRebuildStatus() {
+        return rebuildStatus;
+    }
+
+    /**
+     * Start tracking the progress of a rebuild.  Returns null if it is a
+     * rebuild of the whole index and one is already running.
+     *
+     * While the whole index is rebuilt, changes to entries and weblogs are
+     * recorded so that they can be applied again once it has been swapped in.
+     */
+    synchronized IndexRebuildStatus startRebuild(String weblogHandle, long totalEntries) {
+
+        boolean siteRebuilding = changedEntries != null;
+        if (weblogHandle == null) {
+            if (siteRebuilding) {
+                return null;
+            }
+            changedEntries = ConcurrentHashMap.newKeySet();
+            changedWeblogs = ConcurrentHashMap.newKeySet();
+        }
+
+        IndexRebuildStatus status = new IndexRebuildStatus(weblogHandle, totalEntries);
+        // don't hide the progress of the whole index behind a single weblog
+        if (!siteRebuilding || weblogHandle == null) {
+            rebuildStatus = status;
+        }
+        return status;
+    }
+
+    /**
+     * Ids of the entries changed since the rebuild of the whole index started.
+     */
+    synchronized Set<String> getChangedEntries() {
+        return changedEntries != null ? changedEntries : Set.of();
+    }
+
+    /**
+     * Handles of the weblogs rebuilt or removed since the rebuild of the whole
+     * index started.
+     */
+    synchronized Set<String> getChangedWeblogs() {
+        return changedWeblogs != null ? changedWeblogs : Set.of();
+    }
+
+    /**
+     * Stop recording changes for a rebuild of the whole index.
+     */
+    synchronized void endSiteRebuild() {
+        changedEntries = null;
+        changedWeblogs = null;
+    }
+
+    private synchronized void recordEntryChange(WeblogEntry entry) {
+        if (changedEntries != null && entry.getId() != null) {
+            changedEntries.add(entry.getId());
+        }
+    }
+
+    private synchronized void recordWeblogChange(Weblog weblog) {
+        if (changedWeblogs != null && weblog != null) {
+            changedWeblogs.add(weblog.getHandle());
+        }
+    }
+
     @Override
     public SearchResultList search(
         String term,
@@ -218,33 +385,88 @@ public class LuceneIndexManager implements IndexManager {
         int entryCount,
         URLStrategy urlStrategy) throws WebloggerException {
 
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTerm(term);
+        criteria.setWeblogHandle(weblogHandle);
+        criteria.setCategory(category);
+        criteria.setLocale(locale);
+        criteria.setPageNum(pageNum);
+        criteria.setEntryCount(entryCount);
+        return search(criteria, urlStrategy);
+    }
+
+    @Override
+    public SearchResultList search(SearchCriteria criteria, URLStrategy urlStrategy)
+        throws WebloggerException {
+
+        String weblogHandle = criteria.getWeblogHandle();
+        boolean relevance = criteria.getSortBy() == SearchCriteria.SortBy.RELEVANCE;
+        int entryCount = criteria.getEntryCount();
+
         SearchOperation search = new SearchOperation(this);
-        search.setTerm(term);
+        search.setTerm(criteria.getTerm());
         boolean weblogSpecific = !WebloggerRuntimeConfig.isSiteWideWeblog(weblogHandle);
         if (weblogSpecific) {
             search.setWeblogHandle(weblogHandle);
         }
-        if (category != null) {
-            search.setCategory(category);
+        if (criteria.getCategory() != null) {
+            search.setCategory(criteria.getCategory());
+        }
+        if (criteria.getLocale() != null) {
+            search.setLocale(criteria.getLocale());
         }
-        if (locale != null) {
-            search.setLocale(locale);
+        search.setSortByRelevance(relevance);
+
+        // with a cursor only the page itself is needed, without one every
+        // hit up to it, plus one more to tell if there is a next page
+        int offset = criteria.getPageNum() * entryCount;
+        FieldDoc after = SearchCursor.decode(criteria.getCursor(), relevance);
+        if (after != null) {
+            search.setAfter(after);
+            search.setMaxResults(entryCount + 1);
+        } else {
+            search.setMaxResults(Math.min(offset + entryCount + 1, MAX_HITS));
         }
 
-        executeIndexOperationNow(search);
-        if (search.getResultsCount() >= 0) {
-            TopFieldDocs docs = search.getResults();
-            ScoreDoc[] hitsArr = docs.scoreDocs;
-            return convertHitsToEntryList(
-                hitsArr,
-                search,
-                pageNum,
-                entryCount,
+        if (!this.searchEnabled) {
+            throw new WebloggerException("Error executing search");
+        }
+
+        String key = SearchResultsCache.generateKey(criteria);
+
+        // searching is quick and needs no locks, so do it on our own thread
+        try {
+            IndexSearcher searcher = acquireSearcher();
+            search.setSearcher(searcher);
+
+            long generation = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+            CachedHits hits = SearchResultsCache.getInstance().get(key, generation);
+            if (hits == null) {
+                search.run();
+                if (search.getResultsCount() < 0) {
+                    throw new WebloggerException("Error executing search");
+                }
+                hits = getPage(search.getResults().scoreDocs, after != null ? 0 : offset,
+                        entryCount, generation, search.getFacets());
+                hits.setSnippets(search.highlight(hits.getHits()));
+                SearchResultsCache.getInstance().put(key, hits);
+            }
+
+            SearchResultList results = convertHitsToEntryList(
+                hits,
+                searcher,
                 weblogHandle,
                 weblogSpecific,
+                storedResults,
                 urlStrategy);
+            results.setNextCursor(hits.getNextCursor());
+            return results;
+
+        } catch (IOException e) {
+            throw new WebloggerException(e);
+        } finally {
+            search.releaseSearcher();
         }
-        throw new WebloggerException("Error executing search");
     }
 
     public ReadWriteLock getReadWriteLock() {
@@ -283,16 +505,24 @@ public class LuceneIndexManager implements IndexManager {
         return new StandardAnalyzer();
     }
 
-    private void scheduleIndexOperation(final IndexOperation op) {
+    /**
+     * Queue the operation, interactive ones ahead of the rest and bulk ones
+     * behind.
+     */
+    private void scheduleIndexOperation(final IndexOperation op, TaskPriority priority) {
         try {
             // only if search is enabled
             if (this.searchEnabled) {
                 logger.debug("Starting scheduled index operation: "
                         + op.getClass().getName());
-                roller.getThreadManager().executeInBackground(op);
+                roller.getThreadManager().executeInBackground(op, priority);
             }
         } catch (InterruptedException e) {
             logger.error("Error executing operation", e);
+        } catch (RejectedExecutionException e) {
+            // bulk work when there is too much else to do
+            logger.warn("Index operation not accepted, try again later: "
+                    + op.getClass().getName());
         }
     }
 
@@ -311,20 +541,58 @@ public class LuceneIndexManager implements IndexManager {
         }
     }
 
-    public synchronized void resetSharedReader() {
-        reader = null;
+    /**
+     * Get the IndexWriter shared by all operations writing to the index.
+     * It must not be closed by them.
+     */
+    public IndexWriter getSharedIndexWriter() {
+        return writer;
     }
 
-    public synchronized IndexReader getSharedIndexReader() {
-        if (reader == null) {
+    /**
+     * How facets are indexed, which searches must agree with.
+     */
+    static FacetsConfig getFacetsConfig() {
+        return facetsConfig;
+    }
+
+    /**
+     * Get the facet ordinals of the index read by the given searcher, they
+     * are only worked out again once the index has been refreshed.  Returns
+     * null if the index has no facets.
+     */
+    SortedSetDocValuesReaderState getFacetsState(IndexSearcher searcher) throws IOException {
+
+        IndexReader reader = searcher.getIndexReader();
+        SortedSetDocValuesReaderState state = facetsState;
+        if (state == null || state.getReader() != reader) {
             try {
-                reader = DirectoryReader.open(getIndexDirectory());
-            } catch (IOException ex) {
-                logger.error("Error opening DirectoryReader", ex);
-                throw new RuntimeException(ex);
+                state = new DefaultSortedSetDocValuesReaderState(reader, facetsConfig);
+            } catch (IllegalArgumentException ex) {
+                // documents indexed before facets were
+                logger.debug("No facets in search index", ex);
+                return null;
             }
+            facetsState = state;
+        }
+        return state;
+    }
+
+    /**
+     * Get a searcher of the index as of its last refresh.  Every searcher
+     * acquired must be given back with releaseSearcher() once its results
+     * have been read.
+     */
+    public IndexSearcher acquireSearcher() throws IOException {
+        return searcherManager.acquire();
+    }
+
+    public void releaseSearcher(IndexSearcher searcher) {
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException ex) {
+            logger.error("Error releasing IndexSearcher", ex);
         }
-        return reader;
     }
 
     /**
@@ -333,14 +601,16 @@ public class LuceneIndexManager implements IndexManager {
      * 
      * @return Directory The directory containing the index, or null if error.
      */
-    public Directory getIndexDirectory() {
+    public synchronized Directory getIndexDirectory() {
 
-        try {
-            return FSDirectory.open(Path.of(indexDir));
-        } catch (IOException e) {
-            logger.error("Problem accessing index directory", e);
+        if (directory == null) {
+            try {
+                directory = FSDirectory.open(Path.of(indexDir));
+            } catch (IOException e) {
+                logger.error("Problem accessing index directory", e);
+            }
         }
-        return null;
+        return directory;
     }
 
     private boolean indexExists() {
@@ -367,27 +637,91 @@ public class LuceneIndexManager implements IndexManager {
 
     }
 
-    private void createIndex(Directory dir) {
-        IndexWriter writer = null;
+    /**
+     * Configuration for writers of the index, or of an index to replace it.
+     */
+    IndexWriterConfig createWriterConfig(IndexWriterConfig.OpenMode mode) {
 
-        try {
+        LimitTokenCountAnalyzer analyzer = new LimitTokenCountAnalyzer(
+                LuceneIndexManager.getAnalyzer(),
+                WebloggerConfig.getIntProperty("lucene.analyzer.maxTokenCount"));
+
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(mode);
+        return config;
+    }
+
+    /**
+     * Directory to build a new index in next to the live one, which stays
+     * searchable until the new index is swapped in.
+     */
+    Path getRebuildPath() {
+        Path live = Path.of(indexDir).toAbsolutePath();
+        return live.resolveSibling(live.getFileName() + "-rebuild");
+    }
 
-            IndexWriterConfig config = new IndexWriterConfig(
-                    new LimitTokenCountAnalyzer(
-                            LuceneIndexManager.getAnalyzer(), 128));
+    /**
+     * Replace the contents of the index with that of the given one.  Must be
+     * called holding the write lock, searches go on seeing the old contents
+     * until the next refresh after the lock is released.
+     */
+    void replaceIndex(Directory source) throws IOException {
+        writer.deleteAll();
+        writer.addIndexes(source);
+    }
 
-            writer = new IndexWriter(dir, config);
+    private void openWriter() throws IOException {
 
-        } catch (IOException e) {
-            logger.error("Error creating index", e);
-        } finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (IOException ex) {
-                    logger.warn("Unable to close IndexWriter.", ex);
+        IndexWriterConfig config = createWriterConfig(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+
+        writer = new IndexWriter(getIndexDirectory(), config);
+        searcherManager = new SearcherManager(writer, null);
+        searcherManager.addListener(new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+                // no-op
+            }
+
+            @Override
+            public void afterRefresh(boolean didRefresh) {
+                // cached hits are for the previous generation
+                if (didRefresh) {
+                    SearchResultsCache.getInstance().clear();
+                }
+            }
+        });
+        lastCommit = System.currentTimeMillis();
+
+        maintenanceWorker = new ContinuousWorkerThread("SearchIndexMaintainer",
+                new IndexMaintenanceJob(), refreshInterval);
+        maintenanceWorker.start();
+    }
+
+    /**
+     * Make the changes written since the last refresh visible to searches,
+     * and commit them if the commit interval has passed.
+     */
+    void maintainIndex() {
+
+        // don't show searches an index which is half way through a write
+        // operation, those changes are picked up on the next run instead
+        if (!rwl.readLock().tryLock()) {
+            return;
+        }
+        try {
+            searcherManager.maybeRefresh();
+
+            long now = System.currentTimeMillis();
+            if (now - lastCommit >= commitInterval) {
+                if (writer.hasUncommittedChanges()) {
+                    writer.commit();
                 }
+                lastCommit = now;
             }
+        } catch (IOException ex) {
+            logger.error("Error refreshing search index", ex);
+        } finally {
+            rwl.readLock().unlock();
         }
     }
 
@@ -398,42 +732,79 @@ public class LuceneIndexManager implements IndexManager {
 
     @Override
     public void shutdown() {
-        
-        indexConsistencyMarker.delete();
 
-        if (reader != null) {
+        if (maintenanceWorker != null) {
+            maintenanceWorker.interrupt();
             try {
-                reader.close();
+                maintenanceWorker.join(RollerConstants.GRACEFUL_SHUTDOWN_WAIT_IN_MILLISECONDS);
+            } catch (InterruptedException ex) {
+                logger.debug(ex.getMessage(), ex);
+            }
+        }
+
+        if (searcherManager != null) {
+            try {
+                searcherManager.close();
+            } catch (IOException ex) {
+                logger.error("Unable to close searcher manager.", ex);
+            }
+        }
+
+        // closing the writer commits whatever is left
+        if (writer != null) {
+            try {
+                writer.close();
             } catch (IOException ex) {
-                logger.error("Unable to close reader.", ex);
+                logger.error("Unable to close writer.", ex);
             }
         }
+
+        if (directory != null) {
+            try {
+                directory.close();
+            } catch (IOException ex) {
+                logger.error("Unable to close index directory.", ex);
+            }
+        }
+
+        indexConsistencyMarker.delete();
+    }
+
+    private class IndexMaintenanceJob implements Job {
+
+        @Override
+        public void execute() {
+            maintainIndex();
+        }
+
+        @Override
+        public void input(Map<String, Object> input) {
+            // no-op
+        }
+
+        @Override
+        public Map<String, Object> output() {
+            return null;
+        }
     }
 
     /**
-     * Convert hits to entries.
+     * Get the page of hits to show.
      *
      * @param hits
-     *            the hits
-     * @param search
-     *            the search
-     * @throws WebloggerException
-     *             the weblogger exception
+     *            the hits of the search, up to and past the page if there
+     *            are any more
+     * @param offset
+     *            where the page starts in the hits
+     * @param generation
+     *            generation of the index the hits were found in
+     * @param facets
+     *            facet counts of all the hits
      */
-    static SearchResultList convertHitsToEntryList(
-        ScoreDoc[] hits,
-        SearchOperation search,
-        int pageNum,
-        int entryCount,
-        String weblogHandle,
-        boolean websiteSpecificSearch,
-        URLStrategy urlStrategy)
-        throws WebloggerException {
-
-        List<WeblogEntryWrapper> results = new ArrayList<>();
+    static CachedHits getPage(ScoreDoc[] hits, int offset, int entryCount,
+            long generation, Map<String, Map<String, Integer>> facets) {
 
-        // determine offset
-        int offset = pageNum * entryCount;
+        // past the last hit, go back to the first page
         if (offset >= hits.length) {
             offset = 0;
         }
@@ -444,20 +815,73 @@ public class LuceneIndexManager implements IndexManager {
             limit = hits.length - offset;
         }
 
+        int[] page = new int[limit];
+        for (int i = 0; i < limit; i++) {
+            page[i] = hits[offset + i].doc;
+        }
+        CachedHits cached = new CachedHits(generation, page, offset, facets);
+
+        // the next page continues after the last hit of this one
+        if (limit > 0 && hits.length > offset + limit) {
+            cached.setNextCursor(SearchCursor.encode(hits[offset + limit - 1]));
+        }
+        return cached;
+    }
+
+    /**
+     * Convert hits to entries.
+     *
+     * @param hits
+     *            the page of hits
+     * @param searcher
+     *            the searcher of the generation the hits were found in
+     * @param fromStoredFields
+     *            build entries from the fields stored in the index, only
+     *            loading them from the database if something else is needed
+     * @throws WebloggerException
+     *             the weblogger exception
+     */
+    static SearchResultList convertHitsToEntryList(
+        CachedHits hits,
+        IndexSearcher searcher,
+        String weblogHandle,
+        boolean websiteSpecificSearch,
+        boolean fromStoredFields,
+        URLStrategy urlStrategy)
+        throws WebloggerException {
+
+        List<WeblogEntryWrapper> results = new ArrayList<>();
+
         try {
             Set<String> categories = new TreeSet<>();
             TreeSet<String> categorySet = new TreeSet<>();
             Weblogger roller = WebloggerFactory.getWeblogger();
             WeblogEntryManager weblogMgr = roller.getWeblogEntryManager();
+            Map<String, Weblog> weblogs = new HashMap<>();
+
+            Map<String, String> snippets = new HashMap<>();
 
             WeblogEntry entry;
+            WeblogEntryWrapper wrapper;
             Document doc;
             String handle;
             Timestamp now = new Timestamp(new Date().getTime());
-            for (int i = offset; i < offset + limit; i++) {
-                doc = search.getSearcher().doc(hits[i].doc);
+            StoredFields storedFields = searcher.storedFields();
+            for (int i = 0; i < hits.getHits().length; i++) {
+                doc = storedFields.document(hits.getHits()[i], RESULT_FIELDS);
                 handle = doc.getField(FieldConstants.WEBSITE_HANDLE).stringValue();
-                entry = weblogMgr.getWeblogEntry(doc.getField(FieldConstants.ID).stringValue());
+                String id = doc.getField(FieldConstants.ID).stringValue();
+
+                entry = null;
+                if (fromStoredFields) {
+                    entry = getStoredEntry(doc, weblogs);
+                }
+                if (entry != null) {
+                    wrapper = WeblogEntryWrapper.wrap(entry, () -> loadEntry(weblogMgr, id), urlStrategy);
+                } else {
+                    entry = weblogMgr.getWeblogEntry(id);
+                    wrapper = WeblogEntryWrapper.wrap(entry, urlStrategy);
+                }
 
                 if (!(websiteSpecificSearch && handle.equals(weblogHandle))
                     && doc.getField(FieldConstants.CATEGORY) != null) {
@@ -468,7 +892,10 @@ public class LuceneIndexManager implements IndexManager {
                 // or entry's user is not the requested user.
                 // but don't return future posts
                 if (entry != null && entry.getPubTime().before(now)) {
-                    results.add(WeblogEntryWrapper.wrap(entry, urlStrategy));
+                    results.add(wrapper);
+                    if (hits.getSnippets()[i] != null) {
+                        snippets.put(id, hits.getSnippets()[i]);
+                    }
                 }
             }
 
@@ -476,10 +903,79 @@ public class LuceneIndexManager implements IndexManager {
                 categories = categorySet;
             }
 
-            return new SearchResultList(results, categories, limit, offset);
+            SearchResultList resultList = new SearchResultList(results, categories,
+                    hits.getLimit(), hits.getOffset(), hits.getFacets());
+            resultList.setSnippets(snippets);
+            return resultList;
 
         } catch (IOException e) {
             throw new WebloggerException(e);
         }
     }
+
+    /**
+     * Build an entry holding just the fields stored in the index, or return
+     * null if the document was indexed before those were stored.
+     *
+     * The index only has the category name and locale in lower case, so
+     * they are matched against the categories and locale of the weblog,
+     * and left out if that doesn't tell them apart.
+     */
+    static WeblogEntry getStoredEntry(Document doc, Map<String, Weblog> weblogs)
+        throws WebloggerException {
+
+        String anchor = doc.get(FieldConstants.ANCHOR);
+        String published = doc.get(FieldConstants.PUBLISHED);
+        if (anchor == null || published == null) {
+            return null;
+        }
+
+        // one lookup per weblog, which the weblog manager has cached anyway
+        String handle = doc.get(FieldConstants.WEBSITE_HANDLE);
+        Weblog weblog = weblogs.get(handle);
+        if (weblog == null) {
+            weblog = WebloggerFactory.getWeblogger().getWeblogManager().getWeblogByHandle(handle, null);
+            if (weblog == null) {
+                return null;
+            }
+            weblogs.put(handle, weblog);
+        }
+
+        WeblogEntry entry = new WeblogEntry();
+        entry.setId(doc.get(FieldConstants.ID));
+        entry.setWebsite(weblog);
+        entry.setTitle(doc.get(FieldConstants.TITLE));
+        entry.setSummary(doc.get(FieldConstants.SUMMARY));
+        entry.setAnchor(anchor);
+        entry.setPubTime(Timestamp.valueOf(published));
+        String updated = doc.get(FieldConstants.UPDATED);
+        if (updated != null) {
+            entry.setUpdateTime(Timestamp.valueOf(updated));
+        }
+
+        String locale = doc.get(FieldConstants.LOCALE);
+        if (locale != null && locale.equalsIgnoreCase(weblog.getLocale())) {
+            entry.setLocale(weblog.getLocale());
+        }
+
+        String category = doc.get(FieldConstants.CATEGORY);
+        if (category != null) {
+            List<WeblogCategory> matches = weblog.getWeblogCategories().stream()
+                    .filter(cat -> category.equalsIgnoreCase(cat.getName()))
+                    .collect(Collectors.toList());
+            if (matches.size() == 1) {
+                entry.setCategory(matches.get(0));
+            }
+        }
+        return entry;
+    }
+
+    private static WeblogEntry loadEntry(WeblogEntryManager weblogMgr, String id) {
+        try {
+            return weblogMgr.getWeblogEntry(id);
+        } catch (WebloggerException e) {
+            logger.error("Error loading weblog entry " + id, e);
+            return null;
+        }
+    }
 }
@@ -78,7 +78,7 @@ public class ReIndexEntryOperation extends WriteToIndexOperation {
             return;
         }
 
-        IndexWriter writer = beginWriting();
+        IndexWriter writer = getWriter();
         try {
             if (writer != null) {
 
@@ -95,7 +95,6 @@ public class ReIndexEntryOperation extends WriteToIndexOperation {
             if (roller != null) {
                 roller.release();
             }
-            endWriting();
         }
     }
 }
@@ -21,6 +21,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
+ * An operation that reads from the index.
+ *
+ * Reads work on a point-in-time searcher of the index, which write
+ * operations never change, so they don't need to lock the index and can be
+ * run on the caller's thread.
+ *
  * @author aim4min
  */
 public abstract class ReadFromIndexOperation extends IndexOperation {
@@ -34,13 +40,9 @@ public abstract class ReadFromIndexOperation extends IndexOperation {
     @Override
     public final void run() {
         try {
-            manager.getReadWriteLock().readLock().lock();
             doRun();
-
         } catch (Exception e) {
-            logger.error("Error acquiring read lock on index", e);
-        } finally {
-            manager.getReadWriteLock().readLock().unlock();
+            logger.error("Error reading from index", e);
         }
     }
     
@@ -18,25 +18,46 @@
 /* Created on Jul 16, 2003 */
 package org.apache.roller.weblogger.business.search.lucene;
 
-import java.text.MessageFormat;
-import java.util.Date;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.Term;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.search.IndexRebuildStatus;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
-import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 
 /**
  * An index operation that rebuilds a given users index (or all indexes).
+ *
+ * Entries are read from the database in batches, paging by id rather than by
+ * offset, and the documents of each batch are analyzed and added on a pool of
+ * threads while the next batch is read.
+ *
+ * A weblog is rebuilt in place, holding the write lock.  The whole index is
+ * rebuilt in a directory next to the live one, which can be searched and
+ * updated meanwhile, and then swapped in.  Changes made to the live index
+ * while it was rebuilt are applied again after the swap.
  * 
  * @author Mindaugas Idzelis (min@idzelis.com)
  */
@@ -54,6 +75,12 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
     private Weblog website;
     private Weblogger roller;
 
+    // number of entries read from the database at a time
+    private final int batchSize;
+
+    // number of threads analyzing documents
+    private final int threads;
+
     // ~ Constructors
     // ===========================================================
 
@@ -68,86 +95,258 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
         super(mgr);
         this.roller = roller;
         this.website = website;
+        this.batchSize = Math.max(1, WebloggerConfig.getIntProperty(
+                "search.index.rebuild.batchSize", 500));
+        int configured = WebloggerConfig.getIntProperty("search.index.rebuild.threads", 0);
+        this.threads = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
     }
 
     // ~ Methods
     // ================================================================
 
     @Override
-    public void doRun() {
+    public void run() {
+        if (website != null) {
+            // holds the write lock
+            super.run();
+        } else {
+            rebuildSite();
+        }
+    }
 
-        Date start = new Date();
+    @Override
+    public void doRun() {
 
         // since this operation can be run on a separate thread we must treat
         // the weblog object passed in as a detached object which is proned to
         // lazy initialization problems, so requery for the object now
-        if (this.website != null) {
-            logger.debug("Reindexining weblog " + website.getHandle());
-            try {
-                this.website = roller.getWeblogManager().getWeblog(
-                        this.website.getId());
-            } catch (WebloggerException ex) {
-                logger.error("Error getting website object", ex);
+        logger.debug("Reindexining weblog " + website.getHandle());
+        IndexRebuildStatus status;
+        try {
+            this.website = roller.getWeblogManager().getWeblog(
+                    this.website.getId());
+            if (this.website == null) {
                 return;
             }
-        } else {
-            logger.debug("Reindexining entire site");
+            status = manager.startRebuild(website.getHandle(),
+                    roller.getWeblogEntryManager().getEntryCount(website));
+        } catch (WebloggerException ex) {
+            logger.error("Error getting website object", ex);
+            return;
+        } finally {
+            roller.release();
         }
 
-        IndexWriter writer = beginWriting();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        boolean success = false;
+        try {
+            IndexWriter writer = getWriter();
+            writer.deleteDocuments(IndexUtil.getTerm(
+                    FieldConstants.WEBSITE_HANDLE, website.getHandle()));
+            indexEntries(writer, website, status, pool);
+            success = true;
+        } catch (Exception e) {
+            logger.error("ERROR adding/deleting doc to index", e);
+        } finally {
+            pool.shutdown();
+            roller.release();
+            status.finish(success);
+        }
 
+        if (success) {
+            logCompleted(status);
+        }
+    }
+
+    /**
+     * Rebuild the whole index next to the live one and swap it in.
+     */
+    private void rebuildSite() {
+
+        logger.debug("Reindexining entire site");
+        IndexRebuildStatus status;
         try {
-            if (writer != null) {
+            status = manager.startRebuild(null,
+                    roller.getWeblogEntryManager().getEntryCount());
+        } catch (WebloggerException ex) {
+            logger.error("Error counting entries", ex);
+            return;
+        } finally {
+            roller.release();
+        }
+        if (status == null) {
+            logger.info("Index is already being rebuilt, ignoring request to rebuild it");
+            return;
+        }
 
-                // Delete Doc
-                Term tWebsite = null;
-                if (website != null) {
-                    tWebsite = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE,
-                            website.getHandle());
-                }
-                if (tWebsite != null) {
-                    writer.deleteDocuments(tWebsite);
-                } else {
-                    Term all = IndexUtil.getTerm(FieldConstants.CONSTANT,
-                            FieldConstants.CONSTANT_V);
-                    writer.deleteDocuments(all);
-                }
+        Path path = manager.getRebuildPath();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        boolean success = false;
+        try {
+            deleteDirectory(path);
+            try (Directory directory = FSDirectory.open(path)) {
 
-                // Add Doc
-                WeblogEntryManager weblogManager = roller
-                        .getWeblogEntryManager();
-                WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
-                wesc.setWeblog(website);
-                wesc.setStatus(PubStatus.PUBLISHED);
-                List<WeblogEntry> entries = weblogManager.getWeblogEntries(wesc);
-
-                logger.debug("Entries to index: " + entries.size());
-
-                for (WeblogEntry entry : entries) {
-                    writer.addDocument(getDocument(entry));
-                    logger.debug(MessageFormat.format(
-                            "Indexed entry {0}: {1}",
-                            entry.getPubTime(), entry.getAnchor()));
+                IndexWriterConfig config = manager.createWriterConfig(
+                        IndexWriterConfig.OpenMode.CREATE);
+                try (IndexWriter sideWriter = new IndexWriter(directory, config)) {
+                    indexEntries(sideWriter, null, status, pool);
+                    sideWriter.commit();
                 }
 
-                // release the database connection
-                roller.release();
+                manager.getReadWriteLock().writeLock().lock();
+                try {
+                    manager.replaceIndex(directory);
+                    reapplyChanges(pool);
+                    getWriter().commit();
+                } finally {
+                    manager.getReadWriteLock().writeLock().unlock();
+                }
             }
+            success = true;
         } catch (Exception e) {
-            logger.error("ERROR adding/deleting doc to index", e);
+            logger.error("ERROR rebuilding index", e);
         } finally {
-            endWriting();
-            if (roller != null) {
-                roller.release();
+            manager.endSiteRebuild();
+            pool.shutdown();
+            roller.release();
+            status.finish(success);
+            try {
+                deleteDirectory(path);
+            } catch (IOException ex) {
+                logger.warn("Unable to delete " + path, ex);
             }
         }
 
-        Date end = new Date();
-        double length = (end.getTime() - start.getTime()) / (double) RollerConstants.SEC_IN_MS;
+        if (success) {
+            logCompleted(status);
+        }
+    }
+
+    /**
+     * Index again the entries and weblogs changed in the live index while
+     * the whole index was rebuilt, as the rebuild may have read them before
+     * they changed.
+     */
+    private void reapplyChanges(ForkJoinPool pool)
+            throws WebloggerException, IOException {
+
+        IndexWriter writer = getWriter();
+        WeblogEntryManager weblogManager = roller.getWeblogEntryManager();
+
+        Set<String> entryIds = manager.getChangedEntries();
+        for (String id : entryIds) {
+            writer.deleteDocuments(IndexUtil.getTerm(FieldConstants.ID, id));
+            WeblogEntry entry = weblogManager.getWeblogEntry(id);
+            if (entry != null && PubStatus.PUBLISHED.equals(entry.getStatus())) {
+                writer.addDocument(getDocument(entry));
+            }
+        }
+
+        Set<String> handles = manager.getChangedWeblogs();
+        for (String handle : handles) {
+            writer.deleteDocuments(IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE, handle));
+            Weblog weblog = roller.getWeblogManager().getWeblogByHandle(handle, null);
+            if (weblog != null) {
+                indexEntries(writer, weblog, null, pool);
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Reapplied changes to " + entryIds.size() + " entries and "
+                    + handles.size() + " weblogs made during the rebuild");
+        }
+    }
+
+    /**
+     * Add the published entries of a weblog, or of all weblogs, to the given
+     * writer.  Each batch is added on the pool while the next one is read.
+     */
+    private void indexEntries(IndexWriter writer, Weblog weblog,
+            IndexRebuildStatus status, ForkJoinPool pool)
+            throws WebloggerException, IOException {
+
+        WeblogEntryManager weblogManager = roller.getWeblogEntryManager();
+        Future<?> pending = null;
+        String lastId = null;
+
+        while (true) {
+            List<WeblogEntry> entries = weblogManager.getPublishedEntriesAfter(
+                    weblog, lastId, batchSize);
+            if (entries.isEmpty()) {
+                break;
+            }
+
+            // reading comments and categories needs the database session
+            // of this thread, so documents are built here
+            List<Document> docs = new ArrayList<>(entries.size());
+            for (WeblogEntry entry : entries) {
+                docs.add(getDocument(entry));
+            }
+            lastId = entries.get(entries.size() - 1).getId();
+
+            // done with these entries, don't let the session keep them all
+            roller.release();
+
+            waitFor(pending);
+            pending = pool.submit(() -> {
+                docs.parallelStream().forEach(doc -> addDocument(writer, doc));
+                if (status != null) {
+                    status.addIndexed(docs.size());
+                }
+            });
+
+            if (entries.size() < batchSize) {
+                break;
+            }
+        }
+        waitFor(pending);
+    }
+
+    private static void addDocument(IndexWriter writer, Document doc) {
+        try {
+            writer.addDocument(doc);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void waitFor(Future<?> pending) throws IOException {
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(path);
+    }
+
+    private void logCompleted(IndexRebuildStatus status) {
+
+        double length = (status.getEndTime() - status.getStartTime())
+                / (double) RollerConstants.SEC_IN_MS;
 
         if (website == null) {
             logger.info("Completed rebuilding index for all users in '"
-                    + length + "' secs");
+                    + length + "' secs, " + status.getIndexedEntries() + " entries");
         } else {
             logger.info("Completed rebuilding index for website handle: '"
                     + website.getHandle() + "' in '" + length + "' seconds");
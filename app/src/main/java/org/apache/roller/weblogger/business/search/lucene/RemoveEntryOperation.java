@@ -75,7 +75,7 @@ public class RemoveEntryOperation extends WriteToIndexOperation {
             return;
         }
 
-        IndexWriter writer = beginWriting();
+        IndexWriter writer = getWriter();
         try {
             if (writer != null) {
                 Term term = new Term(FieldConstants.ID, data.getId());
@@ -83,8 +83,6 @@ public class RemoveEntryOperation extends WriteToIndexOperation {
             }
         } catch (IOException e) {
             logger.error("Error deleting doc from index", e);
-        } finally {
-            endWriting();
         }
     }
 
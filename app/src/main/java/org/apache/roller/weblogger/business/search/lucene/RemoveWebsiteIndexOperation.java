@@ -83,7 +83,7 @@ public class RemoveWebsiteIndexOperation extends WriteToIndexOperation {
             return;
         }
 
-        IndexWriter writer = beginWriting();
+        IndexWriter writer = getWriter();
         try {
             if (writer != null) {
                 String handle = null;
@@ -99,8 +99,6 @@ public class RemoveWebsiteIndexOperation extends WriteToIndexOperation {
             }
         } catch (IOException e) {
             logger.info("Problems deleting doc from index", e);
-        } finally {
-            endWriting();
         }
 
         Date end = new Date();
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.util.Arrays;
+import java.util.Base64;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Turns the last hit of a page of search results into a string which can be
+ * passed around in urls, and back again to search after it for the next page.
+ *
+ * The cursor holds the sort values of the hit, its publish time or score
+ * and then the id of its entry which breaks ties, so it stays valid while
+ * the index changes and documents are renumbered.
+ */
+final class SearchCursor {
+
+    private static final char BY_DATE = 'd';
+    private static final char BY_RELEVANCE = 'r';
+
+    private SearchCursor() {
+    }
+
+    /**
+     * @param hit a hit sorted by SearchOperation, so with the publish time
+     *            or score and then the entry id as its sort values
+     */
+    static String encode(ScoreDoc hit) {
+
+        Object[] fields = ((FieldDoc) hit).fields;
+        String id = encode((BytesRef) fields[1]);
+
+        if (fields[0] instanceof Float) {
+            return BY_RELEVANCE + Integer.toHexString(Float.floatToIntBits((Float) fields[0]))
+                    + '.' + id;
+        }
+        return BY_DATE + encode((BytesRef) fields[0]) + '.' + id;
+    }
+
+    /**
+     * Get the hit to search after, or null if the cursor isn't valid for the
+     * sort order.
+     */
+    static FieldDoc decode(String cursor, boolean relevance) {
+
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+
+        int dot = cursor.indexOf('.');
+        if (dot < 0 || cursor.charAt(0) != (relevance ? BY_RELEVANCE : BY_DATE)) {
+            return null;
+        }
+
+        try {
+            String value = cursor.substring(1, dot);
+            BytesRef id = decode(cursor.substring(dot + 1));
+            Object first = relevance
+                    ? Float.intBitsToFloat(Integer.parseUnsignedInt(value, 16))
+                    : decode(value);
+
+            // the sort values identify the hit, the document number has to
+            // be past any hit with the same values so that it is skipped
+            return new FieldDoc(Integer.MAX_VALUE, Float.NaN, new Object[] {first, id});
+
+        } catch (IllegalArgumentException e) {
+            // bad input, also covers NumberFormatException
+            return null;
+        }
+    }
+
+    private static String encode(BytesRef value) {
+        if (value == null) {
+            return "";
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                Arrays.copyOfRange(value.bytes, value.offset, value.offset + value.length));
+    }
+
+    private static BytesRef decode(String value) {
+        return value.isEmpty() ? null : new BytesRef(Base64.getUrlDecoder().decode(value));
+    }
+}
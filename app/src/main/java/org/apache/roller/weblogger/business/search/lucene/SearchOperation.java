@@ -19,22 +19,37 @@
 package org.apache.roller.weblogger.business.search.lucene;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollectorManager;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollectorManager;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 
 /**
  * An operation that searches the index.
@@ -55,14 +70,28 @@ public class SearchOperation extends ReadFromIndexOperation {
         FieldConstants.C_CONTENT
     };
 
+    // the entry id breaks ties, so that a cursor can resume after any hit
+    private static final SortField BY_ID = new SortField(
+            FieldConstants.ID, SortField.Type.STRING);
+
     private static final Sort SORTER = new Sort(new SortField(
-            FieldConstants.PUBLISHED, SortField.Type.STRING, true));
+            FieldConstants.PUBLISHED, SortField.Type.STRING, true), BY_ID);
+
+    private static final Sort RELEVANCE_SORTER = new Sort(SortField.FIELD_SCORE, BY_ID);
+
+    private static final String[] FACETS = new String[] {
+        FieldConstants.FACET_CATEGORY,
+        FieldConstants.FACET_TAG,
+        FieldConstants.FACET_WEBLOG,
+        FieldConstants.FACET_MONTH
+    };
 
     // ~ Instance fields
     // ========================================================
 
     private IndexSearcher searcher;
-    private TopFieldDocs searchresults;
+    private TopDocs searchresults;
+    private Map<String, Map<String, Integer>> facets = Collections.emptyMap();
 
     private String term;
     private String weblogHandle;
@@ -70,6 +99,12 @@ public class SearchOperation extends ReadFromIndexOperation {
     private String locale;
     private String parseError;
 
+    // the query on the text alone, without filters, to highlight with
+    private Query textQuery;
+    private FieldDoc after;
+    private int maxResults = 500;
+    private boolean sortByRelevance;
+
     // ~ Constructors
     // ===========================================================
 
@@ -96,13 +131,14 @@ public class SearchOperation extends ReadFromIndexOperation {
      */
     @Override
     public void doRun() {
-        final int docLimit = 500;
         searchresults = null;
-        searcher = null;
+        textQuery = null;
 
         try {
-            IndexReader reader = manager.getSharedIndexReader();
-            searcher = new IndexSearcher(reader);
+            // use the searcher given to us, if any
+            if (searcher == null) {
+                searcher = manager.acquireSearcher();
+            }
 
             MultiFieldQueryParser multiParser = new MultiFieldQueryParser(
                     SEARCH_FIELDS, LuceneIndexManager.getAnalyzer());
@@ -111,7 +147,8 @@ public class SearchOperation extends ReadFromIndexOperation {
             multiParser.setDefaultOperator(MultiFieldQueryParser.Operator.AND);
 
             // Create a query object out of our term
-            Query query = multiParser.parse(term);
+            textQuery = multiParser.parse(term);
+            Query query = textQuery;
 
             Term handleTerm = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE, weblogHandle);
             if (handleTerm != null) {
@@ -137,7 +174,14 @@ public class SearchOperation extends ReadFromIndexOperation {
                     .build();
             }
 
-            searchresults = searcher.search(query, docLimit, SORTER);
+            // count the facets of all hits in the same pass
+            Object[] results = searcher.search(query, new MultiCollectorManager(
+                    new TopFieldCollectorManager(sortByRelevance ? RELEVANCE_SORTER : SORTER,
+                            maxResults, after, Integer.MAX_VALUE),
+                    new FacetsCollectorManager()));
+            searchresults = (TopDocs) results[0];
+            FacetsCollector facetsCollector = (FacetsCollector) results[1];
+            facets = countFacets(facetsCollector);
 
         } catch (IOException e) {
             logger.error("Error searching index", e);
@@ -147,7 +191,71 @@ public class SearchOperation extends ReadFromIndexOperation {
             // who cares?
             parseError = e.getMessage();
         }
-        // don't need to close the reader, since we didn't do any writing!
+        // the searcher is released by releaseSearcher() once the results are read
+    }
+
+    private Map<String, Map<String, Integer>> countFacets(FacetsCollector facetsCollector)
+            throws IOException {
+
+        SortedSetDocValuesReaderState state = manager.getFacetsState(searcher);
+        if (state == null) {
+            return Collections.emptyMap();
+        }
+
+        int facetLimit = WebloggerConfig.getIntProperty("search.facets.limit", 20);
+        Facets counts = new SortedSetDocValuesFacetCounts(state, facetsCollector);
+
+        Map<String, Map<String, Integer>> result = new LinkedHashMap<>();
+        for (String dim : FACETS) {
+            Map<String, Integer> dimCounts = new LinkedHashMap<>();
+            FacetResult top = counts.getTopChildren(facetLimit, dim);
+            if (top != null) {
+                for (LabelAndValue labelValue : top.labelValues) {
+                    dimCounts.put(labelValue.label, labelValue.value.intValue());
+                }
+            }
+            result.put(dim, dimCounts);
+        }
+        return result;
+    }
+
+    /**
+     * Get a snippet of the text of each of the given hits with the terms of
+     * the query highlighted, or null where the hit has no matching text.
+     * Must be called before the searcher is released.
+     *
+     * @param docs
+     *            document numbers of the hits
+     */
+    public String[] highlight(int[] docs) throws IOException {
+
+        if (textQuery == null || docs.length == 0) {
+            return new String[docs.length];
+        }
+
+        int passages = WebloggerConfig.getIntProperty("search.highlight.passages", 2);
+        UnifiedHighlighter highlighter = UnifiedHighlighter
+                .builder(searcher, LuceneIndexManager.getAnalyzer())
+                .withFormatter(new DefaultPassageFormatter("<b>", "</b>", "... ", true))
+                // the query is on the indexed text, the snippet from its stored copy
+                .withFieldMatcher(field -> true)
+                .withWeightMatches(false)
+                .build();
+
+        Map<String, String[]> snippets = highlighter.highlightFields(
+                new String[] {FieldConstants.CONTENT_STORED}, textQuery, docs, new int[] {passages});
+        return snippets.get(FieldConstants.CONTENT_STORED);
+    }
+
+    /**
+     * Give the searcher back to the index manager, after which the results
+     * can no longer be read.
+     */
+    public void releaseSearcher() {
+        if (searcher != null) {
+            manager.releaseSearcher(searcher);
+            searcher = null;
+        }
     }
 
     /**
@@ -174,10 +282,19 @@ public class SearchOperation extends ReadFromIndexOperation {
      * 
      * @return the results
      */
-    public TopFieldDocs getResults() {
+    public TopDocs getResults() {
         return searchresults;
     }
 
+    /**
+     * Gets the facet counts of all the results, keyed by dimension.
+     * 
+     * @return the facet counts
+     */
+    public Map<String, Map<String, Integer>> getFacets() {
+        return facets;
+    }
+
     /**
      * Gets the results count.
      * 
@@ -199,6 +316,36 @@ public class SearchOperation extends ReadFromIndexOperation {
         return parseError;
     }
 
+    /**
+     * Sets the hit to continue the search after.
+     * 
+     * @param after
+     *            the last hit of the previous page
+     */
+    public void setAfter(FieldDoc after) {
+        this.after = after;
+    }
+
+    /**
+     * Sets the most hits to gather.
+     * 
+     * @param maxResults
+     *            the new maximum
+     */
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Sets whether to sort the hits by relevance rather than by date.
+     * 
+     * @param sortByRelevance
+     *            true to sort by relevance
+     */
+    public void setSortByRelevance(boolean sortByRelevance) {
+        this.sortByRelevance = sortByRelevance;
+    }
+
     /**
      * Sets the website handle.
      * 
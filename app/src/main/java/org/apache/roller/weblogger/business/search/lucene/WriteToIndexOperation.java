@@ -22,7 +22,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * An operation that writes to index.
+ * An operation that writes to index.  Searchers are not refreshed while one
+ * runs, so searches never see the index half way through the operation.
  * @author Mindaugas Idzelis (min@idzelis.com)
  */
 public abstract class WriteToIndexOperation extends IndexOperation {
@@ -48,6 +49,5 @@ public abstract class WriteToIndexOperation extends IndexOperation {
         } finally {
             manager.getReadWriteLock().writeLock().unlock();
         }
-        manager.resetSharedReader();
     }
 }
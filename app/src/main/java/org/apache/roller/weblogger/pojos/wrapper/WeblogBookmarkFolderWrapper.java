@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.pojos.wrapper;
 import java.util.List;
 import java.util.stream.Collectors;
 import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -39,6 +40,7 @@ public final class WeblogBookmarkFolderWrapper {
     // wrap the given pojo if it is not null
     public static WeblogBookmarkFolderWrapper wrap(WeblogBookmarkFolder toWrap) {
         if (toWrap != null) {
+            CacheDependencies.record(CacheDependencies.folder(toWrap.getId()));
             return new WeblogBookmarkFolderWrapper(toWrap);
         }
         return null;
@@ -23,6 +23,7 @@ import java.util.stream.Collectors;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -47,6 +48,7 @@ public final class WeblogCategoryWrapper {
     // wrap the given pojo if it is not null
     public static WeblogCategoryWrapper wrap(WeblogCategory toWrap, URLStrategy strat) {
         if (toWrap != null) {
+            CacheDependencies.record(CacheDependencies.category(toWrap.getId()));
             return new WeblogCategoryWrapper(toWrap, strat);
         }
         
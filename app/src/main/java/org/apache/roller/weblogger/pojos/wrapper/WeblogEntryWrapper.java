@@ -20,13 +20,16 @@ package org.apache.roller.weblogger.pojos.wrapper;
 
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.apache.roller.weblogger.business.URLStrategy;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
 import org.apache.roller.weblogger.pojos.WeblogEntryTagComparator;
 import org.apache.roller.weblogger.util.HTMLSanitizer;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 
 
 /**
@@ -35,15 +38,20 @@ import org.apache.roller.weblogger.util.HTMLSanitizer;
 public final class WeblogEntryWrapper {
     
     // keep a reference to the wrapped pojo
-    private final WeblogEntry pojo;
+    private WeblogEntry pojo;
+    
+    // for pojos holding only the fields stored in the search index, loads
+    // the whole entry the first time anything else is asked for
+    private Supplier<WeblogEntry> loader;
     
     // url strategy to use for any url building
     private final URLStrategy urlStrategy;
     
     
     // this is private so that we can force the use of the .wrap(pojo) method
-    private WeblogEntryWrapper(WeblogEntry toWrap, URLStrategy strat) {
+    private WeblogEntryWrapper(WeblogEntry toWrap, Supplier<WeblogEntry> loader, URLStrategy strat) {
         this.pojo = toWrap;
+        this.loader = loader;
         this.urlStrategy = strat;
     }
     
@@ -51,24 +59,58 @@ public final class WeblogEntryWrapper {
     // wrap the given pojo if it is not null
     public static WeblogEntryWrapper wrap(WeblogEntry toWrap, URLStrategy strat) {
         if(toWrap != null) {
-            return new WeblogEntryWrapper(toWrap, strat);
+            CacheDependencies.record(CacheDependencies.entry(toWrap.getId()));
+            return new WeblogEntryWrapper(toWrap, null, strat);
+        }
+        return null;
+    }
+    
+    
+    /**
+     * Wrap a pojo which only has the id, title, summary, anchor, weblog,
+     * pubTime and updateTime, and maybe the category and locale, of an
+     * entry filled in, as stored in the search index.  Asking the wrapper
+     * for anything else, or for a category or locale which is missing,
+     * gets the whole entry from the loader first.
+     */
+    public static WeblogEntryWrapper wrap(WeblogEntry toWrap, Supplier<WeblogEntry> loader, URLStrategy strat) {
+        if(toWrap != null) {
+            CacheDependencies.record(CacheDependencies.entry(toWrap.getId()));
+            return new WeblogEntryWrapper(toWrap, loader, strat);
         }
         return null;
     }
     
     
+    // the whole pojo, loading it if we only have its stored fields
+    private WeblogEntry loaded() {
+        if(this.loader != null) {
+            WeblogEntry entry = this.loader.get();
+            this.loader = null;
+            if(entry != null) {
+                this.pojo = entry;
+            }
+        }
+        return this.pojo;
+    }
+    
+    
     public String getId() {
         return this.pojo.getId();
     }
     
     
     public WeblogCategoryWrapper getCategory() {
-        return WeblogCategoryWrapper.wrap(this.pojo.getCategory(), urlStrategy);
+        WeblogCategory category = this.pojo.getCategory();
+        if(category == null) {
+            category = loaded().getCategory();
+        }
+        return WeblogCategoryWrapper.wrap(category, urlStrategy);
     }
     
     
     public List<WeblogCategoryWrapper> getCategories() {      
-        return this.pojo.getCategories().stream()
+        return loaded().getCategories().stream()
                 .map(cat -> WeblogCategoryWrapper.wrap(cat, urlStrategy))
                 .collect(Collectors.toList());
     }
@@ -80,7 +122,7 @@ public final class WeblogEntryWrapper {
     
     
     public UserWrapper getCreator() {
-        return UserWrapper.wrap(this.pojo.getCreator());
+        return UserWrapper.wrap(loaded().getCreator());
     }
     
     
@@ -97,17 +139,17 @@ public final class WeblogEntryWrapper {
      * Simply returns the same value that the pojo would have returned.
      */
     public String getText() {
-        return HTMLSanitizer.conditionallySanitize(this.pojo.getText());
+        return HTMLSanitizer.conditionallySanitize(loaded().getText());
     }
     
     
     public String getContentType() {
-        return this.pojo.getContentType();
+        return loaded().getContentType();
     }
     
     
     public String getContentSrc() {
-        return this.pojo.getContentSrc();
+        return loaded().getContentSrc();
     }
     
     
@@ -117,14 +159,14 @@ public final class WeblogEntryWrapper {
     
     
     public List<WeblogEntryAttributeWrapper> getEntryAttributes() {
-        return this.pojo.getEntryAttributes().stream()
+        return loaded().getEntryAttributes().stream()
                 .map(WeblogEntryAttributeWrapper::wrap)
                 .collect(Collectors.toList());
     }
     
     
     public String findEntryAttribute(String name) {
-        return this.pojo.findEntryAttribute(name);
+        return loaded().findEntryAttribute(name);
     }
     
     
@@ -139,47 +181,48 @@ public final class WeblogEntryWrapper {
     
     
     public PubStatus getStatus() {
-        return this.pojo.getStatus();
+        return loaded().getStatus();
     }
     
     
     public String getLink() {
-        return this.pojo.getLink();
+        return loaded().getLink();
     }
     
     
     public String getPlugins() {
-        return this.pojo.getPlugins();
+        return loaded().getPlugins();
     }
     
     
     public Boolean getAllowComments() {
-        return this.pojo.getAllowComments();
+        return loaded().getAllowComments();
     }
     
     
     public Integer getCommentDays() {
-        return this.pojo.getCommentDays();
+        return loaded().getCommentDays();
     }
     
     
     public Boolean getRightToLeft() {
-        return this.pojo.getRightToLeft();
+        return loaded().getRightToLeft();
     }
     
     
     public Boolean getPinnedToMain() {
-        return this.pojo.getPinnedToMain();
+        return loaded().getPinnedToMain();
     }
     
     
     public String getLocale() {
-        return this.pojo.getLocale();
+        String locale = this.pojo.getLocale();
+        return locale != null ? locale : loaded().getLocale();
     }
     
     
     public List<WeblogEntryTagWrapper> getTags() {
-        return this.pojo.getTags().stream()
+        return loaded().getTags().stream()
                 .sorted(new WeblogEntryTagComparator()) // by name
                 .map(WeblogEntryTagWrapper::wrap)
                 .collect(Collectors.toList());
@@ -187,12 +230,12 @@ public final class WeblogEntryWrapper {
     
     
     public String getTagsAsString() {
-        return this.pojo.getTagsAsString();
+        return loaded().getTagsAsString();
     }
     
     
     public boolean getCommentsStillAllowed() {
-        return this.pojo.getCommentsStillAllowed();
+        return loaded().getCommentsStillAllowed();
     }
     
     
@@ -207,21 +250,21 @@ public final class WeblogEntryWrapper {
     
     
     public List<WeblogEntryCommentWrapper> getComments() {
-        return this.pojo.getComments().stream()
+        return loaded().getComments().stream()
                 .map(comment -> WeblogEntryCommentWrapper.wrap(comment, urlStrategy))
                 .collect(Collectors.toList());
     }
     
     
     public List<WeblogEntryCommentWrapper> getComments(boolean ignoreSpam, boolean approvedOnly) {
-        return this.pojo.getComments(ignoreSpam, approvedOnly).stream()
+        return loaded().getComments(ignoreSpam, approvedOnly).stream()
                 .map(comment -> WeblogEntryCommentWrapper.wrap(comment, urlStrategy))
                 .collect(Collectors.toList());
     }
     
     
     public int getCommentCount() {
-        return this.pojo.getCommentCount();
+        return loaded().getCommentCount();
     }
     
     
@@ -241,47 +284,51 @@ public final class WeblogEntryWrapper {
     
     
     public String getDisplayTitle() {
-        return this.pojo.getDisplayTitle();
+        String title = this.pojo.getTitle();
+        if(title != null && !title.isBlank()) {
+            return this.pojo.getDisplayTitle();
+        }
+        return loaded().getDisplayTitle();
     }
     
     
     public String getRss09xDescription() {
-        return this.pojo.getRss09xDescription();
+        return loaded().getRss09xDescription();
     }
     
     
     public String getRss09xDescription(int maxLength) {
-        return this.pojo.getRss09xDescription(maxLength);
+        return loaded().getRss09xDescription(maxLength);
     }
     
     
     // TODO: check this method for safety
     public List<String> getPluginsList() {
-        return this.pojo.getPluginsList();
+        return loaded().getPluginsList();
     }
     
     
     public String getTransformedText() {
-        return this.pojo.getTransformedText();
+        return loaded().getTransformedText();
     }
     
     
     public String getTransformedSummary() {
-        return this.pojo.getTransformedSummary();
+        return loaded().getTransformedSummary();
     }
     
     
     public String displayContent(String readMoreLink) {
-        return this.pojo.displayContent(readMoreLink);
+        return loaded().displayContent(readMoreLink);
     }
     
     
     public String getDisplayContent() {
-        return this.pojo.getDisplayContent();
+        return loaded().getDisplayContent();
     }
 
 	public String getSearchDescription() {
-        return HTMLSanitizer.conditionallySanitize(this.pojo.getSearchDescription());
+        return HTMLSanitizer.conditionallySanitize(loaded().getSearchDescription());
 	}
     
     /**
@@ -291,7 +338,7 @@ public final class WeblogEntryWrapper {
      * orginal pojo object.
      */
     public WeblogEntry getPojo() {
-        return this.pojo;
+        return loaded();
     }
     
 }
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.ui.core.filters;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.util.IPBanList;
+import org.apache.roller.weblogger.util.RateLimiter;
+
+
+/**
+ * Throttles comment and trackback posting.  Clients posting more often than
+ * the comment.throttle.* or trackback.throttle.* properties allow are banned
+ * and get a 404 response.
+ *
+ * Mapped ahead of the persistence and request mapping filters, so abusive
+ * clients are turned away before any database work is done.
+ *
+ * @web.filter name="RateLimitFilter"
+ */
+public class RateLimitFilter implements Filter {
+    
+    private static Log log = LogFactory.getLog(RateLimitFilter.class);
+    
+    private static final String COMMENT_SERVLET = "/roller-ui/rendering/comment";
+    private static final String TRACKBACK_SERVLET = "/roller-ui/rendering/trackback";
+    
+    private RateLimiter commentLimiter = null;
+    private RateLimiter trackbackLimiter = null;
+    
+    
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        
+        log.info("INIT RateLimitFilter");
+        
+        commentLimiter = RateLimiter.getLimiter("comment");
+        trackbackLimiter = RateLimiter.getLimiter("trackback");
+        
+        log.info("Comment Throttling " + (commentLimiter != null ? "ENABLED" : "DISABLED"));
+        log.info("Trackback Throttling " + (trackbackLimiter != null ? "ENABLED" : "DISABLED"));
+    }
+    
+    
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        
+        RateLimiter limiter = getLimiter(request);
+        if (limiter != null && limiter.processHit(request.getRemoteAddr())) {
+            log.debug("ABUSIVE " + request.getRemoteAddr());
+            IPBanList.getInstance().addBannedIp(request.getRemoteAddr());
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        
+        chain.doFilter(request, response);
+    }
+    
+    
+    /**
+     * Get the limiter for the endpoint a request posts to, if any.  Comments
+     * and trackbacks are posted to entry permalinks and told apart the same
+     * way the WeblogRequestMapper does, or straight to their servlets.
+     */
+    private RateLimiter getLimiter(HttpServletRequest request) {
+        
+        if (!"POST".equals(request.getMethod())
+                || (commentLimiter == null && trackbackLimiter == null)) {
+            return null;
+        }
+        
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith(COMMENT_SERVLET)) {
+            return commentLimiter;
+        } else if (path.startsWith(TRACKBACK_SERVLET)) {
+            return trackbackLimiter;
+        } else if (path.contains("/entry/")) {
+            // trackback requests are required to have an "excerpt" param,
+            // comment requests a "content" param
+            if (request.getParameter("excerpt") != null) {
+                return trackbackLimiter;
+            } else if (request.getParameter("content") != null) {
+                return commentLimiter;
+            }
+        }
+        return null;
+    }
+    
+    
+    @Override
+    public void destroy() {}
+    
+}
@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.ui.rendering.model;
 import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -31,6 +32,7 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.SearchCriteria;
 import org.apache.roller.weblogger.business.search.SearchResultList;
 import org.apache.roller.weblogger.pojos.WeblogEntryWrapperComparator;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogCategoryWrapper;
@@ -62,6 +64,10 @@ public class SearchResultsModel extends PageModel {
 	private int offset = 0;
 	private int limit = 0;
 	private Set<String> categories = new TreeSet<String>();
+	private Map<String, Map<String, Integer>> facets = Collections.emptyMap();
+	private List<WeblogEntryWrapper> entries = Collections.emptyList();
+	private Map<String, String> snippets = Collections.emptyMap();
+	private String nextCursor = null;
 	private String errorMessage = "";
 
 	@Override
@@ -91,19 +97,27 @@ public class SearchResultsModel extends PageModel {
 		// setup the search
 		IndexManager indexMgr = WebloggerFactory.getWeblogger().getIndexManager();
 		try {
-			SearchResultList searchResultList = indexMgr.search(
-				searchRequest.getQuery(),
-				searchRequest.getWeblogHandle(),
-				searchRequest.getWeblogCategoryName(),
-				searchRequest.getLocale(),
-				searchRequest.getPageNum(),
-				RESULTS_PER_PAGE,
-				urlStrategy
-			);
+			SearchCriteria criteria = new SearchCriteria();
+			criteria.setTerm(searchRequest.getQuery());
+			criteria.setWeblogHandle(searchRequest.getWeblogHandle());
+			criteria.setCategory(searchRequest.getWeblogCategoryName());
+			criteria.setLocale(searchRequest.getLocale());
+			criteria.setPageNum(searchRequest.getPageNum());
+			criteria.setEntryCount(RESULTS_PER_PAGE);
+			criteria.setCursor(searchRequest.getCursor());
+			if (searchRequest.isSortByRelevance()) {
+				criteria.setSortBy(SearchCriteria.SortBy.RELEVANCE);
+			}
+
+			SearchResultList searchResultList = indexMgr.search(criteria, urlStrategy);
 			hits = searchResultList.getResults().size();
 			offset = searchResultList.getOffset();
 			limit = searchResultList.getLimit();
 			categories = searchResultList.getCategories();
+			facets = searchResultList.getFacets();
+			entries = searchResultList.getResults();
+			snippets = searchResultList.getSnippets();
+			nextCursor = searchResultList.getNextCursor();
 
 			Timestamp now = new Timestamp(new Date().getTime());
 			for (WeblogEntryWrapper entry : searchResultList.getResults()) {
@@ -190,6 +204,42 @@ public class SearchResultsModel extends PageModel {
 		return categories;
 	}
 
+	/**
+	 * Hit counts of the whole search by "category", "tag", "weblog" and
+	 * "month", worked out by the search itself.
+	 */
+	public Map<String, Map<String, Integer>> getFacets() {
+		return facets;
+	}
+
+	/**
+	 * The entries of this page in the order the search found them, which
+	 * unlike getResults() keeps the order when sorting by relevance.
+	 */
+	public List<WeblogEntryWrapper> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Text of an entry with the search terms highlighted, or null if there
+	 * is none.
+	 */
+	public String getSnippet(String entryId) {
+		return snippets.get(entryId);
+	}
+
+	/**
+	 * Cursor to pass as the "after" parameter for the next page of results,
+	 * or null if this is the last page.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public boolean isSortByRelevance() {
+		return searchRequest.isSortByRelevance();
+	}
+
 	public String getErrorMessage() {
 		return errorMessage;
 	}
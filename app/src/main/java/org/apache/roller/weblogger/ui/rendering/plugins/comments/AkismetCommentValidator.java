@@ -43,10 +43,12 @@ public class AkismetCommentValidator implements CommentValidator {
     private static Log log = LogFactory.getLog(AkismetCommentValidator.class);    
     private ResourceBundle bundle = ResourceBundle.getBundle("ApplicationResources");
     private String apikey;
+    private int timeout;
     
     /** Creates a new instance of AkismetCommentValidator */
     public AkismetCommentValidator() {
         apikey = WebloggerConfig.getProperty("comment.validator.akismet.apikey");
+        timeout = WebloggerConfig.getIntProperty("comment.validator.remote.timeout", 10) * RollerConstants.SEC_IN_MS;
     }
 
     @Override
@@ -54,8 +56,18 @@ public class AkismetCommentValidator implements CommentValidator {
         return bundle.getString("comment.validator.akismetName");
     }
 
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
     @Override
     public int validate(WeblogEntryComment comment, RollerMessages messages) {
+        return prepare(comment).validate(messages);
+    }
+
+    @Override
+    public RemoteValidation prepare(WeblogEntryComment comment) {
         StringBuilder sb = new StringBuilder();
         sb.append("blog=").append(
             WebloggerFactory.getWeblogger().getUrlStrategy().getWeblogURL(comment.getWeblogEntry().getWebsite(), null, true)).append("&");
@@ -69,17 +81,25 @@ public class AkismetCommentValidator implements CommentValidator {
         sb.append("comment_author_url="  ).append(comment.getUrl()).append("&");
         sb.append("comment_content="     ).append(comment.getContent());
 
+        String query = sb.toString();
+        String userAgent = "Roller " + WebloggerFactory.getWeblogger().getVersion();
+        return messages -> check(query, userAgent, messages);
+    }
+
+    private int check(String query, String userAgent, RollerMessages messages) {
         try {
             URL url = new URL("http://" + apikey + ".rest.akismet.com/1.1/comment-check");
             URLConnection conn = url.openConnection();
             conn.setDoOutput(true);
+            conn.setConnectTimeout(timeout);
+            conn.setReadTimeout(timeout);
 
-            conn.setRequestProperty("User_Agent", "Roller " + WebloggerFactory.getWeblogger().getVersion()); 
+            conn.setRequestProperty("User_Agent", userAgent); 
             conn.setRequestProperty("Content-type", "application/x-www-form-urlencoded;charset=utf8"); 
-            conn.setRequestProperty("Content-length", Integer.toString(sb.length()));
+            conn.setRequestProperty("Content-length", Integer.toString(query.length()));
 
             OutputStreamWriter osr = new OutputStreamWriter(conn.getOutputStream());
-            osr.write(sb.toString(), 0, sb.length());
+            osr.write(query, 0, query.length());
             osr.flush();
             osr.close();
 
@@ -20,21 +20,35 @@ package org.apache.roller.weblogger.ui.rendering.plugins.comments;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.runnable.TaskPriority;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.util.Reflection;
 import org.apache.roller.weblogger.util.RollerMessages;
 
 /**
  * Responsible for loading validators and using them to validate comments.
+ *
+ * Local validators run first, in the configured order, and as soon as one of
+ * them rejects a comment the rest are skipped since the comment can no longer
+ * score 100%.  Remote validators, which call out to services like Akismet,
+ * then run concurrently in the background, each given at most
+ * comment.validator.remote.timeout seconds before it counts as a rejection.
  */
 public class CommentValidationManager {
 
     private static final Log log = LogFactory.getLog(CommentValidationManager.class);
     private final List<CommentValidator> validators = new ArrayList<>();
+    private final boolean shortCircuit;
+    private final long remoteTimeout;
 
     public CommentValidationManager() {
         
@@ -45,6 +59,10 @@ public class CommentValidationManager {
             log.error("Error instantiating comment validators", ex);
         }
         
+        shortCircuit = WebloggerConfig.getBooleanProperty("comment.validator.shortCircuit", true);
+        remoteTimeout = (long) WebloggerConfig.getIntProperty(
+                "comment.validator.remote.timeout", 10) * RollerConstants.SEC_IN_MS;
+        
         log.info("Configured " + validators.size() + " CommentValidators");
         log.info(validators.stream().map(t -> t.getClass().toString()).collect(Collectors.joining(",", "[", "]")));
     }
@@ -62,18 +80,136 @@ public class CommentValidationManager {
      * @return Number indicating confidence that comment is valid (100 meaning 100%)
      */
     public int validateComment(WeblogEntryComment comment, RollerMessages messages) {
+        return validateCommentAsync(comment, messages).join();
+    }
+    
+    /**
+     * Validate a comment without waiting for the remote validators.
+     *
+     * The local validators run on the calling thread, and if they already
+     * decide the score, or there are no remote validators, the returned
+     * future is complete.  Otherwise it completes once all remote validators
+     * have finished or run out of time, their errors are added to the
+     * messages just before, so the messages must not be used by the caller
+     * while the future is incomplete.
+     *
+     * @param comment Comment to be validated
+     * @param messages Messages object to which errors will be added
+     * @return Future of the number indicating confidence that comment is valid
+     */
+    public CompletableFuture<Integer> validateCommentAsync(WeblogEntryComment comment,
+            RollerMessages messages) {
+        
+        if (validators.isEmpty()) {
+            // When no validators: consider all comments valid
+            return CompletableFuture.completedFuture(RollerConstants.PERCENT_100);
+        }
+        
+        // cheap local checks first
         int total = 0;
-        if (!validators.isEmpty()) {
-            for (CommentValidator val : validators) {
-                log.debug("Invoking comment validator "+val.getName());
-                total += val.validate(comment, messages);
+        int count = 0;
+        List<CommentValidator> remoteValidators = new ArrayList<>();
+        for (CommentValidator val : validators) {
+            if (val.isRemote()) {
+                remoteValidators.add(val);
+                continue;
             }
-            total = total / validators.size();
-        } else {
-            // When no validators: consider all comments valid
-            total = RollerConstants.PERCENT_100;
+            log.debug("Invoking comment validator "+val.getName());
+            int score = val.validate(comment, messages);
+            total += score;
+            count++;
+            if (shortCircuit && score < RollerConstants.PERCENT_100) {
+                log.debug("Comment rejected by "+val.getName()+", skipping remaining validators");
+                return CompletableFuture.completedFuture(total / count);
+            }
+        }
+        
+        if (remoteValidators.isEmpty()) {
+            return CompletableFuture.completedFuture(total / count);
+        }
+        
+        // then all the remote ones at once, each with its own messages
+        // since they may finish at the same time
+        List<CompletableFuture<Integer>> scores = new ArrayList<>();
+        List<RollerMessages> remoteMessages = new ArrayList<>();
+        for (CommentValidator val : remoteValidators) {
+            RollerMessages valMessages = new RollerMessages();
+            remoteMessages.add(valMessages);
+            scores.add(validateRemotely(val, comment, valMessages));
         }
-        return total;
+        
+        final int localTotal = total;
+        final int localCount = count;
+        return CompletableFuture.allOf(scores.toArray(new CompletableFuture<?>[0])).handle((done, e) -> {
+            int sum = localTotal;
+            for (int i = 0; i < scores.size(); i++) {
+                CompletableFuture<Integer> score = scores.get(i);
+                if (score.isCompletedExceptionally()) {
+                    // timed out or never started, and may still be adding messages
+                    log.warn("Comment validator "+remoteValidators.get(i).getName()+" did not finish in time");
+                    continue;
+                }
+                sum += score.join();
+                messages.addErrors(remoteMessages.get(i));
+            }
+            return sum / (localCount + scores.size());
+        });
+    }
+    
+    /**
+     * Run a remote validator in the background, a validator which fails
+     * scores 0 and one which takes too long completes exceptionally.
+     *
+     * Whatever the validator needs from the comment is copied here, on the
+     * calling thread, so the background thread never touches the comment
+     * or its entry and weblog.  If the pool is too busy and hands the work
+     * back to the calling thread it is skipped rather than run without a
+     * time limit, as if it had timed out.
+     */
+    private CompletableFuture<Integer> validateRemotely(CommentValidator val,
+            WeblogEntryComment comment, RollerMessages messages) {
+        
+        CommentValidator.RemoteValidation check;
+        try {
+            check = val.prepare(comment);
+        } catch (RuntimeException e) {
+            log.error("Error preparing comment validator "+val.getName(), e);
+            return CompletableFuture.completedFuture(0);
+        }
+        
+        Thread caller = Thread.currentThread();
+        CompletableFuture<Integer> score = new CompletableFuture<>();
+        Runnable validation = () -> {
+            if (Thread.currentThread() == caller) {
+                log.warn("No thread free to run comment validator "+val.getName());
+                score.completeExceptionally(new RejectedExecutionException(val.getName()));
+                return;
+            }
+            log.debug("Invoking comment validator "+val.getName());
+            try {
+                score.complete(check.validate(messages));
+            } catch (RuntimeException e) {
+                log.error("Error running comment validator "+val.getName(), e);
+                score.complete(0);
+            } finally {
+                // only a pool thread, in case the validator used the session
+                WebloggerFactory.getWeblogger().release();
+            }
+        };
+        
+        try {
+            WebloggerFactory.getWeblogger().getThreadManager()
+                    .executeInBackground(validation, TaskPriority.INTERACTIVE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted starting comment validator "+val.getName());
+            score.complete(0);
+        } catch (RejectedExecutionException e) {
+            log.warn("Could not start comment validator "+val.getName());
+            score.completeExceptionally(e);
+        }
+        
+        return score.orTimeout(remoteTimeout, TimeUnit.MILLISECONDS);
     }
     
 }
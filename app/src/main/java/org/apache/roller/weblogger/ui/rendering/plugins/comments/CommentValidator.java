@@ -35,4 +35,40 @@ public interface CommentValidator {
      * @return Number indicating confidence that comment is valid (100 meaning 100%)
      */
     int validate(WeblogEntryComment comment, RollerMessages messages);
+
+    /**
+     * Does this validator call out to other servers?  Remote validators are
+     * run after the local ones, concurrently and with a time limit, by way
+     * of {@link #prepare(WeblogEntryComment)}.
+     */
+    default boolean isRemote() {
+        return false;
+    }
+
+    /**
+     * Copy what validation needs out of the comment, its entry and weblog,
+     * on the calling thread, returning the check itself which is then run
+     * on a background thread without touching the comment.
+     *
+     * Remote validators should override this, the default hands the
+     * comment itself to the background thread.
+     *
+     * @param comment Comment to be validated
+     */
+    default RemoteValidation prepare(WeblogEntryComment comment) {
+        return messages -> validate(comment, messages);
+    }
+
+    /**
+     * The part of a remote validator which runs on a background thread.
+     */
+    @FunctionalInterface
+    interface RemoteValidation {
+
+        /**
+         * @param messages Messages object to which errors will added
+         * @return Number indicating confidence that comment is valid (100 meaning 100%)
+         */
+        int validate(RollerMessages messages);
+    }
 }
@@ -42,25 +42,40 @@ public class TrackbackLinkbackCommentValidator implements CommentValidator {
         return bundle.getString("comment.validator.trackbackLinkbackName");
     }
     
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+    
     @Override
     public int validate(WeblogEntryComment comment, RollerMessages messages) {
+        return prepare(comment).validate(messages);
+    }
+    
+    @Override
+    public RemoteValidation prepare(WeblogEntryComment comment) {
         
         // linkback validation can be toggled at runtime, so check if it's enabled
         // if it's disabled then just return a score of 100
         if(!WebloggerRuntimeConfig.getBooleanProperty("site.trackbackVerification.enabled")) {
-            return RollerConstants.PERCENT_100;
+            return messages -> RollerConstants.PERCENT_100;
         }
         
+        String commentURL = comment.getUrl();
+        String entryURL = WebloggerFactory.getWeblogger().getUrlStrategy().getWeblogEntryURL(
+                comment.getWeblogEntry().getWebsite(),
+                null,
+                comment.getWeblogEntry().getAnchor(),
+                true);
+        return messages -> check(commentURL, entryURL, messages);
+    }
+    
+    private int check(String commentURL, String entryURL, RollerMessages messages) {
+        
         int ret = 0;
         LinkbackExtractor linkback = null;
         try {
-            linkback = new LinkbackExtractor(
-                    comment.getUrl(),
-                    WebloggerFactory.getWeblogger().getUrlStrategy().getWeblogEntryURL(
-                    comment.getWeblogEntry().getWebsite(),
-                    null,
-                    comment.getWeblogEntry().getAnchor(),
-                    true));
+            linkback = new LinkbackExtractor(commentURL, entryURL);
         } catch (MalformedURLException ignored1) {
         } catch (IOException ignored2) {}
         
@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.ui.rendering.servlets;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletConfig;
@@ -40,6 +41,8 @@ import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.business.search.IndexManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.business.runnable.TaskPriority;
+import org.apache.roller.weblogger.business.runnable.ThreadManager;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
@@ -49,8 +52,6 @@ import org.apache.roller.weblogger.ui.rendering.plugins.comments.CommentValidati
 import org.apache.roller.weblogger.ui.rendering.plugins.comments.DefaultCommentAuthenticator;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogCommentRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogEntryCommentForm;
-import org.apache.roller.weblogger.util.GenericThrottle;
-import org.apache.roller.weblogger.util.IPBanList;
 import org.apache.roller.weblogger.util.MailUtil;
 import org.apache.roller.weblogger.util.I18nMessages;
 import org.apache.roller.weblogger.util.Reflection;
@@ -78,7 +79,7 @@ public class CommentServlet extends HttpServlet {
 
     private CommentAuthenticator authenticator = null;
     private CommentValidationManager commentValidationManager = null;
-    private GenericThrottle commentThrottle = null;
+    private boolean asyncValidation = false;
 
     /**
      * Initialization.
@@ -105,37 +106,8 @@ public class CommentServlet extends HttpServlet {
         // instantiate a comment validation manager for comment spam checking
         commentValidationManager = new CommentValidationManager();
 
-        // are we doing throttling?
-        if (WebloggerConfig.getBooleanProperty("comment.throttle.enabled")) {
-
-            int threshold = 25;
-            try {
-                threshold = Integer.parseInt(WebloggerConfig.getProperty("comment.throttle.threshold"));
-            } catch (NumberFormatException e) {
-                log.warn("bad input for config property comment.throttle.threshold", e);
-            }
-
-            int interval = RollerConstants.MIN_IN_MS;
-            try {
-                interval = Integer.parseInt(WebloggerConfig.getProperty("comment.throttle.interval"));
-                // convert from seconds to milliseconds
-                interval = interval * RollerConstants.SEC_IN_MS;
-            } catch (NumberFormatException e) {
-                log.warn("bad input for config property comment.throttle.interval", e);
-            }
-
-            int maxEntries = 250;
-            try {
-                maxEntries = Integer.parseInt(WebloggerConfig.getProperty("comment.throttle.maxentries"));
-            } catch (NumberFormatException e) {
-                log.warn("bad input for config property comment.throttle.maxentries", e);
-            }
-
-            commentThrottle = new GenericThrottle(threshold, interval, maxEntries);
-            log.info("Comment Throttling ENABLED");
-        } else {
-            log.info("Comment Throttling DISABLED");
-        }
+        // accept comments before the remote validators are done?
+        asyncValidation = WebloggerConfig.getBooleanProperty("comment.validator.async.enabled", false);
     }
 
     /**
@@ -179,16 +151,6 @@ public class CommentServlet extends HttpServlet {
             log.debug("Handling regular comment post");
         }
 
-        // throttling protection against spammers
-        if (commentThrottle != null
-                && commentThrottle.processHit(request.getRemoteAddr())) {
-
-            log.debug("ABUSIVE " + request.getRemoteAddr());
-            IPBanList.getInstance().addBannedIp(request.getRemoteAddr());
-            response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
-        }
-
         WeblogCommentRequest commentRequest;
         try {
             commentRequest = new WeblogCommentRequest(request);
@@ -309,13 +271,29 @@ public class CommentServlet extends HttpServlet {
             return;
         }
 
-        int validationScore = commentValidationManager.validateComment(comment,
-                messages);
-        log.debug("Comment Validation score: " + validationScore);
+        // with async validation the comment doesn't wait for the remote
+        // validators, whose messages are kept apart until they are done
+        RollerMessages validationMessages = new RollerMessages();
+        CompletableFuture<Integer> validation = commentValidationManager
+                .validateCommentAsync(comment, validationMessages);
+        final boolean awaitingValidation = asyncValidation && !preview && !validation.isDone();
+        int validationScore = 0;
+        if (awaitingValidation) {
+            log.debug("Comment Validation pending");
+        } else {
+            validationScore = validation.join();
+            messages.addErrors(validationMessages);
+            log.debug("Comment Validation score: " + validationScore);
+        }
 
         if (!preview) {
 
-            if (validationScore == RollerConstants.PERCENT_100
+            if (awaitingValidation) {
+                // held for moderation until the remote validators are done
+                comment.setStatus(ApprovalStatus.PENDING);
+                message = messageUtils
+                        .getString("commentServlet.submittedToModerator");
+            } else if (validationScore == RollerConstants.PERCENT_100
                     && weblog.getCommentModerationRequired()) {
                 // Valid comments go into moderation if required
                 comment.setStatus(ApprovalStatus.PENDING);
@@ -369,29 +347,35 @@ public class CommentServlet extends HttpServlet {
                     mgr.saveComment(comment);
                     WebloggerFactory.getWeblogger().flush();
 
-                    // Send email notifications only to subscribers if comment
-                    // is 100% valid
-                    boolean notifySubscribers = (validationScore == RollerConstants.PERCENT_100);
-                    MailUtil.sendEmailNotification(comment, messages,
-                            messageUtils, notifySubscribers);
-
-                    // only re-index/invalidate the cache if comment isn't
-                    // moderated
-                    if (!weblog.getCommentModerationRequired()) {
-                        IndexManager manager = WebloggerFactory.getWeblogger()
-                                .getIndexManager();
-
-                        // remove entry before (re)adding it, or in case it
-                        // isn't Published
-                        manager.removeEntryIndexOperation(entry);
-
-                        // if published, index the entry
-                        if (entry.isPublished()) {
-                            manager.addEntryIndexOperation(entry);
+                    if (awaitingValidation) {
+                        // notifications are sent once the outcome is known, on a
+                        // background thread since the future may be completed on
+                        // a timer thread which must never be held up
+                        String commentId = comment.getId();
+                        ThreadManager threadManager = WebloggerFactory.getWeblogger()
+                                .getThreadManager();
+                        validation.thenAcceptAsync(score -> finishValidation(
+                                commentId, score, validationMessages, messageUtils),
+                                moderation -> {
+                                    if (!threadManager.tryExecuteInBackground(
+                                            moderation, TaskPriority.NORMAL)) {
+                                        log.warn("Background queue full, comment "
+                                                + commentId + " stays in moderation");
+                                    }
+                                });
+
+                    } else {
+                        // Send email notifications only to subscribers if comment
+                        // is 100% valid
+                        boolean notifySubscribers = (validationScore == RollerConstants.PERCENT_100);
+                        MailUtil.sendEmailNotification(comment, messages,
+                                messageUtils, notifySubscribers);
+
+                        // only re-index/invalidate the cache if comment isn't
+                        // moderated
+                        if (!weblog.getCommentModerationRequired()) {
+                            commentPublished(comment);
                         }
-
-                        // Clear all caches associated with comment
-                        CacheManager.invalidate(comment);
                     }
 
                     // comment was successful, clear the comment form
@@ -419,4 +403,72 @@ public class CommentServlet extends HttpServlet {
         dispatcher.forward(request, response);
     }
 
+    /**
+     * Re-index the entry of a newly visible comment and clear all caches
+     * associated with the comment.
+     */
+    private void commentPublished(WeblogEntryComment comment)
+            throws WebloggerException {
+
+        WeblogEntry entry = comment.getWeblogEntry();
+        IndexManager manager = WebloggerFactory.getWeblogger().getIndexManager();
+
+        // remove entry before (re)adding it, or in case it isn't Published
+        manager.removeEntryIndexOperation(entry);
+
+        // if published, index the entry
+        if (entry.isPublished()) {
+            manager.addEntryIndexOperation(entry);
+        }
+
+        // Clear all caches associated with comment
+        CacheManager.invalidate(comment);
+    }
+
+    /**
+     * Move a comment accepted before its remote validators were done out of
+     * moderation once they are.  Runs on a background thread, where the
+     * index removal of commentPublished() runs inline instead of waiting
+     * on the pool.
+     */
+    private void finishValidation(String commentId, int validationScore,
+            RollerMessages messages, I18nMessages messageUtils) {
+
+        try {
+            WeblogEntryManager mgr = WebloggerFactory.getWeblogger()
+                    .getWeblogEntryManager();
+            WeblogEntryComment comment = mgr.getComment(commentId);
+            if (comment == null || !ApprovalStatus.PENDING.equals(comment.getStatus())) {
+                // already deleted or moderated by the weblog's owner
+                return;
+            }
+            log.debug("Comment Validation score: " + validationScore);
+
+            if (validationScore != RollerConstants.PERCENT_100) {
+                log.debug("Comment marked as spam");
+                if (WebloggerRuntimeConfig.getBooleanProperty("comments.ignoreSpam.enabled")) {
+                    mgr.removeComment(comment);
+                    WebloggerFactory.getWeblogger().flush();
+                    return;
+                }
+                comment.setStatus(ApprovalStatus.SPAM);
+            } else if (!comment.getWeblogEntry().getWebsite().getCommentModerationRequired()) {
+                comment.setStatus(ApprovalStatus.APPROVED);
+            }
+            mgr.saveComment(comment);
+            WebloggerFactory.getWeblogger().flush();
+
+            MailUtil.sendEmailNotification(comment, messages, messageUtils,
+                    validationScore == RollerConstants.PERCENT_100);
+            if (ApprovalStatus.APPROVED.equals(comment.getStatus())) {
+                commentPublished(comment);
+            }
+
+        } catch (WebloggerException e) {
+            log.error("Error finishing validation of comment " + commentId, e);
+        } finally {
+            WebloggerFactory.getWeblogger().release();
+        }
+    }
+
 }
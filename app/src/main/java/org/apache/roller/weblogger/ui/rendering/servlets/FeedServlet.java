@@ -38,6 +38,7 @@ import org.apache.roller.weblogger.pojos.StaticTemplate;
 import org.apache.roller.weblogger.pojos.Template;
 import org.apache.roller.weblogger.pojos.TemplateRendition.TemplateLanguage;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.ui.rendering.util.ETagHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.ui.rendering.Renderer;
@@ -48,6 +49,7 @@ import org.apache.roller.weblogger.ui.rendering.model.SearchResultsFeedModel;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogFeedCache;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
+import org.apache.roller.weblogger.ui.rendering.util.CachedContentResponseUtil;
 
 
 /**
@@ -122,7 +124,7 @@ public class FeedServlet extends HttpServlet {
         }
 
         // Respond with 304 Not Modified if it is not modified.
-        if (ModDateHeaderUtil.respondIfNotModified(request, response,
+        if (ETagHeaderUtil.respondIfNotModified(request, response,
                 lastModified, feedRequest.getDeviceType())) {
             return;
         }
@@ -169,8 +171,7 @@ public class FeedServlet extends HttpServlet {
         if (cachedContent != null) {
             log.debug("HIT " + cacheKey);
 
-            response.setContentLength(cachedContent.getContent().length);
-            response.getOutputStream().write(cachedContent.getContent());
+            CachedContentResponseUtil.writeContent(request, response, cachedContent);
             return;
 
         } else {
@@ -328,8 +329,7 @@ public class FeedServlet extends HttpServlet {
 
         // flush rendered content to response
         log.debug("Flushing response output");
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
+        CachedContentResponseUtil.writeContent(request, response, rendererOutput);
 
         // cache rendered content. only cache if user is not logged in?
         log.debug("PUT " + cacheKey);
@@ -36,6 +36,7 @@ import org.apache.roller.weblogger.business.MediaFileManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.pojos.MediaFile;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.ui.rendering.util.ETagHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogMediaResourceRequest;
 
@@ -93,8 +94,9 @@ public class MediaResourceServlet extends HttpServlet {
         MediaFile mediaFile;
 
         try {
+            // only metadata for now, we may not need the file at all
             mediaFile = mfMgr.getMediaFile(resourceRequest.getResourceId(),
-                    true);
+                    false);
             resourceLastMod = mediaFile.getLastModified();
 
         } catch (Exception ex) {
@@ -104,14 +106,32 @@ public class MediaResourceServlet extends HttpServlet {
             return;
         }
 
+        // Respond with 304 Not Modified if the client has the same version.
+        String eTag = ETagHeaderUtil.generateResourceETag(resourceLastMod,
+                mediaFile.getLength(),
+                resourceRequest.isThumbnail() ? "thumb" : null);
+        if (ETagHeaderUtil.respondIfNoneMatch(request, response, eTag)) {
+            return;
+        }
+
         // Respond with 304 Not Modified if it is not modified.
-        if (ModDateHeaderUtil.respondIfNotModified(request, response,
+        if (ETagHeaderUtil.respondIfNotModified(request, response,
                 resourceLastMod, resourceRequest.getDeviceType())) {
             return;
         } else {
             // set last-modified date
             ModDateHeaderUtil.setLastModifiedHeader(response, resourceLastMod,
                     resourceRequest.getDeviceType());
+            ETagHeaderUtil.setETagHeader(response, eTag);
+        }
+
+        try {
+            mediaFile = mfMgr.getMediaFile(resourceRequest.getResourceId(),
+                    true);
+        } catch (Exception ex) {
+            log.debug("Unable to get resource content", ex);
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
 
         // set the content type based on whatever is in our web.xml mime defs
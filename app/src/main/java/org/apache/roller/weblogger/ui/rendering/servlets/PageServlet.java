@@ -43,6 +43,8 @@ import org.apache.roller.weblogger.ui.core.RollerContext;
 import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
+import org.apache.roller.weblogger.ui.rendering.util.CachedContentResponseUtil;
+import org.apache.roller.weblogger.ui.rendering.util.ETagHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.InvalidRequestException;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogEntryCommentForm;
@@ -51,7 +53,9 @@ import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogPageCache;
 import org.apache.roller.weblogger.util.BannedwordslistChecker;
 import org.apache.roller.weblogger.util.I18nMessages;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
 import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.apache.roller.weblogger.util.cache.LazyExpiringCacheEntry;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -189,7 +193,7 @@ public class PageServlet extends HttpServlet {
         // We skip this for logged in users to avoid the scenerio where a user
         // views their weblog, logs in, then gets a 304 without the 'edit' links
         if (!pageRequest.isLoggedIn()) {
-            if (ModDateHeaderUtil.respondIfNotModified(request, response,
+            if (ETagHeaderUtil.respondIfNotModified(request, response,
                     lastModified, pageRequest.getDeviceType())) {
                 return;
             } else {
@@ -232,6 +236,10 @@ public class PageServlet extends HttpServlet {
             }
         }
 
+        // note this before loading anything, in case a change comes in while
+        // we render which the rendered page may or may not include
+        long invalidationCount = weblogPageCache.getInvalidationCount();
+
         // cached content checking
         if ((!this.excludeOwnerPages || !pageRequest.isLoggedIn())
                 && request.getAttribute("skipCache") == null
@@ -255,13 +263,36 @@ public class PageServlet extends HttpServlet {
                     this.processHit(weblog);
                 }
 
-                response.setContentLength(cachedContent.getContent().length);
                 response.setContentType(cachedContent.getContentType());
-                response.getOutputStream().write(cachedContent.getContent());
+                CachedContentResponseUtil.writeContent(request, response, cachedContent);
                 return;
             } else {
                 log.debug("MISS " + cacheKey);
             }
+
+            // while another request renders a fresh copy we may serve the old one
+            if (!isSiteWide && weblogPageCache.isRendering(cacheKey)) {
+                LazyExpiringCacheEntry staleEntry = weblogPageCache.getStale(cacheKey);
+                if (staleEntry != null) {
+                    log.debug("STALE " + cacheKey);
+
+                    // allow for hit counting
+                    if (pageRequest.isWebsitePageHit() || pageRequest.isOtherPageHit()) {
+                        this.processHit(weblog);
+                    }
+
+                    // don't claim the content is newer than it is
+                    if (!pageRequest.isLoggedIn()) {
+                        ModDateHeaderUtil.setLastModifiedHeader(response,
+                                staleEntry.getTimeCached(), pageRequest.getDeviceType());
+                    }
+
+                    cachedContent = (CachedContent) staleEntry.getValue();
+                    response.setContentType(cachedContent.getContentType());
+                    CachedContentResponseUtil.writeContent(request, response, cachedContent);
+                    return;
+                }
+            }
         }
 
         log.debug("Looking for template to use for rendering");
@@ -503,48 +534,86 @@ public class PageServlet extends HttpServlet {
             return;
         }
 
+        boolean cacheable = (!this.excludeOwnerPages || !pageRequest.isLoggedIn())
+                && request.getAttribute("skipCache") == null;
+
+        // only one request renders a given page at a time, the others wait
+        // for it to finish and then use its output from the cache
+        boolean renderClaimed = false;
+        if (cacheable && !isSiteWide && request.getParameter("skipCache") == null) {
+            renderClaimed = weblogPageCache.beginRender(cacheKey);
+            if (!renderClaimed) {
+                CachedContent rendered = (CachedContent) weblogPageCache.awaitRender(
+                        cacheKey, lastModified);
+                if (rendered != null) {
+                    log.debug("HIT-AFTER-WAIT " + cacheKey);
+                    response.setContentType(rendered.getContentType());
+                    CachedContentResponseUtil.writeContent(request, response, rendered);
+                    return;
+                }
+            }
+        }
+
         // render content
         CachedContent rendererOutput = new CachedContent(
                 RollerConstants.TWENTYFOUR_KB_IN_BYTES, contentType);
+        CacheDependencies dependencies = null;
         try {
-            log.debug("Doing rendering");
-            renderer.render(model, rendererOutput.getCachedWriter());
+            // record what the page is rendered from so it can be removed
+            // from the cache as soon as any of it changes
+            if (cacheable && !isSiteWide && weblogPageCache.isTrackingDependencies()) {
+                dependencies = CacheDependencies.start(invalidationCount);
+                CacheDependencies.record(CacheDependencies.weblog(weblog.getId()));
+                CacheDependencies.record(CacheDependencies.template(page.getId()));
+            }
 
-            // flush rendered output and close
-            rendererOutput.flush();
-            rendererOutput.close();
-        } catch (Exception e) {
-            // bummer, error during rendering
-            log.error("Error during rendering for page " + page.getId(), e);
+            try {
+                log.debug("Doing rendering");
+                renderer.render(model, rendererOutput.getCachedWriter());
 
-            if (!response.isCommitted()) {
-                response.reset();
+                // flush rendered output and close
+                rendererOutput.flush();
+                rendererOutput.close();
+            } catch (Exception e) {
+                // bummer, error during rendering
+                log.error("Error during rendering for page " + page.getId(), e);
+
+                if (!response.isCommitted()) {
+                    response.reset();
+                }
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            // cache rendered content before writing it out, so that requests
+            // waiting on us don't also have to wait for a slow client.
+            // only cache if user is not logged in?
+            if (cacheable) {
+                log.debug("PUT " + cacheKey);
+
+                // put it in the right cache
+                if (isSiteWide) {
+                    siteWideCache.put(cacheKey, rendererOutput);
+                } else {
+                    weblogPageCache.put(cacheKey, rendererOutput, dependencies);
+                }
+            } else {
+                log.debug("SKIPPED " + cacheKey);
+            }
+        } finally {
+            if (dependencies != null) {
+                CacheDependencies.stop();
+            }
+            if (renderClaimed) {
+                weblogPageCache.endRender(cacheKey);
             }
-            response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
         }
 
         // post rendering process
         // flush rendered content to response
         log.debug("Flushing response output");
         response.setContentType(contentType);
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
-
-        // cache rendered content. only cache if user is not logged in?
-        if ((!this.excludeOwnerPages || !pageRequest.isLoggedIn())
-                && request.getAttribute("skipCache") == null) {
-            log.debug("PUT " + cacheKey);
-
-            // put it in the right cache
-            if (isSiteWide) {
-                siteWideCache.put(cacheKey, rendererOutput);
-            } else {
-                weblogPageCache.put(cacheKey, rendererOutput);
-            }
-        } else {
-            log.debug("SKIPPED " + cacheKey);
-        }
+        CachedContentResponseUtil.writeContent(request, response, rendererOutput);
 
         log.debug("Exiting");
     }
@@ -44,9 +44,11 @@ import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository.DeviceType;
 import org.apache.roller.weblogger.ui.rendering.model.UtilitiesModel;
+import org.apache.roller.weblogger.ui.rendering.util.ETagHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.cache.PlanetCache;
 import org.apache.roller.weblogger.ui.rendering.util.PlanetRequest;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
+import org.apache.roller.weblogger.ui.rendering.util.CachedContentResponseUtil;
 import org.apache.roller.weblogger.util.cache.CachedContent;
 
 /**
@@ -96,7 +98,7 @@ public class PlanetFeedServlet extends HttpServlet {
         Date lastModified = planetCache.getLastModified();
 
         // Respond with 304 Not Modified if it is not modified.
-        if (ModDateHeaderUtil.respondIfNotModified(request, response,
+        if (ETagHeaderUtil.respondIfNotModified(request, response,
                 lastModified.getTime(), planetRequest.getDeviceType())) {
             return;
         }
@@ -124,8 +126,7 @@ public class PlanetFeedServlet extends HttpServlet {
                 + this.generateKey(planetRequest);
         CachedContent entry = (CachedContent) planetCache.get(cacheKey);
         if (entry != null) {
-            response.setContentLength(entry.getContent().length);
-            response.getOutputStream().write(entry.getContent());
+            CachedContentResponseUtil.writeContent(request, response, entry);
             return;
         }
 
@@ -236,8 +237,7 @@ public class PlanetFeedServlet extends HttpServlet {
         // post rendering process
         // flush rendered content to response
         log.debug("Flushing response output");
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
+        CachedContentResponseUtil.writeContent(request, response, rendererOutput);
 
         // cache rendered content.
         this.planetCache.put(cacheKey, rendererOutput);
@@ -291,4 +291,4 @@ public class PlanetFeedServlet extends HttpServlet {
 
         return key.toString();
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -37,6 +37,7 @@ import org.apache.roller.weblogger.pojos.MediaFile;
 import org.apache.roller.weblogger.pojos.ThemeResource;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogTheme;
+import org.apache.roller.weblogger.ui.rendering.util.ETagHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogResourceRequest;
 
@@ -99,17 +100,19 @@ public class ResourceServlet extends HttpServlet {
                 + "]");
 
         long resourceLastMod = 0;
-        InputStream resourceStream = null;
+        long resourceLength = 0;
+        ThemeResource themeResource = null;
+        MediaFile mediaFile = null;
 
         // first see if resource comes from weblog's shared theme
         try {
             WeblogTheme weblogTheme = weblog.getTheme();
             if (weblogTheme != null) {
-                ThemeResource resource = weblogTheme
+                themeResource = weblogTheme
                         .getResource(resourceRequest.getResourcePath());
-                if (resource != null) {
-                    resourceLastMod = resource.getLastModified();
-                    resourceStream = resource.getInputStream();
+                if (themeResource != null) {
+                    resourceLastMod = themeResource.getLastModified();
+                    resourceLength = themeResource.getLength();
                 }
             }
         } catch (Exception ex) {
@@ -118,21 +121,18 @@ public class ResourceServlet extends HttpServlet {
                 response.reset();
             }
             response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            if(resourceStream != null) {
-                resourceStream.close();
-            }
             return;
         }
 
         // if not from theme then see if resource is in weblog's upload dir
-        if (resourceStream == null) {
+        if (themeResource == null) {
             try {
                 MediaFileManager mmgr = WebloggerFactory.getWeblogger()
                         .getMediaFileManager();
-                MediaFile mf = mmgr.getMediaFileByOriginalPath(weblog,
+                mediaFile = mmgr.getMediaFileByOriginalPath(weblog,
                         resourceRequest.getResourcePath());
-                resourceLastMod = mf.getLastModified();
-                resourceStream = mf.getInputStream();
+                resourceLastMod = mediaFile.getLastModified();
+                resourceLength = mediaFile.getLength();
 
             } catch (Exception ex) {
                 // still not found? then we don't have it, 404.
@@ -141,21 +141,37 @@ public class ResourceServlet extends HttpServlet {
                 }
                 log.debug("Unable to get resource", ex);
                 response.sendError(HttpServletResponse.SC_NOT_FOUND);
-                if(resourceStream != null) {
-                    resourceStream.close();
-                }
                 return;
             }
         }
 
+        // Respond with 304 Not Modified if the client has the same version.
+        String eTag = ETagHeaderUtil.generateResourceETag(resourceLastMod,
+                resourceLength, null);
+        if (ETagHeaderUtil.respondIfNoneMatch(request, response, eTag)) {
+            return;
+        }
+
         // Respond with 304 Not Modified if it is not modified.
-        if (ModDateHeaderUtil.respondIfNotModified(request, response,
+        if (ETagHeaderUtil.respondIfNotModified(request, response,
                 resourceLastMod, resourceRequest.getDeviceType())) {
             return;
         } else {
             // set last-modified date
             ModDateHeaderUtil.setLastModifiedHeader(response, resourceLastMod,
                     resourceRequest.getDeviceType());
+            ETagHeaderUtil.setETagHeader(response, eTag);
+        }
+
+        // only open the resource once we know we have to send it
+        InputStream resourceStream = (themeResource != null) ?
+                themeResource.getInputStream() : mediaFile.getInputStream();
+        if (resourceStream == null) {
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
 
         // set the content type based on whatever is in our web.xml mime defs
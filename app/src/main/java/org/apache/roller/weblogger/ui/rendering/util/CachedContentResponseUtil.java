@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+
+
+/**
+ * Utility class for writing CachedContent to a response, picking the
+ * pre-compressed variant of the content when the client accepts it and
+ * answering conditional requests using the content's ETag.
+ */
+public final class CachedContentResponseUtil {
+
+    private CachedContentResponseUtil() {
+    }
+
+
+    /**
+     * Write the body of the given content to the response.  If a gzip variant
+     * is available and the request's Accept-Encoding allows it then that is
+     * sent with a Content-Encoding header, otherwise the plain content is.
+     *
+     * The ETag of the chosen variant is always set, and if it matches the
+     * request's If-None-Match header a 304 is sent instead of the body.
+     * The caller is responsible for setting the content type.
+     */
+    public static void writeContent(HttpServletRequest request,
+            HttpServletResponse response, CachedContent content) throws IOException {
+
+        boolean gzip = false;
+        if (content.hasGzippedContent()) {
+            // the body depends on Accept-Encoding, so tell any caches about it
+            response.addHeader("Vary", "Accept-Encoding");
+            gzip = acceptsGzip(request);
+        }
+
+        String eTag = gzip ? content.getGzippedETag() : content.getETag();
+        if (ETagHeaderUtil.respondIfNoneMatch(request, response, eTag)) {
+            return;
+        }
+        ETagHeaderUtil.setETagHeader(response, eTag);
+
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            response.setContentLength(content.getGzippedContentLength());
+            content.writeGzippedTo(response.getOutputStream());
+        } else {
+            response.setContentLength(content.getContentLength());
+            content.writeTo(response.getOutputStream());
+        }
+    }
+
+
+    /**
+     * True if the request's Accept-Encoding header allows a gzip response,
+     * either by name or through a "*" wildcard, with a non-zero quality.
+     */
+    public static boolean acceptsGzip(HttpServletRequest request) {
+
+        String header = request.getHeader("Accept-Encoding");
+        if (header == null) {
+            return false;
+        }
+
+        boolean accepted = false;
+        for (String token : header.split(",")) {
+            String[] parts = token.split(";");
+            String coding = parts[0].trim().toLowerCase();
+            boolean allowed = !hasZeroQuality(parts);
+
+            if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+                // an explicit entry always wins over the wildcard
+                return allowed;
+            } else if ("*".equals(coding)) {
+                accepted = allowed;
+            }
+        }
+
+        return accepted;
+    }
+
+
+    private static boolean hasZeroQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim()) <= 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+}
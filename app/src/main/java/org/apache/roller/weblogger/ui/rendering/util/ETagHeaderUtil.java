@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
+
+
+/**
+ * Utility class to localize the ETag header-related logic.
+ *
+ * This complements ModDateHeaderUtil, an If-None-Match header is checked
+ * before If-Modified-Since since it takes precedence when both are sent,
+ * and If-Modified-Since is ignored altogether then, see respondIfNotModified().
+ */
+public final class ETagHeaderUtil {
+
+    private static final Log log = LogFactory.getLog(ETagHeaderUtil.class);
+
+
+    private ETagHeaderUtil() {
+    }
+
+
+    /**
+     * Generate a strong ETag for a file or other static resource from its
+     * metadata, so that no content needs to be read to produce it.
+     *
+     * @param lastModified last modified time of the resource
+     * @param length size of the resource in bytes
+     * @param variant optional suffix telling apart variants of one resource
+     *            served from the same url (i.e. thumbnails), may be null.
+     */
+    public static String generateResourceETag(long lastModified, long length, String variant) {
+
+        StringBuilder eTag = new StringBuilder(40);
+        eTag.append('"').append(Long.toHexString(lastModified))
+                .append('-').append(Long.toHexString(length));
+        if (variant != null) {
+            eTag.append('-').append(variant);
+        }
+        return eTag.append('"').toString();
+    }
+
+
+    /**
+     * Sets the HTTP response status to 304 (NOT MODIFIED) if the request
+     * contains an If-None-Match header which matches the given ETag.  Only
+     * applies to GET and HEAD requests.  Returns true if the response status
+     * was set, false if not.
+     */
+    public static boolean respondIfNoneMatch(HttpServletRequest request,
+            HttpServletResponse response, String eTag) {
+
+        if (eTag == null) {
+            return false;
+        }
+
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+
+        if (matches(request.getHeader("If-None-Match"), eTag)) {
+
+            if (log.isDebugEnabled()) {
+                log.debug("NOT MODIFIED " + request.getRequestURL());
+            }
+
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.setHeader("ETag", eTag);
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Sets the HTTP response status to 304 (NOT MODIFIED) as
+     * ModDateHeaderUtil.respondIfNotModified() does, but only if the request
+     * contains no If-None-Match header.  RFC 7232 has If-Modified-Since
+     * ignored when both are sent, it is then up to respondIfNoneMatch()
+     * alone to tell if the client has the current version.  Returns true if
+     * the response status was set, false if not.
+     */
+    public static boolean respondIfNotModified(HttpServletRequest request,
+            HttpServletResponse response, long lastModified,
+            MobileDeviceRepository.DeviceType deviceType) {
+
+        if (request.getHeader("If-None-Match") != null) {
+            return false;
+        }
+
+        return ModDateHeaderUtil.respondIfNotModified(request, response,
+                lastModified, deviceType);
+    }
+
+
+    /**
+     * Set the ETag header, replacing any ETag set by ModDateHeaderUtil.
+     */
+    public static void setETagHeader(HttpServletResponse response, String eTag) {
+        if (eTag != null) {
+            response.setHeader("ETag", eTag);
+        }
+    }
+
+
+    /**
+     * True if the value of an If-None-Match header matches the given ETag.
+     * Uses the weak comparison which RFC 7232 mandates for If-None-Match.
+     */
+    public static boolean matches(String ifNoneMatch, String eTag) {
+
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+
+        String value = ifNoneMatch.trim();
+        if ("*".equals(value)) {
+            return true;
+        }
+
+        String opaque = stripWeak(eTag);
+        for (String candidate : value.split(",")) {
+            if (opaque.equals(stripWeak(candidate.trim()))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private static String stripWeak(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+
+}
@@ -41,6 +41,8 @@ public class WeblogSearchRequest extends WeblogRequest {
     private String query = null;
     private int pageNum = 0;
     private String weblogCategoryName = null;
+    private boolean sortByRelevance = false;
+    private String cursor = null;
     
     // heavyweight attributes
     private WeblogCategory weblogCategory = null;
@@ -80,6 +82,8 @@ public class WeblogSearchRequest extends WeblogRequest {
          *   q - specifies the search query
          *   pageNum - specifies what pageNum # to display
          *   cat - limit results to a certain weblogCategoryName
+         *   sort - "relevance" to order results by relevance instead of date
+         *   after - cursor to the page of results after a previous one
          */
         if(request.getParameter("q") != null && !request.getParameter("q").isBlank()) {
             this.query = request.getParameter("q");
@@ -98,6 +102,14 @@ public class WeblogSearchRequest extends WeblogRequest {
             this.weblogCategoryName =
                     URLUtilities.decode(request.getParameter("cat"));
         }
+        
+        if("relevance".equals(request.getParameter("sort"))) {
+            this.sortByRelevance = true;
+        }
+        
+        if(request.getParameter("after") != null && !request.getParameter("after").isBlank()) {
+            this.cursor = request.getParameter("after");
+        }
     }
 
     public String getQuery() {
@@ -124,6 +136,22 @@ public class WeblogSearchRequest extends WeblogRequest {
         this.weblogCategoryName = weblogCategory;
     }
 
+    public boolean isSortByRelevance() {
+        return sortByRelevance;
+    }
+
+    public void setSortByRelevance(boolean sortByRelevance) {
+        this.sortByRelevance = sortByRelevance;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public WeblogCategory getWeblogCategory() {
         
         if(weblogCategory == null && weblogCategoryName != null) {
@@ -29,6 +29,7 @@ import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.ui.rendering.util.PlanetRequest;
 import org.apache.roller.weblogger.util.cache.Cache;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.ExpiringCacheEntry;
 
 
@@ -47,6 +48,12 @@ public final class PlanetCache {
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
+    // keep cached content bodies off the java heap
+    private boolean offHeap = false;
+    
+    // store a gzip compressed variant alongside cached content bodies
+    private boolean precompress = false;
+    
     // keep a cached version of last expired time
     private ExpiringCacheEntry lastUpdateTime = null;
     private long timeout = RollerConstants.FIFTEEN_MIN_IN_MS;
@@ -57,6 +64,8 @@ public final class PlanetCache {
     private PlanetCache() {
         
         cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID + ".enabled");
+        offHeap = WebloggerConfig.getBooleanProperty(CACHE_ID + ".offheap");
+        precompress = WebloggerConfig.getBooleanProperty(CACHE_ID + ".gzip");
         
         Map<String, String> cacheProps = new HashMap<>();
         cacheProps.put("id", CACHE_ID);
@@ -120,6 +129,16 @@ public final class PlanetCache {
             return;
         }
         
+        if (value instanceof CachedContent) {
+            CachedContent content = (CachedContent) value;
+            if (precompress) {
+                content.compress(RollerConstants.ONE_KB_IN_BYTES);
+            }
+            if (offHeap) {
+                content.moveOffHeap();
+            }
+        }
+        
         contentCache.put(key, value);
         log.debug("PUT "+key);
     }
@@ -44,6 +44,7 @@ import org.apache.roller.weblogger.util.Utilities;
 import org.apache.roller.weblogger.util.cache.Cache;
 import org.apache.roller.weblogger.util.cache.CacheHandler;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.ExpiringCacheEntry;
 
 
@@ -62,6 +63,12 @@ public final class SiteWideCache implements CacheHandler {
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
+    // keep cached content bodies off the java heap
+    private boolean offHeap = false;
+    
+    // store a gzip compressed variant alongside cached content bodies
+    private boolean precompress = false;
+    
     // keep a cached version of last expired time
     private ExpiringCacheEntry lastUpdateTime = null;
 
@@ -72,6 +79,8 @@ public final class SiteWideCache implements CacheHandler {
     private SiteWideCache() {
         
         cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+        offHeap = WebloggerConfig.getBooleanProperty(CACHE_ID+".offheap");
+        precompress = WebloggerConfig.getBooleanProperty(CACHE_ID+".gzip");
         
         Map<String, String> cacheProps = new HashMap<>();
         cacheProps.put("id", CACHE_ID);
@@ -126,6 +135,16 @@ public final class SiteWideCache implements CacheHandler {
             return;
         }
         
+        if (value instanceof CachedContent) {
+            CachedContent content = (CachedContent) value;
+            if (precompress) {
+                content.compress(RollerConstants.ONE_KB_IN_BYTES);
+            }
+            if (offHeap) {
+                content.moveOffHeap();
+            }
+        }
+        
         contentCache.put(key, value);
         log.debug("PUT "+key);
     }
@@ -26,11 +26,13 @@ import java.util.HashMap;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.util.Utilities;
 import org.apache.roller.weblogger.util.cache.Cache;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.LazyExpiringCacheEntry;
 
 
@@ -49,6 +51,12 @@ public final class WeblogFeedCache {
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
+    // keep cached content bodies off the java heap
+    private boolean offHeap = false;
+    
+    // store a gzip compressed variant alongside cached content bodies
+    private boolean precompress = false;
+    
     // reference to our singleton instance
     private static final WeblogFeedCache singletonInstance = new WeblogFeedCache();
     
@@ -56,6 +64,8 @@ public final class WeblogFeedCache {
     private WeblogFeedCache() {
         
         cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+        offHeap = WebloggerConfig.getBooleanProperty(CACHE_ID+".offheap");
+        precompress = WebloggerConfig.getBooleanProperty(CACHE_ID+".gzip");
         
         Map<String, String> cacheProps = new HashMap<>();
         cacheProps.put("id", CACHE_ID);
@@ -120,6 +130,16 @@ public final class WeblogFeedCache {
             return;
         }
         
+        if (value instanceof CachedContent) {
+            CachedContent content = (CachedContent) value;
+            if (precompress) {
+                content.compress(RollerConstants.ONE_KB_IN_BYTES);
+            }
+            if (offHeap) {
+                content.moveOffHeap();
+            }
+        }
+        
         contentCache.put(key, new LazyExpiringCacheEntry(value));
         log.debug("PUT "+key);
     }
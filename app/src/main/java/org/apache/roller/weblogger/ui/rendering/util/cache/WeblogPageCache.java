@@ -18,26 +18,50 @@
 
 package org.apache.roller.weblogger.ui.rendering.util.cache;
 
+import java.lang.ref.WeakReference;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.util.Utilities;
 import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheDependencies;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.LazyExpiringCacheEntry;
 
 
 /**
  * Cache for weblog page content.
+ *
+ * By default cached pages are invalidated lazily, any change to a weblog
+ * bumps its last modified time and so every page of that weblog.  With
+ * dependency tracking enabled we instead remember which objects each page
+ * was rendered from and only remove those pages when one of them changes.
  */
-public final class WeblogPageCache {
+public final class WeblogPageCache implements CacheHandler {
     
     private static final Log log = LogFactory.getLog(WeblogPageCache.class);
     
@@ -49,6 +73,35 @@ public final class WeblogPageCache {
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
+    // keep cached content bodies off the java heap
+    private boolean offHeap = false;
+    
+    // store a gzip compressed variant alongside cached content bodies
+    private boolean precompress = false;
+    
+    // serve the previous version of a page while it is being re-rendered
+    private boolean staleWhileRevalidate = false;
+    
+    // how long a request waits for another request rendering the same page
+    private long renderWaitTimeout = 5;
+    
+    // keys currently being rendered, with a latch released when done
+    private final Map<String, CountDownLatch> rendering = new ConcurrentHashMap<>();
+    
+    // remove pages when something they depend on changes
+    private boolean trackDependencies = false;
+    
+    // for dependency tracking, the keys of the pages depending on something
+    private final Map<String, Set<String>> dependents = new ConcurrentHashMap<>();
+    
+    // for dependency tracking, the pages we know the dependencies of
+    private final Map<String, TrackedPage> trackedPages = new ConcurrentHashMap<>();
+    private int maxTrackedPages = 0;
+    private volatile int pruneThreshold = 0;
+    
+    // counts invalidations, to spot pages rendered while one happened
+    private final AtomicLong invalidationCount = new AtomicLong();
+    
     // reference to our singleton instance
     private static final WeblogPageCache singletonInstance = new WeblogPageCache();
     
@@ -56,6 +109,13 @@ public final class WeblogPageCache {
     private WeblogPageCache() {
         
         cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+        offHeap = WebloggerConfig.getBooleanProperty(CACHE_ID+".offheap");
+        precompress = WebloggerConfig.getBooleanProperty(CACHE_ID+".gzip");
+        staleWhileRevalidate = WebloggerConfig.getBooleanProperty(CACHE_ID+".staleWhileRevalidate");
+        renderWaitTimeout = WebloggerConfig.getIntProperty(CACHE_ID+".renderWaitTimeout", 5);
+        trackDependencies = WebloggerConfig.getBooleanProperty(CACHE_ID+".trackDependencies");
+        maxTrackedPages = 2 * WebloggerConfig.getIntProperty(CACHE_ID+".size", 100);
+        pruneThreshold = maxTrackedPages;
         
         Map<String, String> cacheProps = new HashMap<>();
         cacheProps.put("id", CACHE_ID);
@@ -74,7 +134,8 @@ public final class WeblogPageCache {
         log.info(cacheProps);
         
         if (cacheEnabled) {
-            contentCache = CacheManager.constructCache(null, cacheProps);
+            // we only need to hear about invalidations when tracking dependencies
+            contentCache = CacheManager.constructCache(trackDependencies ? this : null, cacheProps);
         } else {
             log.warn("Caching has been DISABLED");
         }
@@ -96,7 +157,9 @@ public final class WeblogPageCache {
         
         LazyExpiringCacheEntry lazyEntry = (LazyExpiringCacheEntry) this.contentCache.get(key);
         if(lazyEntry != null) {
-            entry = lazyEntry.getValue(lastModified);
+            // tracked pages are removed as soon as anything they depend on
+            // changes, so the weblog last modified time doesn't apply to them
+            entry = trackDependencies ? lazyEntry.getValue() : lazyEntry.getValue(lastModified);
             
             if(entry != null) {
                 log.debug("HIT "+key);
@@ -112,14 +175,160 @@ public final class WeblogPageCache {
     }
     
     
+    /**
+     * Get the cached value for a key even if it has been invalidated, so
+     * that it can be served while a fresh copy is being rendered.  Returns
+     * null unless stale-while-revalidate is enabled.
+     */
+    public LazyExpiringCacheEntry getStale(String key) {
+        
+        if (!cacheEnabled || !staleWhileRevalidate) {
+            return null;
+        }
+        
+        LazyExpiringCacheEntry lazyEntry = (LazyExpiringCacheEntry) this.contentCache.get(key);
+        if (lazyEntry != null) {
+            log.debug("HIT-STALE "+key);
+        }
+        
+        return lazyEntry;
+    }
+    
+    
+    /**
+     * Claim the rendering of a key.  Returns true if the caller should
+     * render the content, in which case it must call endRender() when done,
+     * or false if another request is already rendering it.
+     */
+    public boolean beginRender(String key) {
+        
+        if (!cacheEnabled) {
+            return true;
+        }
+        
+        return rendering.putIfAbsent(key, new CountDownLatch(1)) == null;
+    }
+    
+    
+    /**
+     * Release a key claimed with beginRender(), waking up any waiting requests.
+     */
+    public void endRender(String key) {
+        
+        CountDownLatch latch = rendering.remove(key);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+    
+    
+    /**
+     * True if another request is currently rendering the given key.
+     */
+    public boolean isRendering(String key) {
+        return rendering.containsKey(key);
+    }
+    
+    
+    /**
+     * Wait for a request rendering the given key to finish, for no longer
+     * than the configured render wait timeout, then look up the key again.
+     * May return null, i.e. if rendering failed or the wait timed out.
+     */
+    public Object awaitRender(String key, long lastModified) {
+        
+        CountDownLatch latch = rendering.get(key);
+        if (latch != null) {
+            try {
+                if (!latch.await(renderWaitTimeout, TimeUnit.SECONDS)) {
+                    log.debug("WAIT-TIMEOUT "+key);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        return get(key, lastModified);
+    }
+    
+    
     public void put(String key, Object value) {
         
         if (!cacheEnabled) {
             return;
         }
         
-        contentCache.put(key, new LazyExpiringCacheEntry(value));
+        doPut(key, value);
+    }
+    
+    
+    /**
+     * Put a page in the cache along with the dependencies recorded while it
+     * was rendered.  The dependencies are ignored, and may be null, unless
+     * dependency tracking is enabled.
+     */
+    public void put(String key, Object value, CacheDependencies dependencies) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        if (!trackDependencies || dependencies == null) {
+            doPut(key, value);
+            return;
+        }
+        
+        // the page may have been rendered from something invalidated meanwhile
+        long generation = dependencies.getGeneration();
+        if (invalidationCount.get() != generation) {
+            log.debug("SKIPPED-INVALIDATED "+key);
+            return;
+        }
+        
+        LazyExpiringCacheEntry entry = doPut(key, value);
+        track(key, entry, dependencies.getDependencies());
+        
+        // an invalidation could have come in before we were tracked
+        if (invalidationCount.get() != generation) {
+            remove(key);
+        }
+    }
+    
+    
+    /**
+     * True if pages should be rendered with dependency recording enabled.
+     */
+    public boolean isTrackingDependencies() {
+        return cacheEnabled && trackDependencies;
+    }
+    
+    
+    /**
+     * The number of invalidations seen so far.  Should be read before a page
+     * starts rendering and used to start recording its dependencies, so that
+     * changes made while rendering keep the page from being cached.
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+    
+    
+    private LazyExpiringCacheEntry doPut(String key, Object value) {
+        
+        if (value instanceof CachedContent) {
+            CachedContent content = (CachedContent) value;
+            if (precompress) {
+                content.compress(RollerConstants.ONE_KB_IN_BYTES);
+            }
+            if (offHeap) {
+                content.moveOffHeap();
+            }
+        }
+        
+        LazyExpiringCacheEntry entry = new LazyExpiringCacheEntry(value);
+        contentCache.put(key, entry);
         log.debug("PUT "+key);
+        return entry;
     }
     
     
@@ -130,6 +339,7 @@ public final class WeblogPageCache {
         }
         
         contentCache.remove(key);
+        untrack(key);
         log.debug("REMOVE "+key);
     }
     
@@ -141,10 +351,183 @@ public final class WeblogPageCache {
         }
         
         contentCache.clear();
+        trackedPages.clear();
+        dependents.clear();
+        pruneThreshold = maxTrackedPages;
         log.debug("CLEAR");
     }
     
     
+    /**
+     * A weblog entry has changed.
+     */
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        invalidate(CacheDependencies.entry(entry.getId()),
+                CacheDependencies.entries(entry.getWebsite()),
+                CacheDependencies.entries(null));
+    }
+    
+    
+    /**
+     * A weblog has changed.
+     */
+    @Override
+    public void invalidate(Weblog website) {
+        invalidate(CacheDependencies.weblog(website.getId()));
+    }
+    
+    
+    /**
+     * A bookmark has changed.
+     */
+    @Override
+    public void invalidate(WeblogBookmark bookmark) {
+        invalidate(CacheDependencies.folder(bookmark.getFolder().getId()));
+    }
+    
+    
+    /**
+     * A folder has changed.
+     */
+    @Override
+    public void invalidate(WeblogBookmarkFolder folder) {
+        invalidate(CacheDependencies.folder(folder.getId()));
+    }
+    
+    
+    /**
+     * A comment has changed.
+     */
+    @Override
+    public void invalidate(WeblogEntryComment comment) {
+        invalidate(CacheDependencies.comments(comment.getWeblogEntry().getId()),
+                CacheDependencies.weblogComments(comment.getWeblogEntry().getWebsite()),
+                CacheDependencies.weblogComments(null));
+    }
+    
+    
+    /**
+     * A user profile has changed.
+     */
+    @Override
+    public void invalidate(User user) {
+        invalidate(CacheDependencies.user(user.getId()));
+    }
+    
+    
+    /**
+     * A category has changed.
+     */
+    @Override
+    public void invalidate(WeblogCategory category) {
+        // removing a category moves its entries elsewhere
+        invalidate(CacheDependencies.category(category.getId()),
+                CacheDependencies.entries(category.getWeblog()));
+    }
+    
+    
+    /**
+     * A weblog template has changed.
+     */
+    @Override
+    public void invalidate(WeblogTemplate template) {
+        invalidate(CacheDependencies.template(template.getId()));
+    }
+    
+    
+    /**
+     * Remove all pages depending on any of the given dependencies.
+     */
+    private void invalidate(String... changed) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        // bump the count first so pages being rendered right now aren't cached
+        invalidationCount.incrementAndGet();
+        
+        for (String dependency : changed) {
+            Set<String> keys = dependents.remove(dependency);
+            if (keys != null) {
+                log.debug("INVALIDATE "+dependency+" -> "+keys.size()+" pages");
+                for (String key : keys) {
+                    contentCache.remove(key);
+                    untrack(key);
+                }
+            }
+        }
+    }
+    
+    
+    private void track(String key, LazyExpiringCacheEntry entry, Set<String> dependencies) {
+        
+        TrackedPage previous = trackedPages.put(key, new TrackedPage(entry, dependencies));
+        if (previous != null) {
+            for (String dependency : previous.dependencies) {
+                if (!dependencies.contains(dependency)) {
+                    removeDependent(dependency, key);
+                }
+            }
+        }
+        
+        for (String dependency : dependencies) {
+            dependents.compute(dependency, (dep, keys) -> {
+                Set<String> dependentKeys = (keys != null) ? keys : new HashSet<>();
+                dependentKeys.add(key);
+                return dependentKeys;
+            });
+        }
+        
+        if (trackedPages.size() > pruneThreshold) {
+            pruneTrackedPages();
+        }
+    }
+    
+    
+    private void untrack(String key) {
+        
+        TrackedPage page = trackedPages.remove(key);
+        if (page != null) {
+            for (String dependency : page.dependencies) {
+                removeDependent(dependency, key);
+            }
+        }
+    }
+    
+    
+    private void removeDependent(String dependency, String key) {
+        dependents.computeIfPresent(dependency, (dep, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+    
+    
+    /**
+     * The underlying cache drops pages without telling us, so forget about
+     * the pages it no longer holds once too many are tracked.  Pages it
+     * dropped are only noticed once garbage collected, so we back off until
+     * the next prune if there are still too many.
+     */
+    private synchronized void pruneTrackedPages() {
+        
+        if (trackedPages.size() <= pruneThreshold) {
+            return;
+        }
+        
+        for (Map.Entry<String, TrackedPage> tracked : trackedPages.entrySet()) {
+            if (tracked.getValue().entry.get() == null) {
+                untrack(tracked.getKey());
+            }
+        }
+        
+        pruneThreshold = Math.max(maxTrackedPages, trackedPages.size() + maxTrackedPages / 2);
+        log.debug("PRUNE tracking "+trackedPages.size()+" pages");
+    }
+    
+    
     /**
      * Generate a cache key from a parsed weblog page request.
      * This generates a key of the form ...
@@ -224,6 +607,22 @@ public final class WeblogPageCache {
         return key.toString();
     }
     
+    /**
+     * The dependencies of a cached page, and a weak reference to its cache
+     * entry telling us when the underlying cache has dropped it.
+     */
+    private static final class TrackedPage {
+        
+        private final WeakReference<LazyExpiringCacheEntry> entry;
+        private final Set<String> dependencies;
+        
+        private TrackedPage(LazyExpiringCacheEntry entry, Set<String> dependencies) {
+            this.entry = new WeakReference<>(entry);
+            this.dependencies = dependencies;
+        }
+    }
+    
+    
     private String paramsToString(Map<String, String[]> map) {
 
         if (map == null) {
@@ -21,8 +21,10 @@ package org.apache.roller.weblogger.ui.struts2.admin;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.pojos.GlobalPermission;
 import org.apache.roller.weblogger.ui.struts2.util.UIAction;
+import org.apache.roller.weblogger.util.RateLimiter;
 import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.apache.struts2.convention.annotation.AllowedMethods;
 
@@ -36,6 +38,10 @@ public class CacheInfo extends UIAction {
     // map of stats to display
     private Map<String, Map<String, Object>> stats = Collections.emptyMap();
     
+    // map of thread pool stats to display
+    private Map<String, Map<String, Object>> executorStats = Collections.emptyMap();
+    private Map<String, Map<String, Object>> rateLimiterStats = Collections.emptyMap();
+    
     // cache which we would clear when clear() is called
     private String cache = null;
     
@@ -61,6 +67,8 @@ public class CacheInfo extends UIAction {
     @Override
     public void myPrepare() {
         setStats(CacheManager.getStats());
+        setExecutorStats(WebloggerFactory.getWeblogger().getThreadManager().getExecutorStats());
+        setRateLimiterStats(RateLimiter.getAllStats());
     }
     
     
@@ -101,6 +109,22 @@ public class CacheInfo extends UIAction {
         this.stats = stats;
     }
 
+    public Map<String, Map<String, Object>> getExecutorStats() {
+        return executorStats;
+    }
+
+    public void setExecutorStats(Map<String, Map<String, Object>> executorStats) {
+        this.executorStats = executorStats;
+    }
+
+    public Map<String, Map<String, Object>> getRateLimiterStats() {
+        return rateLimiterStats;
+    }
+
+    public void setRateLimiterStats(Map<String, Map<String, Object>> rateLimiterStats) {
+        this.rateLimiterStats = rateLimiterStats;
+    }
+
     public String getCache() {
         return cache;
     }
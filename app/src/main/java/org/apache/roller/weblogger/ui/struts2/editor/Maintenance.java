@@ -23,6 +23,7 @@ import java.util.Date;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.IndexRebuildStatus;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.pojos.Weblog;
@@ -68,6 +69,20 @@ public class Maintenance extends UIAction {
         return SUCCESS;
     }
 
+    /**
+     * Progress of the rebuild of the search index of this weblog, or of the
+     * whole site, if any.
+     */
+    public IndexRebuildStatus getRebuildStatus() {
+        IndexRebuildStatus status = WebloggerFactory.getWeblogger()
+                .getIndexManager().getRebuildStatus();
+        if (status != null && (status.getWeblogHandle() == null
+                || status.getWeblogHandle().equals(getActionWeblog().getHandle()))) {
+            return status;
+        }
+        return null;
+    }
+
     /**
      * Flush page cache for weblog.
      */
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Bannedwordslist rules compiled once for testing any number of strings.
+ *
+ * String rules are matched case insensitively as whole words, as if each
+ * was the regex \b(rule)\b.  Those which are plain text, where a '.' is
+ * taken literally, go into an Aho-Corasick automaton which finds all of them
+ * in a single pass over the text.  The few which use other regex syntax are
+ * joined into one pattern, and those which are not valid regexes are looked
+ * for anywhere in the text, as before.
+ *
+ * Regex rules are joined into one pattern too, except those which refer to
+ * their own groups.  Java regexes backtrack, so only the automaton is
+ * guaranteed to take time linear in the length of the text.
+ *
+ * Instances are immutable and safe to share between threads.
+ */
+public final class BannedwordsMatcher {
+
+    private static final Log log = LogFactory.getLog(BannedwordsMatcher.class);
+
+    private static final BannedwordsMatcher EMPTY =
+            compile(Collections.emptyList(), Collections.emptyList());
+
+    // characters which make a string rule a regex, a '.' is left out since
+    // rules like "cheap-pills.com" mean a literal dot
+    private static final Pattern REGEX_SYNTAX = Pattern.compile("[\\\\^$|?*+()\\[\\]{}]");
+
+    // a backreference, which would refer to another rule once joined
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\[1-9k]");
+
+    // goto function of the automaton, per state the sorted characters
+    // leading out of it and the states they lead to
+    private final char[][] keys;
+    private final int[][] targets;
+
+    // per state, the state of the longest proper suffix in the automaton
+    private final int[] failure;
+
+    // per state, the length of the rule ending there or 0, and the next
+    // state along the failure links where a rule ends or -1
+    private final int[] ruleLength;
+    private final boolean[] wholeWord;
+    private final int[] nextMatch;
+
+    // everything the automaton can't do
+    private final List<Pattern> patterns;
+
+    private final int ruleCount;
+
+
+    private BannedwordsMatcher(Trie trie, List<Pattern> patterns, int ruleCount) {
+        int states = trie.nodes.size();
+        this.keys = new char[states][];
+        this.targets = new int[states][];
+        this.failure = new int[states];
+        this.ruleLength = new int[states];
+        this.wholeWord = new boolean[states];
+        this.nextMatch = new int[states];
+        this.patterns = patterns;
+        this.ruleCount = ruleCount;
+
+        for (int state = 0; state < states; state++) {
+            Trie.Node node = trie.nodes.get(state);
+            keys[state] = new char[node.children.size()];
+            targets[state] = new int[node.children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> child : node.children.entrySet()) {
+                keys[state][i] = child.getKey();
+                targets[state][i] = child.getValue();
+                i++;
+            }
+            ruleLength[state] = node.length;
+            wholeWord[state] = node.wholeWord;
+        }
+        buildFailureLinks();
+    }
+
+
+    /**
+     * Compile the given rules.
+     *
+     * @param stringRules rules matched as whole words, ignoring case.
+     * @param regexRules rules matched anywhere.
+     */
+    public static BannedwordsMatcher compile(List<String> stringRules, List<Pattern> regexRules) {
+
+        Trie trie = new Trie();
+        List<String> wordRegexes = new ArrayList<>();
+        List<Pattern> patterns = new ArrayList<>();
+
+        for (String rule : stringRules) {
+            if (rule == null || rule.isEmpty()) {
+                continue;
+            }
+            if (!REGEX_SYNTAX.matcher(rule).find()) {
+                trie.add(rule, true);
+                continue;
+            }
+            try {
+                Pattern.compile(rule);
+                if (BACKREFERENCE.matcher(rule).find()) {
+                    patterns.add(Pattern.compile("\\b(" + rule + ")\\b", Pattern.CASE_INSENSITIVE));
+                } else {
+                    wordRegexes.add("(?:" + rule + ")");
+                }
+            } catch (PatternSyntaxException e) {
+                // not a regex after all, so look for it as it is
+                trie.add(rule, false);
+            }
+        }
+
+        if (!wordRegexes.isEmpty()) {
+            try {
+                patterns.add(Pattern.compile("\\b(?:" + String.join("|", wordRegexes) + ")\\b",
+                        Pattern.CASE_INSENSITIVE));
+            } catch (PatternSyntaxException e) {
+                // e.g. the same group name in two rules, so keep them apart
+                log.debug("Could not join word regex rules: " + e.getMessage());
+                for (String rule : wordRegexes) {
+                    patterns.add(Pattern.compile("\\b" + rule + "\\b", Pattern.CASE_INSENSITIVE));
+                }
+            }
+        }
+
+        List<String> joinable = new ArrayList<>();
+        for (Pattern rule : regexRules) {
+            if (rule.flags() == 0 && !BACKREFERENCE.matcher(rule.pattern()).find()) {
+                joinable.add("(?:" + rule.pattern() + ")");
+            } else {
+                patterns.add(rule);
+            }
+        }
+        if (!joinable.isEmpty()) {
+            try {
+                patterns.add(Pattern.compile(String.join("|", joinable)));
+            } catch (PatternSyntaxException e) {
+                // e.g. the same group name in two rules, so keep them apart
+                log.debug("Could not join regex rules: " + e.getMessage());
+                for (Pattern rule : regexRules) {
+                    if (!patterns.contains(rule)) {
+                        patterns.add(rule);
+                    }
+                }
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Compiled " + (trie.nodes.size() - 1) + " automaton states and "
+                    + patterns.size() + " patterns");
+        }
+        return new BannedwordsMatcher(trie, patterns, stringRules.size() + regexRules.size());
+    }
+
+
+    /**
+     * A matcher without any rules, which matches nothing.
+     */
+    public static BannedwordsMatcher empty() {
+        return EMPTY;
+    }
+
+
+    /**
+     * Does any rule match the given string?
+     */
+    public boolean matches(String str) {
+        return findMatch(str) != null;
+    }
+
+
+    /**
+     * Get the part of the given string matched by a rule, or null if no
+     * rule matches.
+     */
+    public String findMatch(String str) {
+
+        if (str == null || str.isEmpty()) {
+            return null;
+        }
+
+        String match = findWord(str);
+        if (match != null) {
+            return match;
+        }
+
+        for (Pattern pattern : patterns) {
+            Matcher matcher = pattern.matcher(str);
+            if (matcher.find()) {
+                return matcher.group();
+            }
+        }
+        return null;
+    }
+
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+
+    // run the automaton over the string
+    private String findWord(String str) {
+
+        if (keys[0].length == 0) {
+            return null;
+        }
+
+        int state = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = Character.toLowerCase(str.charAt(i));
+
+            int next = step(state, c);
+            while (next < 0 && state != 0) {
+                state = failure[state];
+                next = step(state, c);
+            }
+            state = next < 0 ? 0 : next;
+
+            // every rule ending here, longest first
+            int end = i + 1;
+            for (int found = ruleLength[state] > 0 ? state : nextMatch[state];
+                    found >= 0; found = nextMatch[found]) {
+                int start = end - ruleLength[found];
+                if (!wholeWord[found] || (isBoundary(str, start) && isBoundary(str, end))) {
+                    return str.substring(start, end);
+                }
+            }
+        }
+        return null;
+    }
+
+
+    private int step(int state, char c) {
+        int i = Arrays.binarySearch(keys[state], c);
+        return i >= 0 ? targets[state][i] : -1;
+    }
+
+
+    // same as \b, a word character on one side and not on the other
+    private static boolean isBoundary(String str, int pos) {
+        boolean before = pos > 0 && isWordChar(str.charAt(pos - 1));
+        boolean after = pos < str.length() && isWordChar(str.charAt(pos));
+        return before != after;
+    }
+
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+
+    private void buildFailureLinks() {
+
+        failure[0] = 0;
+        nextMatch[0] = -1;
+
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            failure[child] = 0;
+            nextMatch[child] = -1;
+            queue.add(child);
+        }
+
+        // breadth first, so the failure links of shorter states are known
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < keys[state].length; i++) {
+                char c = keys[state][i];
+                int child = targets[state][i];
+
+                int fail = failure[state];
+                int next = step(fail, c);
+                while (next < 0 && fail != 0) {
+                    fail = failure[fail];
+                    next = step(fail, c);
+                }
+                failure[child] = next < 0 ? 0 : next;
+
+                int suffix = failure[child];
+                nextMatch[child] = ruleLength[suffix] > 0 ? suffix : nextMatch[suffix];
+                queue.add(child);
+            }
+        }
+    }
+
+
+    /**
+     * The trie the automaton is built from.
+     */
+    private static final class Trie {
+
+        private final List<Node> nodes = new ArrayList<>();
+
+        Trie() {
+            nodes.add(new Node());
+        }
+
+        void add(String rule, boolean wholeWord) {
+            int state = 0;
+            for (int i = 0; i < rule.length(); i++) {
+                char c = Character.toLowerCase(rule.charAt(i));
+                Integer next = nodes.get(state).children.get(c);
+                if (next == null) {
+                    next = nodes.size();
+                    nodes.add(new Node());
+                    nodes.get(state).children.put(c, next);
+                }
+                state = next;
+            }
+
+            Node node = nodes.get(state);
+            node.length = rule.length();
+            node.wholeWord = wholeWord;
+        }
+
+        private static final class Node {
+            private final TreeMap<Character, Integer> children = new TreeMap<>();
+            private int length = 0;
+            private boolean wholeWord = true;
+        }
+    }
+
+}
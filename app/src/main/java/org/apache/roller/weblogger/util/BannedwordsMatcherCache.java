@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache for the compiled bannedwordslist rules of each weblog, which are the
+ * site wide rules plus the weblog's own, so that checking a comment doesn't
+ * parse and compile them again.
+ *
+ * Rules are cached by weblog id along with the rule lists they were
+ * compiled from, and are compiled again when either list changes.
+ * Entries are also dropped whenever their weblog is invalidated.
+ */
+public final class BannedwordsMatcherCache implements CacheHandler {
+    
+    private static final Log log = LogFactory.getLog(BannedwordsMatcherCache.class);
+    
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.bannedwords";
+    
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+    
+    // reference to our singleton instance
+    private static final BannedwordsMatcherCache singletonInstance = new BannedwordsMatcherCache();
+    
+    
+    private BannedwordsMatcherCache() {
+        
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+        
+        Map<String, String> cacheProps = new HashMap<>();
+        cacheProps.put("id", CACHE_ID);
+        
+        Enumeration<Object> allProps = WebloggerConfig.keys();
+        String prop;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+            
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1), 
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+        
+        log.info(cacheProps);
+        
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(this, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+    
+    
+    public static BannedwordsMatcherCache getInstance() {
+        return singletonInstance;
+    }
+    
+    
+    /**
+     * Get the site wide and weblog specific rules of a weblog, compiled.
+     */
+    public BannedwordsMatcher getMatcher(Weblog weblog) {
+        
+        String weblogRules = weblog.getBannedwordslist();
+        String siteRules = WebloggerRuntimeConfig.getProperty("spam.bannedwordslist");
+        if (!cacheEnabled || weblog.getId() == null) {
+            return compile(weblogRules, siteRules);
+        }
+        
+        String key = generateKey(weblog);
+        CachedMatcher cached = (CachedMatcher) contentCache.get(key);
+        if (cached != null && cached.isFrom(weblogRules, siteRules)) {
+            log.debug("HIT "+key);
+            return cached.matcher;
+        }
+        log.debug(cached == null ? "MISS "+key : "HIT-EXPIRED "+key);
+        
+        BannedwordsMatcher matcher = compile(weblogRules, siteRules);
+        contentCache.put(key, new CachedMatcher(weblogRules, siteRules, matcher));
+        log.debug("PUT "+key);
+        return matcher;
+    }
+    
+    
+    /**
+     * A weblog has changed, its rules may have too.
+     */
+    @Override
+    public void invalidate(Weblog website) {
+        
+        if (!cacheEnabled || website.getId() == null) {
+            return;
+        }
+        
+        contentCache.remove(generateKey(website));
+        log.debug("REMOVE "+generateKey(website));
+    }
+    
+    
+    private static BannedwordsMatcher compile(String weblogRules, String siteRules) {
+        List<String> stringRules = new ArrayList<>();
+        List<Pattern> regexRules = new ArrayList<>();
+        Bannedwordslist.populateSpamRules(weblogRules, stringRules, regexRules, siteRules);
+        return BannedwordsMatcher.compile(stringRules, regexRules);
+    }
+    
+    
+    private static String generateKey(Weblog weblog) {
+        return CACHE_ID + ":" + weblog.getId();
+    }
+    
+    
+    /**
+     * Rules compiled from the given lists.
+     */
+    private static class CachedMatcher {
+        
+        private final String weblogRules;
+        private final String siteRules;
+        private final BannedwordsMatcher matcher;
+        
+        CachedMatcher(String weblogRules, String siteRules, BannedwordsMatcher matcher) {
+            this.weblogRules = weblogRules;
+            this.siteRules = siteRules;
+            this.matcher = matcher;
+        }
+        
+        // comparing the lists is cheap next to compiling them again
+        boolean isFrom(String weblogRules, String siteRules) {
+            return Objects.equals(this.weblogRules, weblogRules)
+                    && Objects.equals(this.siteRules, siteRules);
+        }
+    }
+    
+}
@@ -17,12 +17,7 @@
 */
 package org.apache.roller.weblogger.util;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Pattern;
-
 import org.apache.roller.weblogger.config.WebloggerConfig;
-import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.pojos.Weblog;
 
@@ -66,15 +61,8 @@ public final class BannedwordslistChecker {
      */
     public static boolean checkReferrer(Weblog website, String referrerURL) {
         if (WebloggerConfig.getBooleanProperty("site.bannedwordslist.enable.referrers")) {
-            List<String> stringRules = new ArrayList<>();
-            List<Pattern> regexRules = new ArrayList<>();
-            Bannedwordslist.populateSpamRules(
-                website.getBannedwordslist(), stringRules, regexRules, null);
-            if (WebloggerRuntimeConfig.getProperty("spam.bannedwordslist") != null) {
-                Bannedwordslist.populateSpamRules(
-                    WebloggerRuntimeConfig.getProperty("spam.bannedwordslist"), stringRules, regexRules, null);
-            }
-            return Bannedwordslist.matchesRulesOnly(referrerURL, stringRules, regexRules);
+            // the site and weblog rules, without the built-in ones
+            return BannedwordsMatcherCache.getInstance().getMatcher(website).matches(referrerURL);
         }
         return false;
     }
@@ -85,17 +73,13 @@ public final class BannedwordslistChecker {
      */
     private static boolean testComment(WeblogEntryComment c) {
         boolean ret = false;
-        List<String> stringRules = new ArrayList<>();
-        List<Pattern> regexRules = new ArrayList<>();
         Weblog website = c.getWeblogEntry().getWebsite();
-        Bannedwordslist.populateSpamRules(
-            website.getBannedwordslist(), stringRules, regexRules,
-            WebloggerRuntimeConfig.getProperty("spam.bannedwordslist"));
+        BannedwordsMatcher weblogRules = BannedwordsMatcherCache.getInstance().getMatcher(website);
         Bannedwordslist bannedwordslist = Bannedwordslist.getBannedwordslist();
-        if (   bannedwordslist.isBannedwordslisted(c.getUrl(),     stringRules, regexRules)
-            || bannedwordslist.isBannedwordslisted(c.getEmail(),   stringRules, regexRules)
-            || bannedwordslist.isBannedwordslisted(c.getName(),    stringRules, regexRules)
-            || bannedwordslist.isBannedwordslisted(c.getContent(), stringRules, regexRules)) {
+        if (   bannedwordslist.isBannedwordslisted(c.getUrl(),     weblogRules)
+            || bannedwordslist.isBannedwordslisted(c.getEmail(),   weblogRules)
+            || bannedwordslist.isBannedwordslisted(c.getName(),    weblogRules)
+            || bannedwordslist.isBannedwordslisted(c.getContent(), weblogRules)) {
             ret = true;
         }
         return ret;
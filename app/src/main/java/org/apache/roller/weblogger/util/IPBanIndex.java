@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * An immutable index of banned ip addresses, which may be single IPv4 or
+ * IPv6 addresses or CIDR blocks like 10.0.0.0/8 and 2001:db8::/32.
+ *
+ * All addresses are kept as 128 bit IPv6 addresses, IPv4 ones mapped into
+ * ::ffff:0:0/96, in a sorted array of non-overlapping ranges which is
+ * binary searched.  So a lookup takes a few comparisons of longs even for
+ * a list of tens of thousands of bans, and overlapping or adjacent bans
+ * take no room.  Entries which are not addresses at all are compared as
+ * plain strings, as they always have been.
+ */
+public final class IPBanIndex {
+
+    private static final IPBanIndex EMPTY = build(Collections.emptyList());
+
+    // IPv4 addresses are mapped into ::ffff:0:0/96
+    private static final long IPV4_MAPPED = 0xffffL << 32;
+    private static final int IPV4_PREFIX = 96;
+
+    // start and end of each range, high and low 64 bits, sorted by start
+    private final long[] startHi;
+    private final long[] startLo;
+    private final long[] endHi;
+    private final long[] endLo;
+
+    // entries which are not addresses
+    private final Set<String> others;
+
+    // number of entries the index was built from
+    private final int entries;
+
+
+    private IPBanIndex(List<long[]> ranges, Set<String> others, int entries) {
+        this.startHi = new long[ranges.size()];
+        this.startLo = new long[ranges.size()];
+        this.endHi = new long[ranges.size()];
+        this.endLo = new long[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            startHi[i] = range[0];
+            startLo[i] = range[1];
+            endHi[i] = range[2];
+            endLo[i] = range[3];
+        }
+        this.others = others;
+        this.entries = entries;
+    }
+
+
+    /**
+     * An index without any bans.
+     */
+    public static IPBanIndex empty() {
+        return EMPTY;
+    }
+
+
+    /**
+     * Build an index of the given entries, blank ones and those starting
+     * with # are ignored.
+     */
+    public static IPBanIndex build(Collection<String> bans) {
+        List<long[]> ranges = new ArrayList<>(bans.size());
+        Set<String> others = new HashSet<>();
+        int entries = 0;
+        for (String ban : bans) {
+            if (add(ban, ranges, others)) {
+                entries++;
+            }
+        }
+        return new IPBanIndex(merge(ranges), others, entries);
+    }
+
+
+    /**
+     * Get a new index with the given entry added to the bans of this one.
+     */
+    public IPBanIndex with(String ban) {
+        List<long[]> ranges = new ArrayList<>(startHi.length + 1);
+        for (int i = 0; i < startHi.length; i++) {
+            ranges.add(new long[] {startHi[i], startLo[i], endHi[i], endLo[i]});
+        }
+        Set<String> newOthers = new HashSet<>(others);
+        boolean added = add(ban, ranges, newOthers);
+        return new IPBanIndex(merge(ranges), newOthers, added ? entries + 1 : entries);
+    }
+
+
+    /**
+     * Is the given address banned?
+     */
+    public boolean contains(String ip) {
+
+        if (ip == null || ip.isEmpty()) {
+            return false;
+        }
+
+        long hi;
+        long lo;
+        long ipv4 = parseIPv4(ip);
+        if (ipv4 >= 0) {
+            hi = 0;
+            lo = IPV4_MAPPED | ipv4;
+        } else {
+            byte[] address = parseIPv6(ip);
+            if (address == null) {
+                return others.contains(ip);
+            }
+            hi = toLong(address, 0);
+            lo = toLong(address, 8);
+        }
+
+        // the last range starting at or before the address
+        int low = 0;
+        int high = startHi.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(startHi[mid], startLo[mid], hi, lo) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 && compare(hi, lo, endHi[high], endLo[high]) <= 0;
+    }
+
+
+    /**
+     * Number of entries the index was built from.
+     */
+    public int size() {
+        return entries;
+    }
+
+
+    /**
+     * Number of distinct ranges of addresses banned.
+     */
+    public int getRangeCount() {
+        return startHi.length;
+    }
+
+
+    // parse an entry into a range, or keep it as it is
+    private static boolean add(String ban, List<long[]> ranges, Set<String> others) {
+
+        if (ban == null) {
+            return false;
+        }
+        String entry = ban.trim();
+        if (entry.isEmpty() || entry.startsWith("#")) {
+            return false;
+        }
+
+        String address = entry;
+        int prefix = -1;
+        int slash = entry.indexOf('/');
+        if (slash > 0) {
+            address = entry.substring(0, slash);
+            try {
+                prefix = Integer.parseInt(entry.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                others.add(entry);
+                return true;
+            }
+        }
+
+        long hi;
+        long lo;
+        long ipv4 = parseIPv4(address);
+        if (ipv4 >= 0) {
+            if (prefix > 32) {
+                others.add(entry);
+                return true;
+            }
+            hi = 0;
+            lo = IPV4_MAPPED | ipv4;
+            prefix = prefix < 0 ? 128 : IPV4_PREFIX + prefix;
+        } else {
+            byte[] bytes = parseIPv6(address);
+            if (bytes == null || prefix > 128) {
+                others.add(entry);
+                return true;
+            }
+            hi = toLong(bytes, 0);
+            lo = toLong(bytes, 8);
+            prefix = prefix < 0 ? 128 : prefix;
+        }
+
+        long maskHi = prefix >= 64 ? -1L : (prefix == 0 ? 0 : -1L << (64 - prefix));
+        long maskLo = prefix <= 64 ? 0 : (prefix == 128 ? -1L : -1L << (128 - prefix));
+        ranges.add(new long[] {hi & maskHi, lo & maskLo, hi | ~maskHi, lo | ~maskLo});
+        return true;
+    }
+
+
+    // sort ranges by start and join those which overlap or touch
+    private static List<long[]> merge(List<long[]> ranges) {
+
+        ranges.sort((a, b) -> compare(a[0], a[1], b[0], b[1]));
+
+        List<long[]> merged = new ArrayList<>(ranges.size());
+        long[] current = null;
+        for (long[] range : ranges) {
+            if (current != null && touches(current, range)) {
+                if (compare(range[2], range[3], current[2], current[3]) > 0) {
+                    current[2] = range[2];
+                    current[3] = range[3];
+                }
+            } else {
+                current = range.clone();
+                merged.add(current);
+            }
+        }
+        return merged;
+    }
+
+
+    // does the next range start at or right after the end of the current?
+    private static boolean touches(long[] current, long[] next) {
+        if (compare(next[0], next[1], current[2], current[3]) <= 0) {
+            return true;
+        }
+        long afterLo = current[3] + 1;
+        long afterHi = afterLo == 0 ? current[2] + 1 : current[2];
+        return next[0] == afterHi && next[1] == afterLo;
+    }
+
+
+    private static int compare(long hi1, long lo1, long hi2, long lo2) {
+        int result = Long.compareUnsigned(hi1, hi2);
+        return result != 0 ? result : Long.compareUnsigned(lo1, lo2);
+    }
+
+
+    /**
+     * Parse a dotted quad IPv4 address without any allocation.
+     *
+     * @return the address, or -1 if it is not one
+     */
+    static long parseIPv4(String ip) {
+        long address = 0;
+        int part = 0;
+        int digits = 0;
+        int dots = 0;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+                if (++digits > 3 || part > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && digits > 0 && dots < 3) {
+                address = (address << 8) | part;
+                part = 0;
+                digits = 0;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        if (dots != 3 || digits == 0) {
+            return -1;
+        }
+        return (address << 8) | part;
+    }
+
+
+    /**
+     * Parse an IPv6 address, with or without brackets or a zone.
+     *
+     * @return the 16 bytes of the address, or null if it is not one
+     */
+    static byte[] parseIPv6(String ip) {
+
+        String literal = ip;
+        if (literal.startsWith("[") && literal.endsWith("]")) {
+            literal = literal.substring(1, literal.length() - 1);
+        }
+        int zone = literal.indexOf('%');
+        if (zone >= 0) {
+            literal = literal.substring(0, zone);
+        }
+
+        // only hand over literals, never anything which could mean a lookup
+        if (literal.indexOf(':') < 0) {
+            return null;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (Character.digit(c, 16) < 0 && c != ':' && c != '.') {
+                return null;
+            }
+        }
+
+        byte[] bytes;
+        try {
+            bytes = InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+        if (bytes.length == 4) {
+            // an IPv4 mapped address
+            byte[] mapped = new byte[16];
+            mapped[10] = (byte) 0xff;
+            mapped[11] = (byte) 0xff;
+            System.arraycopy(bytes, 0, mapped, 12, 4);
+            return mapped;
+        }
+        return bytes;
+    }
+
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+}
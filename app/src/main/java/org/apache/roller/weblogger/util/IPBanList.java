@@ -18,16 +18,17 @@
 
 package org.apache.roller.weblogger.util;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.PrintWriter;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 
 
@@ -37,17 +38,26 @@ import org.apache.roller.weblogger.config.WebloggerConfig;
  * This base implementation gets its list from a file on the filesystem.  We
  * are also aware of when the file changes via some outside source and we will
  * automatically re-read the file and update the list when that happens.
+ *
+ * The file lists one address or CIDR block per line, like 10.0.0.0/8 or
+ * 2001:db8::/32, which are looked up in an {@link IPBanIndex}.  A changed
+ * file is read in the background and the new index swapped in when it is
+ * ready, so checks never wait for it.
  */
 public final class IPBanList {
 
     private static final Log log = LogFactory.getLog(IPBanList.class);
 
-    // set of ips that are banned, use a set to ensure uniqueness
-    private volatile Set<String> bannedIps = newThreadSafeSet();
+    // index of the ips that are banned, replaced as a whole on any change
+    private volatile IPBanIndex bannedIps = IPBanIndex.empty();
 
     // file listing the ips that are banned
     private ModifiedFile bannedIpsFile = null;
 
+    // when to next check if the file has changed, and if it's being read
+    private volatile long nextCheck = 0;
+    private final AtomicBoolean reloading = new AtomicBoolean(false);
+
     // reference to our singleton instance
     private static IPBanList instance = null;
 
@@ -114,8 +124,8 @@ public final class IPBanList {
                     }
                     this.bannedIpsFile.clearChanged();
 
-                    // add to Set
-                    this.bannedIps.add(ip);
+                    // add to index
+                    this.bannedIps = this.bannedIps.with(ip);
                 }
 
                 log.debug("ADDED "+ip);
@@ -127,41 +137,55 @@ public final class IPBanList {
 
 
     /**
-     * Check if the banned ips file has changed and needs to be reloaded.
+     * Check if the banned ips file has changed, at most once a second, and
+     * reload it in the background if so.
      */
     private void loadBannedIpsIfNeeded() {
 
-        if(bannedIpsFile != null &&
-                (bannedIpsFile.hasChanged())) {
+        if(bannedIpsFile == null) {
+            return;
+        }
 
-            // need to reload
-            this.loadBannedIps();
+        long now = System.currentTimeMillis();
+        if(now < nextCheck) {
+            return;
+        }
+        nextCheck = now + RollerConstants.SEC_IN_MS;
+
+        if(bannedIpsFile.hasChanged() && reloading.compareAndSet(false, true)) {
+            Thread loader = new Thread(() -> {
+                try {
+                    loadBannedIps();
+                } finally {
+                    reloading.set(false);
+                }
+            }, "IPBanList-reload");
+            loader.setDaemon(true);
+            loader.start();
         }
     }
 
 
     /**
-     * Load the list of banned ips from a file.  This clears the old list and
-     * loads exactly what is in the file.
+     * Load the list of banned ips from a file.  This replaces the old list
+     * with exactly what is in the file.
      */
     private synchronized void loadBannedIps() {
 
         if(bannedIpsFile != null) {
 
-            // TODO: optimize this
-            try (BufferedReader in = new BufferedReader(new FileReader(this.bannedIpsFile))) {
-                Set<String> newBannedIpList = newThreadSafeSet();
-
-                String ip = null;
-                while((ip = in.readLine()) != null) {
-                    newBannedIpList.add(ip);
-                }
+            try {
+                // note the time first, so changes while reading are not missed
+                long lastModified = bannedIpsFile.lastModified();
+                List<String> lines = Files.readAllLines(bannedIpsFile.toPath(), StandardCharsets.UTF_8);
+                IPBanIndex newBannedIps = IPBanIndex.build(lines);
 
                 // list updated, reset modified file
-                this.bannedIps = newBannedIpList;
-                this.bannedIpsFile.clearChanged();
+                this.bannedIps = newBannedIps;
+                this.bannedIpsFile.clearChanged(lastModified);
 
-                log.info(this.bannedIps.size()+" banned ips loaded");
+                log.info(newBannedIps.size()+" banned ips loaded, as "
+                        +newBannedIps.getRangeCount()+" ranges");
             } catch(Exception ex) {
                log.error("Error loading banned ips from file", ex);
             }
@@ -189,9 +213,9 @@ public final class IPBanList {
         public void clearChanged() {
             myLastModified = lastModified();
         }
-    }
 
-    private static <T> Set<T> newThreadSafeSet() {
-        return ConcurrentHashMap.newKeySet();
+        public void clearChanged(long lastModified) {
+            myLastModified = lastModified;
+        }
     }
 }
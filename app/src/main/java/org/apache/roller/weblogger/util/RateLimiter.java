@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+
+
+/**
+ * Limits the rate of hits from each client of an endpoint, such as comment
+ * or trackback posting.
+ *
+ * A client is considered abusive if it made more than the threshold number
+ * of hits within the last interval.  Hits are counted in fixed windows of
+ * one interval, and the rate over the sliding interval is estimated from the
+ * current window plus the part of the previous window still inside it, so
+ * each client only needs a couple of counters and there is no reset when a
+ * window ends.
+ *
+ * Clients are spread over a number of independently locked stripes, each
+ * keeping its least recently seen clients only, so hits from different
+ * clients rarely wait for each other and memory use is bounded.
+ */
+public final class RateLimiter {
+    
+    private static final Log log = LogFactory.getLog(RateLimiter.class);
+    
+    private static final int STRIPES = 16;
+    
+    // all limiters configured so far, by endpoint
+    private static final Map<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+    
+    private final String name;
+    private final int threshold;
+    private final long interval;
+    private final Stripe[] stripes;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    
+    /**
+     * @param name name of the endpoint, for logging and stats
+     * @param threshold most hits a client may make within the interval
+     * @param interval length of the interval in milliseconds
+     * @param maxClients most clients to remember
+     */
+    public RateLimiter(String name, int threshold, long interval, int maxClients) {
+        
+        this.name = name;
+        
+        // threshold can't be negative, that would mean everyone is abusive
+        this.threshold = Math.max(threshold, 0);
+        
+        // interval must be a positive value
+        this.interval = Math.max(interval, 1);
+        
+        int stripeSize = Math.max(maxClients / STRIPES, 1);
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeSize);
+        }
+    }
+    
+    
+    /**
+     * Get the limiter for an endpoint, configured by the properties
+     * &lt;endpoint&gt;.throttle.enabled, .threshold, .interval (in seconds)
+     * and .maxentries.
+     *
+     * @return the limiter, or null if throttling of the endpoint is disabled
+     */
+    public static RateLimiter getLimiter(String endpoint) {
+        
+        String prefix = endpoint + ".throttle.";
+        if (!WebloggerConfig.getBooleanProperty(prefix + "enabled")) {
+            return null;
+        }
+        
+        return limiters.computeIfAbsent(endpoint, key -> {
+            int threshold = WebloggerConfig.getIntProperty(prefix + "threshold", 25);
+            int interval = WebloggerConfig.getIntProperty(prefix + "interval", 60);
+            int maxEntries = WebloggerConfig.getIntProperty(prefix + "maxentries", 250);
+            
+            log.info("Throttling " + endpoint + " to " + threshold + " hits per "
+                    + interval + " seconds");
+            return new RateLimiter(endpoint, threshold,
+                    (long) interval * RollerConstants.SEC_IN_MS, maxEntries);
+        });
+    }
+    
+    
+    /**
+     * Get the stats of all limiters, by endpoint.
+     */
+    public static Map<String, Map<String, Object>> getAllStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (RateLimiter limiter : limiters.values()) {
+            stats.put(limiter.getName(), limiter.getStats());
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+    
+    
+    /**
+     * Process a new hit from the client.
+     *
+     * Each call to this method counts a hit for the client and then returns
+     * a boolean value indicating if the hit has pushed the client over the
+     * threshold.
+     *
+     * @return true if client is abusive, false otherwise
+     */
+    public boolean processHit(String clientId) {
+        return processHit(clientId, System.currentTimeMillis());
+    }
+    
+    
+    boolean processHit(String clientId, long now) {
+        
+        if (clientId == null) {
+            return false;
+        }
+        
+        hits.increment();
+        
+        double rate;
+        Stripe stripe = getStripe(clientId);
+        synchronized (stripe) {
+            Window window = stripe.get(clientId);
+            if (window == null) {
+                window = new Window();
+                stripe.put(clientId, window);
+            }
+            window.roll(now, interval);
+            window.current++;
+            rate = window.rate(now, interval);
+        }
+        
+        if (rate > threshold) {
+            log.debug("ABUSIVE " + name + " " + clientId);
+            rejected.increment();
+            return true;
+        }
+        return false;
+    }
+    
+    
+    /**
+     * Check the current status of a client without counting a hit.
+     *
+     * @return true if client is abusive, false otherwise.
+     */
+    public boolean isAbusive(String clientId) {
+        return isAbusive(clientId, System.currentTimeMillis());
+    }
+    
+    
+    boolean isAbusive(String clientId, long now) {
+        
+        if (clientId == null) {
+            return false;
+        }
+        
+        Stripe stripe = getStripe(clientId);
+        synchronized (stripe) {
+            Window window = stripe.get(clientId);
+            if (window == null) {
+                return false;
+            }
+            window.roll(now, interval);
+            return window.rate(now, interval) > threshold;
+        }
+    }
+    
+    
+    public String getName() {
+        return name;
+    }
+    
+    
+    public Map<String, Object> getStats() {
+        
+        int clients = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                clients += stripe.size();
+            }
+        }
+        
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threshold", threshold);
+        stats.put("interval", interval);
+        stats.put("clients", clients);
+        stats.put("hits", hits.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+    
+    
+    private Stripe getStripe(String clientId) {
+        int hash = clientId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+    
+    
+    /**
+     * The clients of one stripe, least recently seen first.
+     */
+    private final class Stripe extends LinkedHashMap<String, Window> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final int maxSize;
+        
+        Stripe(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Window> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+    
+    
+    /**
+     * Hits of a client in the current and previous window.
+     */
+    private static final class Window {
+        
+        private long window = -1;
+        private int current = 0;
+        private int previous = 0;
+        
+        void roll(long now, long interval) {
+            long nowWindow = now / interval;
+            if (nowWindow != window) {
+                previous = (nowWindow == window + 1) ? current : 0;
+                current = 0;
+                window = nowWindow;
+            }
+        }
+        
+        // hits in the interval up to now, taking the previous window's
+        // hits to have been made evenly over it
+        double rate(long now, long interval) {
+            double elapsed = (double) (now % interval) / interval;
+            return previous * (1 - elapsed) + current;
+        }
+    }
+    
+}
@@ -45,6 +45,10 @@ public class RollerMessages
     {
         mErrors.add(new RollerMessage(key, args));
     }
+    public void addErrors(RollerMessages other)
+    {
+        mErrors.addAll(other.mErrors);
+    }
     public void addMessage(String key)
     {
         mMessages.add(new RollerMessage(key, null));
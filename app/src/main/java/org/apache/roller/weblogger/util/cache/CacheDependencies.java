@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.roller.weblogger.pojos.Weblog;
+
+
+/**
+ * Records which objects a piece of content was built from while it is
+ * being rendered, so that a cache can later drop just the content which
+ * depends on an object when that object is invalidated.
+ *
+ * Recording is bound to the current thread and is only active between
+ * start() and stop(), everywhere else record() does nothing.  Dependencies
+ * are plain strings built with the static helper methods of this class, so
+ * that the code recording them and the code invalidating them agree.
+ */
+public final class CacheDependencies {
+
+    // dependencies of the content being rendered by the current thread
+    private static final ThreadLocal<CacheDependencies> current = new ThreadLocal<>();
+
+    private final Set<String> dependencies = new HashSet<>();
+
+    // opaque marker given by whoever started the recording
+    private final long generation;
+
+
+    private CacheDependencies(long generation) {
+        this.generation = generation;
+    }
+
+
+    /**
+     * Start recording dependencies on the current thread.
+     *
+     * @param generation a marker for the caller to tell when recording began.
+     */
+    public static CacheDependencies start(long generation) {
+        CacheDependencies deps = new CacheDependencies(generation);
+        current.set(deps);
+        return deps;
+    }
+
+
+    /**
+     * Stop recording dependencies on the current thread.
+     */
+    public static void stop() {
+        current.remove();
+    }
+
+
+    /**
+     * Record a dependency of the content being rendered by the current
+     * thread, if any.
+     */
+    public static void record(String dependency) {
+        CacheDependencies deps = current.get();
+        if (deps != null) {
+            deps.dependencies.add(dependency);
+        }
+    }
+
+
+    public Set<String> getDependencies() {
+        return Collections.unmodifiableSet(dependencies);
+    }
+
+
+    public long getGeneration() {
+        return generation;
+    }
+
+
+    /**
+     * Anything about the weblog itself.
+     */
+    public static String weblog(String weblogId) {
+        return "weblog:" + weblogId;
+    }
+
+
+    /**
+     * The contents of a single weblog entry.
+     */
+    public static String entry(String entryId) {
+        return "entry:" + entryId;
+    }
+
+
+    /**
+     * Which entries a weblog has, i.e. any listing, count or tag statistic
+     * of its entries.  A null weblog means entries across all weblogs.
+     */
+    public static String entries(Weblog weblog) {
+        return "entries:" + (weblog != null ? weblog.getId() : "*");
+    }
+
+
+    /**
+     * The comments on a single weblog entry.
+     */
+    public static String comments(String entryId) {
+        return "comments:" + entryId;
+    }
+
+
+    /**
+     * Any listing or count of the comments across a weblog.  A null weblog
+     * means comments across all weblogs.
+     */
+    public static String weblogComments(Weblog weblog) {
+        return "weblogComments:" + (weblog != null ? weblog.getId() : "*");
+    }
+
+
+    public static String category(String categoryId) {
+        return "category:" + categoryId;
+    }
+
+
+    public static String template(String templateId) {
+        return "template:" + templateId;
+    }
+
+
+    public static String folder(String folderId) {
+        return "folder:" + folderId;
+    }
+
+
+    public static String user(String userId) {
+        return "user:" + userId;
+    }
+
+}
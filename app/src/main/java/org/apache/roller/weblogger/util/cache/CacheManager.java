@@ -97,6 +97,16 @@ public final class CacheManager {
         log.info("Cache Manager Initialized.");
         log.info("Cache Factory = "+cacheFactory.getClass().getName());
         
+        // cap the content all caches together keep off-heap
+        String offHeapLimit = WebloggerConfig.getProperty("cache.offheap.maxbytes");
+        if(offHeapLimit != null && !offHeapLimit.isBlank()) {
+            try {
+                CachedContent.setOffHeapLimit(Long.parseLong(offHeapLimit.trim()));
+            } catch(NumberFormatException e) {
+                log.warn("invalid cache.offheap.maxbytes property", e);
+            }
+        }
+        
         
         // add custom handlers
         try {
@@ -3,9 +3,19 @@ package org.apache.roller.weblogger.util.cache;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -14,17 +24,50 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * A utility class for storing cached content written to a java.io.Writer.
+ *
+ * Once closed the content may optionally be moved off the java heap into a
+ * direct ByteBuffer, see moveOffHeap().  Callers serving cached content
+ * should prefer writeTo() and getContentLength() over getContent() since
+ * those don't need to copy off-heap content back onto the heap as a whole.
+ * The total size of all off-heap content is capped, see setOffHeapLimit(),
+ * content which doesn't fit stays on the heap.  Off-heap memory counts
+ * against the cap until its buffers are garbage collected, not just until
+ * a cache drops the content, since a request may still be writing it out.
+ *
+ * A gzip compressed variant of the content can also be created once, see
+ * compress(), so that serving cached content to clients which accept gzip
+ * doesn't require compressing it again on every request.
+ *
+ * When closed a strong ETag is computed from a hash of the content, which
+ * lets conditional requests be answered without sending the content again.
  */
 public class CachedContent implements AutoCloseable, Serializable {
     
     private static final Log log = LogFactory.getLog(CachedContent.class);
     
+    // bytes moved off-heap by all instances and not yet given back
+    private static final AtomicLong offHeapBytes = new AtomicLong();
+    private static volatile long offHeapLimit = Long.MAX_VALUE;
+    
+    // gives back the bytes of buffers once they are garbage collected
+    private static final Cleaner cleaner = Cleaner.create();
+    
     // the byte array we use to maintain the cached content
     private byte[] content = new byte[0];
     
+    // the cached content once it has been moved off-heap, content is null then
+    private transient ByteBuffer offHeapContent = null;
+    
+    // optional gzip compressed variant of the content, on or off-heap
+    private byte[] gzippedContent = null;
+    private transient ByteBuffer offHeapGzippedContent = null;
+    
     // content-type of data in byte array
     private final String contentType;
     
+    // strong entity tag computed from the content when closed
+    private String eTag = null;
+    
     // Use a byte array output stream to cached the output bytes
     private transient ByteArrayOutputStream outstream = null;
     
@@ -56,9 +99,166 @@ public class CachedContent implements AutoCloseable, Serializable {
      *
      * NOTE: the content is only a representation of the data written to the
      *       enclosed Writer up until the last call to flush().
+     *
+     * If the content has been moved off-heap this returns a fresh copy.
      */
     public byte[] getContent() {
-        return this.content;
+        return bytes(this.content, this.offHeapContent);
+    }
+    
+    
+    /**
+     * Get the size of the cached content in bytes.
+     */
+    public int getContentLength() {
+        return length(this.content, this.offHeapContent);
+    }
+    
+    
+    /**
+     * Write the cached content to the given stream.
+     *
+     * Off-heap content is written from its buffer through a channel wrapping
+     * the stream.  Servlet streams offer no channel of their own, so that
+     * channel still copies the content through a small heap buffer, a chunk
+     * at a time, but never allocates a copy of the whole content on the
+     * heap.  Safe to call from many threads at once.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        write(this.content, this.offHeapContent, out);
+    }
+    
+    
+    /**
+     * True if a gzip compressed variant of the content is available.
+     */
+    public boolean hasGzippedContent() {
+        return this.gzippedContent != null || this.offHeapGzippedContent != null;
+    }
+    
+    
+    /**
+     * Get the size of the gzip compressed variant in bytes.
+     */
+    public int getGzippedContentLength() {
+        if(!hasGzippedContent()) {
+            return 0;
+        }
+        return length(this.gzippedContent, this.offHeapGzippedContent);
+    }
+    
+    
+    /**
+     * Write the gzip compressed variant of the content to the given stream.
+     *
+     * @throws IllegalStateException if there is no compressed variant
+     */
+    public void writeGzippedTo(OutputStream out) throws IOException {
+        
+        if(!hasGzippedContent()) {
+            throw new IllegalStateException("No gzipped content, call compress() first!");
+        }
+        
+        write(this.gzippedContent, this.offHeapGzippedContent, out);
+    }
+    
+    
+    /**
+     * Create the gzip compressed variant of the content.  Only allowed after
+     * close().  Content smaller than minSize, or which doesn't get any smaller
+     * when compressed, is left without a compressed variant.
+     *
+     * @throws IllegalStateException if calling compress() before a close()
+     */
+    public void compress(int minSize) {
+        
+        if(this.outstream != null) {
+            throw new IllegalStateException("Cannot compress() before a close()!");
+        }
+        
+        int length = getContentLength();
+        if(hasGzippedContent() || length < minSize) {
+            return;
+        }
+        
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            writeTo(gzip);
+        } catch (IOException e) {
+            // can't happen writing to memory, just serve uncompressed
+            log.warn("Unable to compress content", e);
+            return;
+        }
+        
+        if(compressed.size() >= length) {
+            return;
+        }
+        
+        // only the share of the budget taken by moveOffHeap() is used, so
+        // compressing after that keeps the compressed variant on the heap
+        this.gzippedContent = compressed.toByteArray();
+        
+        log.debug("COMPRESSED "+length+" -> "+compressed.size());
+    }
+    
+    
+    /**
+     * Move the cached content, and its compressed variant, into direct
+     * ByteBuffers so that they no longer take up space on the java heap.
+     * Only allowed after close().  If that would take the total off-heap
+     * content over its limit the content stays on the heap.
+     *
+     * @return true if the content is off-heap
+     * @throws IllegalStateException if calling moveOffHeap() before a close()
+     */
+    public boolean moveOffHeap() {
+        
+        if(this.outstream != null) {
+            throw new IllegalStateException("Cannot moveOffHeap() before a close()!");
+        }
+        
+        if(this.offHeapContent != null) {
+            return true;
+        }
+        
+        long size = (long) this.content.length
+                + (this.gzippedContent != null ? this.gzippedContent.length : 0);
+        if(!reserve(size)) {
+            log.debug("OFF-HEAP FULL, keeping "+size+" bytes on heap");
+            return false;
+        }
+        
+        this.offHeapContent = toDirect(this.content);
+        this.content = null;
+        
+        if(this.gzippedContent != null) {
+            this.offHeapGzippedContent = toDirect(this.gzippedContent);
+            this.gzippedContent = null;
+        }
+        
+        log.debug("MOVED OFF-HEAP "+size);
+        return true;
+    }
+    
+    
+    public boolean isOffHeap() {
+        return this.offHeapContent != null;
+    }
+    
+    
+    /**
+     * Set the most bytes all content together may keep off-heap.
+     */
+    public static void setOffHeapLimit(long limit) {
+        offHeapLimit = limit;
+    }
+    
+    
+    /**
+     * Get the number of bytes currently kept off-heap by all content.
+     */
+    public static long getOffHeapBytes() {
+        return offHeapBytes.get();
     }
     
     
@@ -69,7 +269,7 @@ public class CachedContent implements AutoCloseable, Serializable {
      *       enclosed Writer up until the last call to flush().
      */
     public String getContentAsString() {
-        return new String(this.content, UTF_8);
+        return new String(getContent(), UTF_8);
     }
     
     
@@ -83,6 +283,27 @@ public class CachedContent implements AutoCloseable, Serializable {
     }
     
     
+    /**
+     * Get the strong ETag for the content, including quotes, or null if this
+     * CachedContent has not been closed yet.
+     */
+    public String getETag() {
+        return eTag;
+    }
+    
+    
+    /**
+     * Get the strong ETag for the gzip compressed variant of the content,
+     * which must differ from the ETag of the uncompressed content.
+     */
+    public String getGzippedETag() {
+        if(eTag == null) {
+            return null;
+        }
+        return eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+    }
+    
+    
     /**
      * Called to flush any output in the cached Writer to
      * the cached content for more permanent storage.
@@ -121,9 +342,114 @@ public class CachedContent implements AutoCloseable, Serializable {
             }
             this.outstream.close();
             this.outstream = null;
+            
+            this.eTag = computeETag(this.content);
         }
         
         log.debug("CLOSED");
     }
     
+    
+    // off-heap content isn't serializable, so always write the bytes
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("content", getContent());
+        fields.put("gzippedContent", hasGzippedContent() ?
+                bytes(this.gzippedContent, this.offHeapGzippedContent) : null);
+        fields.put("contentType", this.contentType);
+        fields.put("eTag", this.eTag);
+        out.writeFields();
+    }
+    
+    
+    private static String computeETag(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            
+            // 128 bits are plenty to tell versions of one page apart
+            StringBuilder eTag = new StringBuilder(34).append('"');
+            for (int i = 0; i < 16; i++) {
+                eTag.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+                eTag.append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return eTag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    
+    private static boolean reserve(long size) {
+        long used;
+        do {
+            used = offHeapBytes.get();
+            if(used + size > offHeapLimit) {
+                return false;
+            }
+        } while(!offHeapBytes.compareAndSet(used, used + size));
+        return true;
+    }
+    
+    
+    // the reservation of the bytes is given back when the buffer is freed
+    private static ByteBuffer toDirect(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        cleaner.register(buffer, new Reservation(bytes.length));
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+    
+    
+    private static byte[] bytes(byte[] heap, ByteBuffer offHeap) {
+        if(offHeap != null) {
+            byte[] copy = new byte[offHeap.capacity()];
+            offHeap.duplicate().get(copy);
+            return copy;
+        }
+        return heap;
+    }
+    
+    
+    private static int length(byte[] heap, ByteBuffer offHeap) {
+        if(offHeap != null) {
+            return offHeap.capacity();
+        }
+        return heap.length;
+    }
+    
+    
+    private static void write(byte[] heap, ByteBuffer offHeap, OutputStream out) throws IOException {
+        if(offHeap != null) {
+            // don't close the channel, that would close the response stream
+            WritableByteChannel channel = Channels.newChannel(out);
+            ByteBuffer view = offHeap.duplicate();
+            while(view.hasRemaining()) {
+                channel.write(view);
+            }
+        } else {
+            out.write(heap);
+        }
+    }
+    
+    
+    /**
+     * Gives back the share of the off-heap limit taken by a buffer, it must
+     * not refer to the buffer or that would never be collected.
+     */
+    private static final class Reservation implements Runnable {
+        
+        private final long size;
+        
+        Reservation(long size) {
+            this.size = size;
+        }
+        
+        @Override
+        public void run() {
+            offHeapBytes.addAndGet(-size);
+        }
+    }
+    
 }
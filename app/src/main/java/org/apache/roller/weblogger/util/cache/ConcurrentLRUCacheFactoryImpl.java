@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Roller concurrent LRU cache factory.
+ *
+ * Understands the same "size" and "timeout" properties as the
+ * ExpiringLRUCacheFactoryImpl, plus an optional "concurrency" property
+ * which sets the number of segments the cache is split into and an optional
+ * "maxbytes" property which bounds the cache by the total size in bytes of
+ * the CachedContent it holds.
+ */
+public class ConcurrentLRUCacheFactoryImpl implements CacheFactory {
+
+    private static final Log log = LogFactory.getLog(ConcurrentLRUCacheFactoryImpl.class);
+
+
+    // protected so only the CacheManager can instantiate us
+    protected ConcurrentLRUCacheFactoryImpl() {}
+
+
+    /**
+     * Construct a new instance of a Roller ConcurrentLRUCache.
+     */
+    @Override
+    public Cache constructCache(Map<String, ?> properties) {
+
+        int size = 100;
+        long timeout = 15 * 60;
+        int concurrency = 16;
+        long maxbytes = 0;
+        String id = "unknown";
+
+        try {
+            size = Integer.parseInt((String) properties.get("size"));
+        } catch(Exception e) {
+            log.warn("invalid size property", e);
+        }
+
+        try {
+            timeout = Long.parseLong((String) properties.get("timeout"));
+        } catch(Exception e) {
+            log.warn("invalid timeout property", e);
+        }
+
+        String concurrencyProp = (String) properties.get("concurrency");
+        if (concurrencyProp != null) {
+            try {
+                concurrency = Integer.parseInt(concurrencyProp);
+            } catch(NumberFormatException e) {
+                log.warn("invalid concurrency property", e);
+            }
+        }
+
+        String maxbytesProp = (String) properties.get("maxbytes");
+        if (maxbytesProp != null) {
+            try {
+                maxbytes = Long.parseLong(maxbytesProp);
+            } catch(NumberFormatException e) {
+                log.warn("invalid maxbytes property", e);
+            }
+        }
+
+        String cacheId = (String) properties.get("id");
+        if(cacheId != null) {
+            id = cacheId;
+        }
+
+        Cache cache = new ConcurrentLRUCacheImpl(id, size, maxbytes, timeout, concurrency);
+
+        log.debug("new cache constructed. size=" + size + ", maxbytes=" + maxbytes
+                + ", timeout=" + timeout + ", concurrency=" + concurrency);
+
+        return cache;
+    }
+
+}
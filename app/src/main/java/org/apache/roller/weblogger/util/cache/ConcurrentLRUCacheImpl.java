@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+
+
+/**
+ * A segmented, approximate LRU cache with per-entry expiration.
+ *
+ * Unlike the LRUCacheImpl this cache never takes a lock on the read path.
+ * Keys are spread over a number of segments, each backed by its own
+ * ConcurrentHashMap, and every entry records the time it was last read.
+ * When a segment grows past its share of the maximum size it evicts the
+ * least recently read of a few sampled entries while holding a lock which
+ * is private to the segment, so writers only contend with other writers
+ * that hash to the same segment and readers never block.  Samples are
+ * taken by a cursor which keeps going round the segment, so an eviction
+ * costs the same whatever the size of the cache and every entry gets its
+ * turn at being looked at.
+ *
+ * Because of the sampling, and because the size limit is enforced per
+ * segment, the LRU ordering is only approximate, and the total number of
+ * entries may briefly go past maxsize while concurrent puts are being
+ * evicted.
+ *
+ * Optionally the cache can also be given a byte budget (maxbytes), in which
+ * case each entry is weighed by the size of the CachedContent it holds and
+ * eviction happens as soon as either the entry count or the byte budget is
+ * exceeded.  Entries which are bigger than a whole segment's share of the
+ * budget are never cached at all.
+ */
+public class ConcurrentLRUCacheImpl implements Cache {
+
+    private static final Log log = LogFactory.getLog(ConcurrentLRUCacheImpl.class);
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    // how many entries we look at to pick the one to evict
+    private static final int EVICTION_SAMPLES = 8;
+
+    // how many of the biggest entries we list in the stats
+    private static final int LARGEST_ENTRIES = 10;
+
+    private final String id;
+    private final int maxsize;
+    private final long timeout;
+    private final long maxbytes;
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    // for metrics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder removes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+    private final LongAdder rejects = new LongAdder();
+    private volatile Date startTime = new Date();
+
+
+    protected ConcurrentLRUCacheImpl(String id) {
+
+        this(id, 100, RollerConstants.HOUR_IN_MS / RollerConstants.SEC_IN_MS, DEFAULT_SEGMENTS);
+    }
+
+
+    protected ConcurrentLRUCacheImpl(String id, int maxsize, long timeout, int concurrency) {
+
+        this(id, maxsize, 0, timeout, concurrency);
+    }
+
+
+    /**
+     * @param id the cache id.
+     * @param maxsize maximum number of entries in the cache.
+     * @param maxbytes maximum total size of cached content in bytes, 0 or less means unlimited.
+     * @param timeout default entry timeout in seconds, 0 or less means never expire.
+     * @param concurrency desired number of segments, rounded down to a power of two.
+     */
+    protected ConcurrentLRUCacheImpl(String id, int maxsize, long maxbytes, long timeout, int concurrency) {
+
+        this.id = id;
+        this.maxsize = Math.max(1, maxsize);
+        this.maxbytes = Math.max(0, maxbytes);
+        this.timeout = (timeout > 0) ? timeout * RollerConstants.SEC_IN_MS : 0;
+
+        // never use more segments than entries, every segment must hold at least one
+        int count = Integer.highestOneBit(Math.max(1, Math.min(concurrency, this.maxsize)));
+        int segmentCapacity = (this.maxsize + count - 1) / count;
+        long segmentByteCapacity = (this.maxbytes + count - 1) / count;
+
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment(segmentCapacity, segmentByteCapacity);
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+
+    /**
+     * Store an entry in the cache using the default timeout of this cache.
+     */
+    @Override
+    public void put(String key, Object value) {
+        put(key, value, this.timeout);
+    }
+
+
+    /**
+     * Store an entry in the cache which expires after the given number of
+     * milliseconds, 0 or less means the entry never expires.
+     */
+    public void put(String key, Object value, long timeToLive) {
+
+        if (value == null) {
+            remove(key);
+            return;
+        }
+
+        long expires = (timeToLive > 0) ? System.currentTimeMillis() + timeToLive : 0;
+        long weight = weigh(value);
+
+        Segment segment = segmentFor(key);
+
+        if (segment.byteCapacity > 0 && weight > segment.byteCapacity) {
+            // too big to ever fit, don't let it flush the whole segment
+            log.debug("REJECTED ["+key+"] "+weight+" bytes");
+            segment.remove(key);
+            rejects.increment();
+            return;
+        }
+
+        Node node = new Node(value, expires, weight);
+        Node previous = segment.map.put(key, node);
+        segment.bytes.addAndGet(weight - (previous != null ? previous.weight : 0));
+        puts.increment();
+
+        if (segment.isOverCapacity()) {
+            segment.evict();
+        }
+    }
+
+
+    /**
+     * Retrieve an entry from the cache.
+     *
+     * If the entry has expired it is removed and we return null, just as if
+     * the entry wasn't found.
+     */
+    @Override
+    public Object get(String key) {
+
+        Segment segment = segmentFor(key);
+        Node node = segment.map.get(key);
+
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (node.hasExpired(System.currentTimeMillis())) {
+            log.debug("EXPIRED ["+key+"]");
+            if (segment.remove(key, node)) {
+                expirations.increment();
+            }
+            misses.increment();
+            return null;
+        }
+
+        node.lastAccess = System.nanoTime();
+        hits.increment();
+
+        return node.value;
+    }
+
+
+    @Override
+    public void remove(String key) {
+
+        segmentFor(key).remove(key);
+        removes.increment();
+    }
+
+
+    @Override
+    public void clear() {
+
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+
+        // clear metrics
+        hits.reset();
+        misses.reset();
+        puts.reset();
+        removes.reset();
+        evictions.reset();
+        expirations.reset();
+        evictedBytes.reset();
+        rejects.reset();
+        startTime = new Date();
+    }
+
+
+    /**
+     * Number of entries currently held, including any expired entries which
+     * have not been noticed yet.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.map.size();
+        }
+        return size;
+    }
+
+
+    /**
+     * Total weight in bytes of the entries currently held.
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes.get();
+        }
+        return bytes;
+    }
+
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        double hitCount = hits.sum();
+        double missCount = misses.sum();
+        double removeCount = removes.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("startTime", this.startTime);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("puts", (double) puts.sum());
+        stats.put("removes", removeCount);
+        stats.put("evictions", (double) evictions.sum());
+        stats.put("expirations", (double) expirations.sum());
+        stats.put("size", size());
+        stats.put("maxsize", this.maxsize);
+        stats.put("segments", this.segments.length);
+
+        if (this.maxbytes > 0) {
+            stats.put("bytes", getBytes());
+            stats.put("maxbytes", this.maxbytes);
+            stats.put("evictedBytes", evictedBytes.sum());
+            stats.put("rejects", (double) rejects.sum());
+            stats.put("largestEntries", getLargestEntries(LARGEST_ENTRIES));
+        }
+
+        // calculate efficiency
+        if((missCount - removeCount) > 0) {
+            double efficiency = hitCount / (missCount + hitCount);
+            stats.put("efficiency", efficiency * RollerConstants.PERCENT_100);
+        }
+
+        return stats;
+    }
+
+
+    /**
+     * List the biggest entries in the cache, largest first, as "key=bytes".
+     */
+    public List<String> getLargestEntries(int count) {
+
+        PriorityQueue<Map.Entry<String, Node>> largest =
+                new PriorityQueue<>(count + 1, (a, b) -> Long.compare(a.getValue().weight, b.getValue().weight));
+
+        for (Segment segment : segments) {
+            for (Map.Entry<String, Node> entry : segment.map.entrySet()) {
+                largest.offer(entry);
+                if (largest.size() > count) {
+                    largest.poll();
+                }
+            }
+        }
+
+        List<String> result = new ArrayList<>(largest.size());
+        while (!largest.isEmpty()) {
+            Map.Entry<String, Node> entry = largest.poll();
+            result.add(entry.getKey() + "=" + entry.getValue().weight);
+        }
+        Collections.reverse(result);
+
+        return result;
+    }
+
+
+    /**
+     * Determine the weight of a cached value, which is the size in bytes of
+     * the CachedContent it holds including any compressed variant, possibly
+     * wrapped in one of our cache entry classes.  Anything else weighs
+     * nothing and is only bound by maxsize.
+     */
+    protected long weigh(Object value) {
+
+        if (maxbytes <= 0) {
+            return 0;
+        }
+
+        Object content = value;
+        if (content instanceof LazyExpiringCacheEntry) {
+            content = ((LazyExpiringCacheEntry) content).getValue();
+        } else if (content instanceof ExpiringCacheEntry) {
+            content = ((ExpiringCacheEntry) content).getValue();
+        }
+
+        if (content instanceof CachedContent) {
+            CachedContent cachedContent = (CachedContent) content;
+            return (long) cachedContent.getContentLength() + cachedContent.getGzippedContentLength();
+        }
+
+        return 0;
+    }
+
+
+    private Segment segmentFor(String key) {
+        // use the high bits of a mixed hash so that we don't pick segments
+        // with the same low bits ConcurrentHashMap uses for its own buckets
+        int h = key.hashCode() * 0x9E3779B9;
+        return segments[segmentShift == 32 ? 0 : h >>> segmentShift];
+    }
+
+
+    private static final class Node {
+
+        private final Object value;
+        private final long expires;
+        private final long weight;
+        private volatile long lastAccess = System.nanoTime();
+
+        Node(Object value, long expires, long weight) {
+            this.value = value;
+            this.expires = expires;
+            this.weight = weight;
+        }
+
+        boolean hasExpired(long now) {
+            return expires > 0 && expires < now;
+        }
+    }
+
+
+    private final class Segment {
+
+        private final ConcurrentHashMap<String, Node> map;
+        private final ReentrantLock evictionLock = new ReentrantLock();
+        private final AtomicLong bytes = new AtomicLong();
+        private final int capacity;
+        private final long byteCapacity;
+
+        // where the last eviction stopped sampling, guarded by evictionLock
+        private Iterator<Map.Entry<String, Node>> cursor = null;
+
+        Segment(int capacity, long byteCapacity) {
+            this.capacity = capacity;
+            this.byteCapacity = byteCapacity;
+            this.map = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+        }
+
+        boolean isOverCapacity() {
+            return map.size() > capacity || (byteCapacity > 0 && bytes.get() > byteCapacity);
+        }
+
+        void remove(String key) {
+            Node removed = map.remove(key);
+            if (removed != null) {
+                bytes.addAndGet(-removed.weight);
+            }
+        }
+
+        boolean remove(String key, Node node) {
+            if (map.remove(key, node)) {
+                bytes.addAndGet(-node.weight);
+                return true;
+            }
+            return false;
+        }
+
+        void clear() {
+            for (Map.Entry<String, Node> entry : map.entrySet()) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        /**
+         * Bring the segment back under capacity.  Each round samples the
+         * next few entries after the cursor, drops those which expired and
+         * evicts the least recently read of the rest.
+         */
+        void evict() {
+
+            evictionLock.lock();
+            try {
+                long now = System.currentTimeMillis();
+                while (isOverCapacity() && !map.isEmpty()) {
+                    String oldestKey = null;
+                    Node oldest = null;
+
+                    for (int i = 0; i < EVICTION_SAMPLES; i++) {
+                        Map.Entry<String, Node> entry = nextSample();
+                        if (entry == null) {
+                            break;
+                        }
+                        Node node = entry.getValue();
+                        if (node.hasExpired(now)) {
+                            if (remove(entry.getKey(), node)) {
+                                expirations.increment();
+                            }
+                        } else if (oldest == null || node.lastAccess - oldest.lastAccess < 0) {
+                            oldestKey = entry.getKey();
+                            oldest = node;
+                        }
+                    }
+
+                    if (oldest != null && isOverCapacity() && remove(oldestKey, oldest)) {
+                        evictions.increment();
+                        evictedBytes.add(oldest.weight);
+                    }
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+
+        // the entry after the cursor, starting over at the end of the map
+        private Map.Entry<String, Node> nextSample() {
+            if (cursor == null || !cursor.hasNext()) {
+                cursor = map.entrySet().iterator();
+                if (!cursor.hasNext()) {
+                    return null;
+                }
+            }
+            return cursor.next();
+        }
+    }
+
+}
@@ -50,3 +50,43 @@
         <br>
     </s:if>
 </s:iterator>
+
+<h3><s:text name="cacheInfo.executors" /></h3>
+
+<s:iterator var="executor" value="executorStats">
+    <table class="table table-bordered">
+        <tr>
+            <th colspan="2"><s:property value="#executor.key"/></th>
+        </tr>
+
+        <s:iterator var="prop" value="#executor.value">
+            <tr>
+                <td><s:property value="#prop.key"/></td>
+                <td><s:property value="#prop.value"/></td>
+            </tr>
+        </s:iterator>
+    </table>
+
+    <br>
+</s:iterator>
+
+<s:if test="!rateLimiterStats.isEmpty()">
+    <h3><s:text name="cacheInfo.rateLimiters" /></h3>
+
+    <s:iterator var="limiter" value="rateLimiterStats">
+        <table class="table table-bordered">
+            <tr>
+                <th colspan="2"><s:property value="#limiter.key"/></th>
+            </tr>
+
+            <s:iterator var="prop" value="#limiter.value">
+                <tr>
+                    <td><s:property value="#prop.key"/></td>
+                    <td><s:property value="#prop.value"/></td>
+                </tr>
+            </s:iterator>
+        </table>
+
+        <br>
+    </s:iterator>
+</s:if>
@@ -29,6 +29,30 @@
     <s:if test="getBooleanProp('search.enabled')">
         <p><s:text name="maintenance.prompt.index" /></p>
         <s:submit value="%{getText('maintenance.button.index')}" action="maintenance!index" cssClass="btn" />
+
+        <s:if test="rebuildStatus != null">
+            <p class="pagetip">
+                <s:if test="rebuildStatus.running">
+                    <s:text name="maintenance.index.running">
+                        <s:param value="rebuildStatus.indexedEntries"/>
+                        <s:param value="rebuildStatus.totalEntries"/>
+                        <s:param value="rebuildStatus.percentComplete"/>
+                        <s:param value="rebuildStatus.entriesPerSecond.intValue()"/>
+                    </s:text>
+                </s:if>
+                <s:elseif test="rebuildStatus.state.name() == 'FAILED'">
+                    <s:text name="maintenance.index.failed">
+                        <s:param value="rebuildStatus.indexedEntries"/>
+                    </s:text>
+                </s:elseif>
+                <s:else>
+                    <s:text name="maintenance.index.completed">
+                        <s:param value="rebuildStatus.indexedEntries"/>
+                        <s:param value="rebuildStatus.entriesPerSecond.intValue()"/>
+                    </s:text>
+                </s:else>
+            </p>
+        </s:if>
     </s:if>
 
     <p><s:text name="maintenance.prompt.reset" /></p>
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the tallying and flushing of hits in the HitCountQueue.
+ */
+public class HitCountQueueTest {
+
+    @Test
+    public void testDrainHits() {
+        HitCountQueue queue = new HitCountQueue(null, false);
+
+        Weblog blog1 = weblog("blog1");
+        Weblog blog2 = weblog("blog2");
+
+        queue.processHit(blog1);
+        queue.processHit(blog1);
+        queue.processHit(blog2);
+        queue.processHit(null);
+
+        Map<String, Long> hits = queue.drainHits();
+        assertEquals(2, hits.size());
+        assertEquals(2L, (long) hits.get(blog1.getId()));
+        assertEquals(1L, (long) hits.get(blog2.getId()));
+
+        // draining starts counting over
+        assertTrue(queue.drainHits().isEmpty());
+        queue.processHit(blog2);
+        assertEquals(1L, (long) queue.drainHits().get(blog2.getId()));
+    }
+
+    @Test
+    public void testNoHitsLostWhileDraining() throws Exception {
+        final HitCountQueue queue = new HitCountQueue(null, false);
+        final Weblog weblog = weblog("busyblog");
+        long drained;
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    queue.processHit(weblog);
+                }
+            });
+        }
+        pool.shutdown();
+
+        // drain while hits are still coming in
+        drained = queue.drainHits().getOrDefault(weblog.getId(), 0L);
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        // hits which landed in the swapped out map are picked up next time
+        drained += queue.drainHits().getOrDefault(weblog.getId(), 0L);
+        assertEquals(40000L, drained);
+    }
+
+    @Test
+    public void testFlushFromManyNodes() throws Exception {
+        // every queue plays a cluster node, all sharing the same counts
+        final MemoryHitCountAggregator shared = new MemoryHitCountAggregator();
+        final Weblog weblog = weblog("clusteredblog");
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<HitCountQueue>> nodes = new ArrayList<>();
+        for (int n = 0; n < 4; n++) {
+            nodes.add(pool.submit(() -> {
+                HitCountQueue node = new HitCountQueue(shared, false);
+                for (int i = 0; i < 10000; i++) {
+                    node.processHit(weblog);
+                    if (i % 1000 == 0) {
+                        node.flush();
+                    }
+                }
+                return node;
+            }));
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        for (Future<HitCountQueue> node : nodes) {
+            node.get().flush();
+        }
+        assertEquals(40000L, shared.getHits(weblog.getId()));
+
+        shared.resetHits();
+        assertEquals(0L, shared.getHits(weblog.getId()));
+    }
+
+    @Test
+    public void testFailedFlushIsQueuedAgain() throws Exception {
+        MemoryHitCountAggregator shared = new MemoryHitCountAggregator();
+        HitCountQueue queue = new HitCountQueue(shared, false);
+        Weblog weblog = weblog("flakyblog");
+
+        queue.processHit(weblog);
+        queue.processHit(weblog);
+        shared.failNext(1);
+        assertThrows(WebloggerException.class, queue::flush);
+        assertEquals(0L, shared.getHits(weblog.getId()));
+
+        // the failed hits go out with the next flush
+        queue.processHit(weblog);
+        queue.flush();
+        assertEquals(3L, shared.getHits(weblog.getId()));
+    }
+
+    private static Weblog weblog(String handle) {
+        Weblog weblog = new Weblog();
+        weblog.setHandle(handle);
+        return weblog;
+    }
+
+}
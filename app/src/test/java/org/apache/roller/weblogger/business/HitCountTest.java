@@ -28,8 +28,10 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -199,6 +201,49 @@ public class HitCountTest  {
         assertNull(hitCount);
     }
     
+    @Test
+    public void testIncrementHitCounts() throws Exception {
+        
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        
+        testUser = TestUtils.getManagedUser(testUser);
+        Weblog blog1 = TestUtils.setupWeblog("hitCntIncTest1", testUser);
+        Weblog blog2 = TestUtils.setupWeblog("hitCntIncTest2", testUser);
+        Weblog blog3 = TestUtils.setupWeblog("hitCntIncTest3", testUser);
+        
+        WeblogHitCount cnt1 = TestUtils.setupHitCount(blog1, 10);
+        WeblogHitCount cnt2 = TestUtils.setupHitCount(blog2, 20);
+        
+        TestUtils.endSession(true);
+        
+        try {
+            // blog1 and blog3 get the same amount, blog3 has no count yet
+            Map<String, Long> amounts = new HashMap<>();
+            amounts.put(blog1.getId(), 5L);
+            amounts.put(blog2.getId(), 7L);
+            amounts.put(blog3.getId(), 5L);
+            mgr.incrementHitCounts(amounts);
+            TestUtils.endSession(true);
+            
+            // make sure all were incremented properly
+            assertEquals(15, mgr.getHitCount(cnt1.getId()).getDailyHits());
+            assertEquals(27, mgr.getHitCount(cnt2.getId()).getDailyHits());
+            blog3 = TestUtils.getManagedWebsite(blog3);
+            WeblogHitCount cnt3 = mgr.getHitCountByWeblog(blog3);
+            assertNotNull(cnt3);
+            assertEquals(5, cnt3.getDailyHits());
+            TestUtils.teardownHitCount(cnt3.getId());
+        
+        } finally {
+            // cleanup
+            TestUtils.teardownHitCount(cnt1.getId());
+            TestUtils.teardownHitCount(cnt2.getId());
+            TestUtils.teardownWeblog(blog1.getId());
+            TestUtils.teardownWeblog(blog2.getId());
+            TestUtils.teardownWeblog(blog3.getId());
+        }
+    }
+    
     @Test
     public void testResetHitCounts() throws Exception {
         WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
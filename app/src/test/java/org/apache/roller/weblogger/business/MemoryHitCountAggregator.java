@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.roller.weblogger.WebloggerException;
+
+
+/**
+ * HitCountAggregator keeping the shared counts in memory, standing in for
+ * the database shared by the nodes of a cluster.
+ */
+public class MemoryHitCountAggregator implements HitCountAggregator {
+    
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+    
+    // number of calls to addHits() still to fail
+    private final AtomicInteger failures = new AtomicInteger();
+    
+    
+    @Override
+    public void addHits(Map<String, Long> hits) throws WebloggerException {
+        if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            throw new WebloggerException("simulated failure");
+        }
+        for (Map.Entry<String, Long> hit : hits.entrySet()) {
+            counts.computeIfAbsent(hit.getKey(), id -> new AtomicLong()).addAndGet(hit.getValue());
+        }
+    }
+    
+    
+    @Override
+    public void resetHits() {
+        counts.values().forEach(count -> count.set(0));
+    }
+    
+    
+    public long getHits(String weblogId) {
+        AtomicLong count = counts.get(weblogId);
+        return count != null ? count.get() : 0;
+    }
+    
+    
+    public void failNext(int calls) {
+        failures.set(calls);
+    }
+    
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test ScheduledEntryQueue.
+ */
+public class ScheduledEntryQueueTest {
+
+    @Test
+    public void testTakeDue() {
+        ScheduledEntryQueue queue = new ScheduledEntryQueue();
+
+        queue.schedule("b", new Date(2000));
+        queue.schedule("a", new Date(1000));
+        queue.schedule("c", new Date(3000));
+        assertEquals(1000, queue.getNextDue());
+
+        // rescheduling moves the entry, removing drops it
+        queue.schedule("a", new Date(2500));
+        queue.remove("c");
+        assertEquals(2, queue.size());
+
+        assertTrue(queue.takeDue(1999).isEmpty());
+        assertEquals(List.of("b", "a"), queue.takeDue(2500));
+        assertEquals(0, queue.size());
+        assertEquals(Long.MAX_VALUE, queue.getNextDue());
+
+        queue.replaceAll(Map.of("d", new Date(4000)), queue.getChanges());
+        assertEquals(4000, queue.getNextDue());
+    }
+
+    @Test
+    public void testReplaceAllKeepsEntriesQueuedDuringRead() {
+        ScheduledEntryQueue queue = new ScheduledEntryQueue();
+        queue.schedule("old", new Date(1000));
+        queue.schedule("moved", new Date(2000));
+
+        // entries saved while the database is being read
+        long since = queue.getChanges();
+        queue.schedule("new", new Date(3000));
+        queue.schedule("moved", new Date(5000));
+
+        // the read saw neither, nor that "old" was published meanwhile
+        queue.replaceAll(Map.of("moved", new Date(2000), "other", new Date(4000)), since);
+        assertFalse(queue.isQueued("old"));
+        assertTrue(queue.isQueued("new"));
+        assertTrue(queue.isQueued("other"));
+        assertEquals(3, queue.size());
+        assertEquals(List.of("new", "other"), queue.takeDue(4999));
+        assertEquals(List.of("moved"), queue.takeDue(5000));
+
+        // and once read they are only kept as long as the database has them
+        queue.schedule("new", new Date(3000));
+        queue.replaceAll(Map.of(), queue.getChanges());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testWakesUpWhenDue() throws Exception {
+        ScheduledEntryQueue queue = new ScheduledEntryQueue();
+        CountDownLatch published = new CountDownLatch(1);
+        try {
+            queue.start(() -> {
+                if (!queue.takeDue(System.currentTimeMillis()).isEmpty()) {
+                    published.countDown();
+                }
+            });
+
+            // an earlier entry moves the wake up forward
+            queue.schedule("later", new Date(System.currentTimeMillis() + 60000));
+            queue.schedule("soon", new Date(System.currentTimeMillis() + 50));
+
+            assertTrue(published.await(10, TimeUnit.SECONDS));
+            assertEquals(1, queue.size());
+        } finally {
+            queue.stop();
+        }
+    }
+
+}
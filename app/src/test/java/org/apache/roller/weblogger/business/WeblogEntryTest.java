@@ -137,6 +137,54 @@ public class WeblogEntryTest  {
     }
     
     
+    /**
+     * Test that the scheduled entry queue follows committed changes only.
+     */
+    @Test
+    public void testScheduledEntryQueuedOnCommit() throws Exception {
+        
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        ScheduledEntryQueue queue = ScheduledEntryQueue.getInstance();
+        Timestamp tomorrow = new Timestamp(System.currentTimeMillis() + 86400000L);
+        
+        // a scheduled entry which is rolled back never gets queued
+        WeblogEntry rolledBack = newScheduledEntry("scheduledRollback", tomorrow);
+        mgr.saveWeblogEntry(rolledBack);
+        assertEquals(PubStatus.SCHEDULED, rolledBack.getStatus());
+        assertFalse(queue.isQueued(rolledBack.getId()));
+        TestUtils.endSession(false);
+        assertFalse(queue.isQueued(rolledBack.getId()));
+        
+        // a committed one is queued once committed
+        WeblogEntry committed = newScheduledEntry("scheduledCommit", tomorrow);
+        mgr.saveWeblogEntry(committed);
+        String id = committed.getId();
+        assertFalse(queue.isQueued(id));
+        TestUtils.endSession(true);
+        assertTrue(queue.isQueued(id));
+        
+        // and dropped once its removal is committed
+        mgr.removeWeblogEntry(mgr.getWeblogEntry(id));
+        assertTrue(queue.isQueued(id));
+        TestUtils.endSession(true);
+        assertFalse(queue.isQueued(id));
+    }
+    
+    private WeblogEntry newScheduledEntry(String anchor, Timestamp pubTime) throws Exception {
+        WeblogEntry entry = new WeblogEntry();
+        entry.setTitle(anchor);
+        entry.setText("blah blah entry");
+        entry.setAnchor(anchor);
+        entry.setStatus(PubStatus.PUBLISHED);
+        entry.setPubTime(pubTime);
+        entry.setUpdateTime(new Timestamp(System.currentTimeMillis()));
+        entry.setWebsite(TestUtils.getManagedWebsite(testWeblog));
+        entry.setCreatorUserName(testUser.getUserName());
+        entry.setCategory(entry.getWebsite().getWeblogCategory("General"));
+        return entry;
+    }
+    
+    
     /**
      * Test lookup mechanisms ... 
      */
@@ -245,6 +293,14 @@ public class WeblogEntryTest  {
         assertNotNull(entries);
         assertEquals(2, entries.size());
         
+        // get all published entries, paging by id
+        List<WeblogEntry> firstPage = mgr.getPublishedEntriesAfter(testWeblog, null, 2);
+        assertEquals(2, firstPage.size());
+        assertTrue(firstPage.get(0).getId().compareTo(firstPage.get(1).getId()) < 0);
+        entries = mgr.getPublishedEntriesAfter(testWeblog, firstPage.get(1).getId(), 2);
+        assertEquals(1, entries.size());
+        assertFalse(firstPage.contains(entries.get(0)));
+        
         // get all entries in category
         WeblogEntrySearchCriteria wesc5 = new WeblogEntrySearchCriteria();
         wesc5.setWeblog(testWeblog);
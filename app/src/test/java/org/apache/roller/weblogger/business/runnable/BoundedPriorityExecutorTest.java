@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.runnable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test BoundedPriorityExecutor.
+ */
+public class BoundedPriorityExecutorTest {
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        BoundedPriorityExecutor executor = new BoundedPriorityExecutor("test", 1, 10, 1000);
+        try {
+            CountDownLatch blocker = new CountDownLatch(1);
+            List<String> order = new CopyOnWriteArrayList<>();
+
+            // keep the only thread busy while the rest queues up
+            executor.submit(() -> await(blocker), TaskPriority.NORMAL);
+            executor.submit(() -> order.add("bulk"), TaskPriority.BULK);
+            executor.submit(() -> order.add("normal1"), TaskPriority.NORMAL);
+            executor.submit(() -> order.add("normal2"), TaskPriority.NORMAL);
+            Future<?> last = executor.submit(() -> order.add("interactive"), TaskPriority.INTERACTIVE);
+            assertEquals(4, executor.getQueueDepth());
+
+            blocker.countDown();
+            last.get(1, TimeUnit.MINUTES);
+            while (order.size() < 4) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of("interactive", "normal1", "normal2", "bulk"), order);
+        } finally {
+            executor.shutdown(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Test
+    public void testBackPressure() throws Exception {
+        BoundedPriorityExecutor executor = new BoundedPriorityExecutor("test", 1, 1, 200);
+        try {
+            CountDownLatch blocker = new CountDownLatch(1);
+            executor.submit(() -> await(blocker), TaskPriority.NORMAL);
+            executor.submit(() -> { }, TaskPriority.BULK);
+
+            // queue is full, so bulk work is turned away
+            assertThrows(RejectedExecutionException.class,
+                    () -> executor.submit(() -> { }, TaskPriority.BULK));
+
+            // interactive work runs right here
+            Thread caller = Thread.currentThread();
+            Thread[] ranOn = new Thread[1];
+            Future<?> task = executor.submit(() -> ranOn[0] = Thread.currentThread(), TaskPriority.INTERACTIVE);
+            assertTrue(task.isDone());
+            assertSame(caller, ranOn[0]);
+
+            // and so does normal work, once it waited for room in vain
+            ranOn[0] = null;
+            long start = System.nanoTime();
+            task = executor.submit(() -> ranOn[0] = Thread.currentThread(), TaskPriority.NORMAL);
+            assertTrue(task.isDone());
+            assertSame(caller, ranOn[0]);
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+
+            // until there is room again
+            blocker.countDown();
+            CompletableFuture<Thread> normalRanOn = new CompletableFuture<>();
+            while (executor.getQueueDepth() > 0) {
+                Thread.sleep(10);
+            }
+            executor.submit(() -> normalRanOn.complete(Thread.currentThread()), TaskPriority.NORMAL);
+            assertNotSame(caller, normalRanOn.get(1, TimeUnit.MINUTES));
+
+            Map<String, Object> stats = executor.getStats();
+            assertEquals(6L, stats.get("submitted"));
+            assertEquals(2L, stats.get("callerRuns"));
+            assertEquals(1L, stats.get("rejected"));
+        } finally {
+            executor.shutdown(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Test
+    public void testOfferNeverBlocks() throws Exception {
+        BoundedPriorityExecutor executor = new BoundedPriorityExecutor("test", 1, 1, 60000);
+        try {
+            CountDownLatch blocker = new CountDownLatch(1);
+            CountDownLatch running = new CountDownLatch(1);
+            executor.offer(() -> {
+                running.countDown();
+                await(blocker);
+            }, TaskPriority.NORMAL);
+            running.await(1, TimeUnit.MINUTES);
+            executor.offer(() -> { }, TaskPriority.NORMAL);
+
+            // the queue is full, turned away at once despite the long timeout
+            long start = System.nanoTime();
+            assertThrows(RejectedExecutionException.class,
+                    () -> executor.offer(() -> { }, TaskPriority.INTERACTIVE));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+            assertEquals(1L, executor.getStats().get("rejected"));
+            blocker.countDown();
+        } finally {
+            executor.shutdown(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Test
+    public void testPoolThread() throws Exception {
+        BoundedPriorityExecutor executor = new BoundedPriorityExecutor("test", 1, 10, 1000);
+        try {
+            assertFalse(executor.isPoolThread());
+            CompletableFuture<Boolean> onPool = new CompletableFuture<>();
+            executor.submit(() -> onPool.complete(executor.isPoolThread()), TaskPriority.NORMAL);
+            assertTrue(onPool.get(1, TimeUnit.MINUTES));
+        } finally {
+            executor.shutdown(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Test
+    public void testShutdownCancelsQueued() throws Exception {
+        BoundedPriorityExecutor executor = new BoundedPriorityExecutor("test", 1, 10, 1000);
+        CountDownLatch blocker = new CountDownLatch(1);
+        executor.submit(() -> await(blocker), TaskPriority.NORMAL);
+        Future<?> queued = executor.submit(() -> { }, TaskPriority.NORMAL);
+
+        executor.shutdown(1, TimeUnit.MINUTES);
+        assertTrue(queued.isCancelled());
+        assertThrows(CancellationException.class, queued::get);
+    }
+
+    @Test
+    public void testFailureCounted() throws Exception {
+        BoundedPriorityExecutor executor = new BoundedPriorityExecutor("test", 1, 10, 1000);
+        try {
+            Future<?> task = executor.submit(() -> {
+                throw new IllegalStateException("expected");
+            }, TaskPriority.NORMAL);
+            assertThrows(Exception.class, () -> task.get(1, TimeUnit.MINUTES));
+            assertEquals(1L, executor.getStats().get("failed"));
+        } finally {
+            executor.shutdown(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.runnable;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test CronExpression and TaskSchedule.
+ */
+public class TaskScheduleTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    @Test
+    public void testCronNext() {
+        ZonedDateTime start = ZonedDateTime.of(2024, 1, 31, 10, 15, 30, 0, UTC);
+
+        // daily at 3am
+        assertEquals(at(2024, 2, 1, 3, 0, 0), CronExpression.parse("0 3 * * *").next(start));
+
+        // every fifteen seconds
+        assertEquals(at(2024, 1, 31, 10, 15, 45),
+                CronExpression.parse("*/15 * * * * *").next(start));
+
+        // weekdays at nine, the 31st is a Wednesday
+        assertEquals(at(2024, 2, 1, 9, 0, 0), CronExpression.parse("0 9 * * MON-FRI").next(start));
+        assertEquals(at(2024, 2, 5, 9, 0, 0),
+                CronExpression.parse("0 9 * * mon").next(at(2024, 2, 1, 9, 0, 0)));
+
+        // Sunday as 7, Feb 4th 2024 is one
+        assertEquals(at(2024, 2, 4, 0, 0, 0), CronExpression.parse("0 0 * * 7").next(start));
+
+        // leap day
+        assertEquals(at(2024, 2, 29, 12, 0, 0), CronExpression.parse("0 12 29 FEB *").next(start));
+
+        // lists and steps starting from a value
+        assertEquals(at(2024, 1, 31, 10, 20, 0), CronExpression.parse("5/15,50 * * * *").next(start));
+    }
+
+    @Test
+    public void testCronInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("61 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 0 * FOO *"));
+        assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 10-5 * * *"));
+
+        // never matches
+        assertNull(CronExpression.parse("0 0 30 2 *").next(at(2024, 1, 1, 0, 0, 0)));
+    }
+
+    @Test
+    public void testIntervalCatchUp() {
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        long lastDue = millis(at(2024, 1, 31, 10, 0, 0));
+
+        TaskSchedule once = new TaskSchedule(null, 10 * minute, "immediate", 0,
+                TaskSchedule.CatchUp.ONCE, UTC);
+        TaskSchedule skip = new TaskSchedule(null, 10 * minute, "immediate", 0,
+                TaskSchedule.CatchUp.SKIP, UTC);
+
+        // on time
+        assertEquals(lastDue + 10 * minute, once.nextRun(lastDue, lastDue + minute));
+
+        // a little late still runs
+        assertEquals(lastDue + 11 * minute, skip.nextRun(lastDue, lastDue + 11 * minute));
+
+        // missed runs are caught up now or skipped to the next one due
+        assertEquals(lastDue + 35 * minute, once.nextRun(lastDue, lastDue + 35 * minute));
+        assertEquals(lastDue + 40 * minute, skip.nextRun(lastDue, lastDue + 35 * minute));
+    }
+
+    @Test
+    public void testCronSchedule() {
+        TaskSchedule hourly = new TaskSchedule(CronExpression.parse("0 * * * *"), 0, "immediate",
+                0, TaskSchedule.CatchUp.SKIP, UTC);
+
+        long lastDue = millis(at(2024, 1, 31, 10, 0, 0));
+        assertEquals(millis(at(2024, 1, 31, 11, 0, 0)), hourly.nextRun(lastDue));
+        assertEquals(millis(at(2024, 1, 31, 14, 0, 0)),
+                hourly.nextRun(lastDue, millis(at(2024, 1, 31, 13, 30, 0))));
+        assertEquals(0, hourly.getJitter());
+    }
+
+    private static ZonedDateTime at(int year, int month, int day, int hour, int minute, int second) {
+        return ZonedDateTime.of(year, month, day, hour, minute, second, 0, UTC);
+    }
+
+    private static long millis(ZonedDateTime time) {
+        return time.toInstant().toEpochMilli();
+    }
+
+}
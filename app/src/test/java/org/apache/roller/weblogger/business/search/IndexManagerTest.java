@@ -30,6 +30,7 @@ import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
 import org.instancio.Instancio;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -37,6 +38,10 @@ import org.junit.jupiter.api.Test;
 
 import static org.apache.roller.weblogger.ui.rendering.model.SearchResultsModel.RESULTS_PER_PAGE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test Search Manager business layer operations.
@@ -92,11 +97,49 @@ public class IndexManagerTest {
                 WebloggerFactory.getWeblogger().getUrlStrategy());
             assertEquals(2, result.getResults().size());
 
+            // facets count the hits of the search
+            assertEquals(2, result.getFacets().get("weblog").get(testWeblog.getHandle()));
+            assertEquals(2, result.getFacets().get("category").get("General"));
+
             result = indexManager.search("Tholian",
                 testWeblog.getHandle(), null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE,
                 WebloggerFactory.getWeblogger().getUrlStrategy());
             assertEquals(1, result.getResults().size());
 
+            // a page of one by relevance, with the hits highlighted
+            SearchCriteria criteria = new SearchCriteria();
+            criteria.setTerm("Enterprise");
+            criteria.setWeblogHandle(testWeblog.getHandle());
+            criteria.setLocale(testWeblog.getLocale());
+            criteria.setEntryCount(1);
+            criteria.setSortBy(SearchCriteria.SortBy.RELEVANCE);
+            result = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(1, result.getResults().size());
+            assertNotNull(result.getNextCursor());
+            String first = result.getResults().get(0).getId();
+            assertTrue(result.getSnippets().get(first).contains("<b>Enterprise</b>"));
+
+            // the cursor continues with the other hit
+            criteria.setCursor(result.getNextCursor());
+            result = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(1, result.getResults().size());
+            assertNotEquals(first, result.getResults().get(0).getId());
+            assertNull(result.getNextCursor());
+
+            // newest first, and the cursor still holds once the first hit
+            // is indexed again under another document number
+            criteria.setCursor(null);
+            criteria.setSortBy(SearchCriteria.SortBy.PUBLICATION_TIME);
+            result = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(entries.get(1).getId(), result.getResults().get(0).getId());
+
+            indexManager.addEntryReIndexOperation(TestUtils.getManagedWeblogEntry(entries.get(1)));
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+            criteria.setCursor(result.getNextCursor());
+            result = indexManager.search(criteria, WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(1, result.getResults().size());
+            assertEquals(entries.get(0).getId(), result.getResults().get(0).getId());
+
         } finally {
             for (WeblogEntry entry : entries) {
                 indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
@@ -105,6 +148,44 @@ public class IndexManagerTest {
         }
     }
 
+    @Test
+    public void testRebuildIndex() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            indexManager.rebuildWeblogIndex();
+
+            // wait for the rebuild running in the background
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+            IndexRebuildStatus status = indexManager.getRebuildStatus();
+            for (int i = 0; i < 30 && status.isRunning(); i++) {
+                Thread.sleep(RollerConstants.SEC_IN_MS);
+            }
+            assertEquals(IndexRebuildStatus.State.COMPLETED, status.getState());
+            assertTrue(status.getIndexedEntries() >= entries.size());
+
+            // wait for the swapped in index to be searchable
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+            SearchResultList result = indexManager.search("Enterprise",
+                testWeblog.getHandle(), null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE,
+                WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(2, result.getResults().size());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+
+            // the rebuild committed the entries, wait for the removal to be
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+        }
+    }
+
     /**
      * Create some weblog entries, two with some Star Trek content
      */
@@ -146,6 +227,13 @@ public class IndexManagerTest {
 
             entry.setLocale(testWeblog.getLocale());
 
+            // only published entries are indexed by a rebuild, and one
+            // published in the future would only be scheduled
+            entry.setStatus(PubStatus.PUBLISHED);
+            if (entry.getPubTime().getTime() > System.currentTimeMillis()) {
+                entry.setPubTime(new Timestamp(System.currentTimeMillis()));
+            }
+
             entryManager.saveWeblogEntry(entry);
             TestUtils.endSession(true);
 
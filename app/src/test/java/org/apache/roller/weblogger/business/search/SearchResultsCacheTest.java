@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search;
+
+import java.util.Map;
+import org.apache.roller.weblogger.business.search.SearchResultsCache.CachedHits;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test SearchResultsCache.
+ */
+public class SearchResultsCacheTest {
+
+    @Test
+    public void testGenerateKey() {
+        String key = SearchResultsCache.generateKey(criteria("Star  Trek ", "blog", "General", "en_US", 0));
+
+        assertEquals(key, SearchResultsCache.generateKey(criteria("Star Trek", "blog", "general", "en_us", 0)));
+        assertNotEquals(key, SearchResultsCache.generateKey(criteria("Star Trek", "blog", "general", "en_us", 1)));
+        assertNotEquals(key, SearchResultsCache.generateKey(criteria("Star Trek", null, "general", "en_us", 0)));
+        assertNotEquals(key, SearchResultsCache.generateKey(criteria("Star AND Trek", "blog", "general", "en_us", 0)));
+
+        SearchCriteria byRelevance = criteria("Star Trek", "blog", "general", "en_us", 0);
+        byRelevance.setSortBy(SearchCriteria.SortBy.RELEVANCE);
+        assertNotEquals(key, SearchResultsCache.generateKey(byRelevance));
+
+        SearchCriteria withCursor = criteria("Star Trek", "blog", "general", "en_us", 0);
+        withCursor.setCursor("d12.MjAyNA");
+        assertNotEquals(key, SearchResultsCache.generateKey(withCursor));
+    }
+
+    @Test
+    public void testGeneration() {
+        SearchResultsCache cache = SearchResultsCache.getInstance();
+        String key = SearchResultsCache.generateKey(criteria("enterprise", "blog", null, null, 0));
+
+        cache.put(key, new CachedHits(1, new int[] {3, 4}, 0, Map.of()));
+        CachedHits hits = cache.get(key, 1);
+        assertNotNull(hits);
+        assertArrayEquals(new int[] {3, 4}, hits.getHits());
+        assertEquals(2, hits.getLimit());
+
+        // hits of an older generation of the index are dropped
+        assertNull(cache.get(key, 2));
+        assertNull(cache.get(key, 1));
+
+        cache.put(key, new CachedHits(2, new int[] {5}, 0, Map.of()));
+        cache.clear();
+        assertNull(cache.get(key, 2));
+    }
+
+    private static SearchCriteria criteria(String term, String handle,
+            String category, String locale, int pageNum) {
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTerm(term);
+        criteria.setWeblogHandle(handle);
+        criteria.setCategory(category);
+        criteria.setLocale(locale);
+        criteria.setPageNum(pageNum);
+        criteria.setEntryCount(10);
+        return criteria;
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test listing search hits from the fields stored in the index.
+ */
+public class StoredEntryTest {
+
+    @Test
+    public void testStoredEntry() throws Exception {
+
+        Weblog weblog = new Weblog();
+        weblog.setHandle("storedweblog");
+        weblog.setLocale("en_US");
+        WeblogCategory general = new WeblogCategory();
+        general.setName("General");
+        WeblogCategory other = new WeblogCategory();
+        other.setName("Other");
+        weblog.setWeblogCategories(List.of(general, other));
+
+        // as IndexOperation stores them
+        Document doc = new Document();
+        doc.add(new StoredField(FieldConstants.ID, "entryid"));
+        doc.add(new StoredField(FieldConstants.WEBSITE_HANDLE, "storedweblog"));
+        doc.add(new StoredField(FieldConstants.TITLE, "The Tholian Web"));
+        doc.add(new StoredField(FieldConstants.SUMMARY, "Spock reports strange sensor readings"));
+        doc.add(new StoredField(FieldConstants.ANCHOR, "the_tholian_web"));
+        doc.add(new StoredField(FieldConstants.PUBLISHED, "2026-10-18 12:00:00.0"));
+        doc.add(new StoredField(FieldConstants.UPDATED, "2026-10-18 13:00:00.0"));
+        doc.add(new StoredField(FieldConstants.CATEGORY, "general"));
+        doc.add(new StoredField(FieldConstants.LOCALE, "en_us"));
+
+        Map<String, Weblog> weblogs = new HashMap<>();
+        weblogs.put("storedweblog", weblog);
+        WeblogEntry entry = LuceneIndexManager.getStoredEntry(doc, weblogs);
+        assertNotNull(entry);
+
+        // everything a search result lists comes without loading the entry
+        WeblogEntryWrapper wrapper = WeblogEntryWrapper.wrap(entry, () -> {
+            throw new AssertionError("entry should not be loaded");
+        }, null);
+        assertEquals("entryid", wrapper.getId());
+        assertEquals("The Tholian Web", wrapper.getTitle());
+        assertEquals("Spock reports strange sensor readings", wrapper.getSummary());
+        assertEquals("the_tholian_web", wrapper.getAnchor());
+        assertEquals("General", wrapper.getCategory().getName());
+        assertEquals("en_US", wrapper.getLocale());
+    }
+
+    @Test
+    public void testMissingStoredFields() throws Exception {
+
+        Weblog weblog = new Weblog();
+        weblog.setHandle("storedweblog");
+        Map<String, Weblog> weblogs = new HashMap<>();
+        weblogs.put("storedweblog", weblog);
+
+        // indexed before the fields to list it were stored
+        Document doc = new Document();
+        doc.add(new StoredField(FieldConstants.ID, "entryid"));
+        doc.add(new StoredField(FieldConstants.WEBSITE_HANDLE, "storedweblog"));
+        assertNull(LuceneIndexManager.getStoredEntry(doc, weblogs));
+
+        // a category the weblog no longer has is loaded with the entry
+        doc.add(new StoredField(FieldConstants.ANCHOR, "the_tholian_web"));
+        doc.add(new StoredField(FieldConstants.PUBLISHED, "2026-10-18 12:00:00.0"));
+        doc.add(new StoredField(FieldConstants.CATEGORY, "general"));
+        weblog.setWeblogCategories(List.of());
+        WeblogEntry entry = LuceneIndexManager.getStoredEntry(doc, weblogs);
+        assertNotNull(entry);
+        assertNull(entry.getCategory());
+    }
+}
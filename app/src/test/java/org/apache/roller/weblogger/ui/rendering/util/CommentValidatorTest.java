@@ -18,12 +18,15 @@
 
 package org.apache.roller.weblogger.ui.rendering.util;
 
+import java.util.concurrent.CompletableFuture;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.TestUtils;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.ui.rendering.plugins.comments.CommentValidationManager;
+import org.apache.roller.weblogger.ui.rendering.plugins.comments.CommentValidator;
 import org.apache.roller.weblogger.util.RollerMessages;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -118,6 +121,25 @@ public class CommentValidatorTest  {
         assertTrue(mgr.validateComment(comment, msgs) != 100);
     }
     
+    @Test
+    public void testRemoteCommentValidators() {
+        RollerMessages msgs = new RollerMessages();
+        WeblogEntryComment comment = createEmptyComment();
+        mgr.addCommentValidator(new RemoteValidator(RollerConstants.PERCENT_100));
+        mgr.addCommentValidator(new RemoteValidator(0));
+
+        // the remote validators are only asked once the local ones pass
+        comment.setContent("blah blah viagra.com blah");
+        CompletableFuture<Integer> validation = mgr.validateCommentAsync(comment, msgs);
+        assertTrue(validation.isDone());
+        assertTrue(validation.join() != 100);
+
+        comment.setContent("nice friendly stuff");
+        msgs = new RollerMessages();
+        assertTrue(mgr.validateComment(comment, msgs) != 100);
+        assertEquals(1, msgs.getErrorCount());
+    }
+    
 // To run this test add the Akismet validator to comment.validator.classnames
 // and put your Akismet key in comment.validator.akismet.apikey
 //
@@ -140,4 +162,34 @@ public class CommentValidatorTest  {
         comment.setWeblogEntry(entry);
         return comment;
     }
+
+    /**
+     * Stands in for a validator asking another server.
+     */
+    private static class RemoteValidator implements CommentValidator {
+
+        private final int score;
+
+        RemoteValidator(int score) {
+            this.score = score;
+        }
+
+        @Override
+        public String getName() {
+            return "Remote " + score;
+        }
+
+        @Override
+        public int validate(WeblogEntryComment comment, RollerMessages messages) {
+            if (score < 100) {
+                messages.addError("comment.validator.akismetMessage");
+            }
+            return score;
+        }
+
+        @Override
+        public boolean isRemote() {
+            return true;
+        }
+    }
 }
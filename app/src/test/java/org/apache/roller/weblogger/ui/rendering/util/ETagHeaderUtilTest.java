@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test ETagHeaderUtil.
+ */
+public class ETagHeaderUtilTest {
+
+    @Test
+    public void testGenerateResourceETag() {
+        String eTag = ETagHeaderUtil.generateResourceETag(1000, 255, null);
+        assertEquals("\"3e8-ff\"", eTag);
+
+        String thumb = ETagHeaderUtil.generateResourceETag(1000, 255, "thumb");
+        assertEquals("\"3e8-ff-thumb\"", thumb);
+
+        assertNotEquals(eTag, ETagHeaderUtil.generateResourceETag(1001, 255, null));
+        assertNotEquals(eTag, ETagHeaderUtil.generateResourceETag(1000, 256, null));
+    }
+
+    @Test
+    public void testMatches() {
+        String eTag = "\"abc\"";
+
+        assertTrue(ETagHeaderUtil.matches("\"abc\"", eTag));
+        assertTrue(ETagHeaderUtil.matches("W/\"abc\"", eTag));
+        assertTrue(ETagHeaderUtil.matches("\"xyz\", \"abc\"", eTag));
+        assertTrue(ETagHeaderUtil.matches("*", eTag));
+
+        assertFalse(ETagHeaderUtil.matches(null, eTag));
+        assertFalse(ETagHeaderUtil.matches("\"abcd\"", eTag));
+        assertFalse(ETagHeaderUtil.matches("abc", eTag));
+        assertFalse(ETagHeaderUtil.matches("\"abc\"", null));
+    }
+
+    @Test
+    public void testStaleETagOverridesCurrentModifiedSince() {
+        long lastModified = 1000000000000L;
+        String eTag = ETagHeaderUtil.generateResourceETag(lastModified, 255, null);
+
+        // the date alone says the client is up to date
+        HttpServletRequest request = conditionalRequest(null, lastModified);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        assertTrue(ETagHeaderUtil.respondIfNotModified(request, response, lastModified, null));
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+        // but not when it also sends an ETag which no longer matches
+        request = conditionalRequest("\"old\"", lastModified);
+        response = mock(HttpServletResponse.class);
+        assertFalse(ETagHeaderUtil.respondIfNoneMatch(request, response, eTag));
+        assertFalse(ETagHeaderUtil.respondIfNotModified(request, response, lastModified, null));
+        verify(response, never()).setStatus(anyInt());
+    }
+
+    private static HttpServletRequest conditionalRequest(String ifNoneMatch, long ifModifiedSince) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getRequestURL()).thenReturn(new StringBuffer("http://localhost/roller/"));
+        when(request.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(ifModifiedSince);
+        return request;
+    }
+
+}
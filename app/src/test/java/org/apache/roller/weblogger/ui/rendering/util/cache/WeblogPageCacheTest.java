@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test render coalescing in the WeblogPageCache.
+ */
+public class WeblogPageCacheTest {
+
+    @Test
+    public void testSingleRenderer() throws Exception {
+        WeblogPageCache cache = WeblogPageCache.getInstance();
+        String key = "test:singleRenderer";
+
+        assertTrue(cache.beginRender(key));
+        assertTrue(cache.isRendering(key));
+        assertFalse(cache.beginRender(key));
+
+        // a second request waits for the first one to finish rendering
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            long lastModified = System.currentTimeMillis() - 1000;
+            Future<Object> waiter = pool.submit(() -> cache.awaitRender(key, lastModified));
+
+            CachedContent content = new CachedContent(16);
+            content.getCachedWriter().write("rendered");
+            content.close();
+            cache.put(key, content);
+            cache.endRender(key);
+
+            assertSame(content, waiter.get(1, TimeUnit.MINUTES));
+            assertFalse(cache.isRendering(key));
+            assertTrue(cache.beginRender(key));
+        } finally {
+            cache.endRender(key);
+            cache.remove(key);
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedRender() {
+        WeblogPageCache cache = WeblogPageCache.getInstance();
+        String key = "test:failedRender";
+
+        // nothing gets cached, waiters just come back empty handed
+        assertTrue(cache.beginRender(key));
+        cache.endRender(key);
+        assertNull(cache.awaitRender(key, System.currentTimeMillis()));
+
+        // stale content is only handed out when enabled, which it is not by default
+        assertNull(cache.getStale(key));
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test matching of compiled bannedwordslist rules.
+ */
+public class BannedwordsMatcherTest {
+
+    @Test
+    public void testStringRulesMatchWholeWords() {
+        BannedwordsMatcher matcher = BannedwordsMatcher.compile(
+                Arrays.asList("casino", "cheap pills", "pills", "sale.com"),
+                Collections.emptyList());
+
+        assertEquals("Casino", matcher.findMatch("Visit our Casino today"));
+        assertEquals("cheap pills", matcher.findMatch("buy cheap pills!"));
+        assertEquals("sale.com", matcher.findMatch("see www.sale.com/now"));
+        assertEquals("pills", matcher.findMatch("buy cheap_pills or pills"));
+
+        // parts of words don't count
+        assertFalse(matcher.matches("occasional casinos"));
+        assertFalse(matcher.matches("salexcom"));
+        assertFalse(matcher.matches(""));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void testOverlappingRules() {
+        BannedwordsMatcher matcher = BannedwordsMatcher.compile(
+                Arrays.asList("she", "he", "hers", "his"), Collections.emptyList());
+
+        // "he" and "she" end inside a word, "hers" at its end
+        assertEquals("hers", matcher.findMatch("ushers hers"));
+        assertEquals("he", matcher.findMatch("ushe he"));
+        assertNull(matcher.findMatch("ushers"));
+    }
+
+    @Test
+    public void testRegexRules() {
+        List<String> stringRules = Arrays.asList("buy\\w*", "[unbalanced");
+        List<Pattern> regexRules = Arrays.asList(
+                Pattern.compile("(diet|enlargement)"),
+                Pattern.compile("(\\w)\\1{5}"));
+        BannedwordsMatcher matcher = BannedwordsMatcher.compile(stringRules, regexRules);
+
+        assertTrue(matcher.matches("BuyNow"));
+        assertFalse(matcher.matches("rebuy"));
+        assertTrue(matcher.matches("x[unbalancedx"));
+        assertTrue(matcher.matches("diet-enlargement.com"));
+        assertTrue(matcher.matches("aaaaaaah"));
+        assertFalse(matcher.matches("four score and seven years ago"));
+        assertEquals(4, matcher.getRuleCount());
+    }
+
+    @Test
+    public void testRulesReusingGroupNames() {
+        // each compiles alone, but not joined into one pattern
+        BannedwordsMatcher matcher = BannedwordsMatcher.compile(
+                Arrays.asList("(?<w>pill)s", "(?<w>cheap)\\w+"),
+                Collections.singletonList(Pattern.compile("(?<w>viagra)")));
+
+        assertEquals("pills", matcher.findMatch("buy pills"));
+        assertEquals("cheapest", matcher.findMatch("the cheapest"));
+        assertTrue(matcher.matches("discount viagra"));
+        assertFalse(matcher.matches("four score and seven years ago"));
+    }
+
+}
@@ -25,6 +25,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -79,5 +81,15 @@ public class BannedwordslistTest  {
         assertTrue(bannedwordslist.isBannedwordslisted("viagra.com"));
     }
     
+    // test the built-in rules together with a weblog's compiled rules
+    @Test
+    public void testIsBannedwordslistedWithMatcher() {
+        BannedwordsMatcher weblogRules = BannedwordsMatcher.compile(
+                List.of("score"), Collections.emptyList());
+        assertTrue(bannedwordslist.isBannedwordslisted("four score and seven", weblogRules));
+        assertTrue(bannedwordslist.isBannedwordslisted("viagra.com", weblogRules));
+        assertFalse(bannedwordslist.isBannedwordslisted("four scores", weblogRules));
+    }
+    
 
 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test lookups of banned addresses and blocks.
+ */
+public class IPBanIndexTest {
+
+    @Test
+    public void testIPv4() {
+        IPBanIndex index = IPBanIndex.build(Arrays.asList(
+                "# spammers", "", "10.0.0.1", "192.168.0.0/16", "172.16.4.0/22"));
+
+        assertTrue(index.contains("10.0.0.1"));
+        assertFalse(index.contains("10.0.0.2"));
+        assertTrue(index.contains("192.168.0.0"));
+        assertTrue(index.contains("192.168.255.255"));
+        assertFalse(index.contains("192.169.0.0"));
+        assertTrue(index.contains("172.16.7.1"));
+        assertFalse(index.contains("172.16.8.1"));
+        assertFalse(index.contains("not an address"));
+        assertFalse(index.contains(null));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testIPv6() {
+        IPBanIndex index = IPBanIndex.build(Arrays.asList(
+                "2001:db8::/32", "fe80::1", "::ffff:1.2.3.4", "::/0x"));
+
+        assertTrue(index.contains("2001:db8:ffff::1"));
+        assertTrue(index.contains("[2001:0db8::]"));
+        assertFalse(index.contains("2001:db9::"));
+        assertTrue(index.contains("fe80::1%eth0"));
+        assertFalse(index.contains("fe80::2"));
+
+        // mapped addresses are the same as IPv4 ones
+        assertTrue(index.contains("1.2.3.4"));
+
+        // and entries which aren't addresses are compared as they are
+        assertTrue(index.contains("::/0x"));
+    }
+
+    @Test
+    public void testMerge() {
+        IPBanIndex index = IPBanIndex.build(Arrays.asList(
+                "10.0.0.0/24", "10.0.1.0/24", "10.0.0.128/25", "10.0.3.0/24"));
+        assertEquals(2, index.getRangeCount());
+        assertTrue(index.contains("10.0.1.255"));
+        assertFalse(index.contains("10.0.2.0"));
+
+        index = index.with("10.0.2.0/24");
+        assertEquals(1, index.getRangeCount());
+        assertTrue(index.contains("10.0.2.0"));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void testParseIPv4() {
+        assertEquals(0x0a000001L, IPBanIndex.parseIPv4("10.0.0.1"));
+        assertEquals(0xffffffffL, IPBanIndex.parseIPv4("255.255.255.255"));
+        assertEquals(-1, IPBanIndex.parseIPv4("256.0.0.1"));
+        assertEquals(-1, IPBanIndex.parseIPv4("1.2.3"));
+        assertEquals(-1, IPBanIndex.parseIPv4("1.2.3.4.5"));
+        assertEquals(-1, IPBanIndex.parseIPv4("1..3.4"));
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test rate limiting of clients.
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void testThreshold() {
+        RateLimiter limiter = new RateLimiter("test", 3, 1000, 100);
+        long now = 10000;
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(limiter.processHit("client", now + i));
+        }
+        assertFalse(limiter.isAbusive("client", now + 3));
+        assertTrue(limiter.processHit("client", now + 3));
+        assertTrue(limiter.isAbusive("client", now + 4));
+
+        // other clients are counted apart
+        assertFalse(limiter.processHit("other", now + 4));
+        assertFalse(limiter.processHit(null, now + 4));
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        RateLimiter limiter = new RateLimiter("test", 4, 1000, 100);
+
+        // four hits at the end of one window
+        for (int i = 0; i < 4; i++) {
+            assertFalse(limiter.processHit("client", 10900));
+        }
+
+        // still count at the start of the next, unlike a fixed window
+        assertTrue(limiter.processHit("client", 11100));
+
+        // but less and less as it slides on
+        assertFalse(limiter.processHit("client", 11900));
+
+        // and not at all a window later
+        assertFalse(limiter.isAbusive("client", 13000));
+    }
+
+    @Test
+    public void testEviction() {
+        RateLimiter limiter = new RateLimiter("test", 1, 1000, 16);
+        for (int i = 0; i < 1000; i++) {
+            limiter.processHit("client" + i, 10000);
+        }
+        int clients = (Integer) limiter.getStats().get("clients");
+        assertTrue(clients <= 16);
+        assertEquals(1000L, limiter.getStats().get("hits"));
+        assertTrue((Long) limiter.getStats().get("evictions") >= 1000 - 16);
+    }
+
+}
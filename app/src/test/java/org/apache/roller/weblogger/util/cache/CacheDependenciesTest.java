@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test CacheDependencies.
+ */
+public class CacheDependenciesTest {
+
+    @Test
+    public void testRecording() throws Exception {
+
+        // nothing is recorded outside of start() and stop()
+        CacheDependencies.record(CacheDependencies.entry("ignored"));
+
+        CacheDependencies deps = CacheDependencies.start(42);
+        try {
+            CacheDependencies.record(CacheDependencies.entry("entry1"));
+            CacheDependencies.record(CacheDependencies.comments("entry1"));
+            CacheDependencies.record(CacheDependencies.entry("entry1"));
+
+            // other threads don't record into our dependencies
+            Thread other = new Thread(() -> CacheDependencies.record(CacheDependencies.entry("other")));
+            other.start();
+            other.join();
+        } finally {
+            CacheDependencies.stop();
+        }
+        CacheDependencies.record(CacheDependencies.entry("ignored"));
+
+        Set<String> recorded = deps.getDependencies();
+        assertEquals(2, recorded.size());
+        assertTrue(recorded.contains(CacheDependencies.entry("entry1")));
+        assertTrue(recorded.contains(CacheDependencies.comments("entry1")));
+        assertEquals(42, deps.getGeneration());
+    }
+
+    @Test
+    public void testSiteWideDependencies() {
+        assertNotEquals(CacheDependencies.entry("x"), CacheDependencies.comments("x"));
+        assertEquals("entries:*", CacheDependencies.entries(null));
+        assertEquals("weblogComments:*", CacheDependencies.weblogComments(null));
+    }
+
+}
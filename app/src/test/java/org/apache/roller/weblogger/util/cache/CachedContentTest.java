@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test CachedContent.
+ */
+public class CachedContentTest {
+
+    @Test
+    public void testOffHeap() throws Exception {
+        CachedContent content = new CachedContent(0, "text/html");
+        content.getCachedWriter().write("<html>hello wörld</html>");
+        content.flush();
+
+        // can't move content which is still being written
+        assertThrows(IllegalStateException.class, content::moveOffHeap);
+
+        content.close();
+        byte[] heapBytes = content.getContent();
+
+        content.moveOffHeap();
+        assertTrue(content.isOffHeap());
+        assertEquals(heapBytes.length, content.getContentLength());
+        assertArrayEquals(heapBytes, content.getContent());
+        assertEquals("<html>hello wörld</html>", content.getContentAsString());
+
+        // can be written more than once
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            content.writeTo(out);
+            assertArrayEquals(heapBytes, out.toByteArray());
+        }
+
+        // serializes as plain bytes
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(content);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized.toByteArray()))) {
+            CachedContent copy = (CachedContent) in.readObject();
+            assertFalse(copy.isOffHeap());
+            assertArrayEquals(heapBytes, copy.getContent());
+            assertEquals("text/html", copy.getContentType());
+        }
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        CachedContent small = content(100);
+        small.compress(1024);
+        assertFalse(small.hasGzippedContent());
+        assertEquals(0, small.getGzippedContentLength());
+
+        CachedContent content = content(10000);
+        assertThrows(IllegalStateException.class, () -> content.writeGzippedTo(new ByteArrayOutputStream()));
+
+        content.compress(1024);
+        assertTrue(content.hasGzippedContent());
+        assertTrue(content.getGzippedContentLength() < content.getContentLength());
+        assertArrayEquals(content.getContent(), gunzip(content));
+
+        // the compressed variant follows the content off-heap
+        content.moveOffHeap();
+        assertTrue(content.hasGzippedContent());
+        assertArrayEquals(content.getContent(), gunzip(content));
+    }
+
+    @Test
+    public void testOffHeapLimit() throws Exception {
+        // let buffers left over by other tests go first
+        System.gc();
+        Thread.sleep(100);
+        CachedContent.setOffHeapLimit(CachedContent.getOffHeapBytes() + 15000);
+        try {
+            CachedContent first = content(10000);
+            CachedContent second = content(10000);
+            assertTrue(first.moveOffHeap());
+
+            // over the limit, so kept on the heap
+            assertFalse(second.moveOffHeap());
+            assertFalse(second.isOffHeap());
+
+            // still so once a cache dropped the first, it may be read yet
+            LRUCacheImpl cache = new LRUCacheImpl("test", 1);
+            cache.put("first", first);
+            cache.put("other", content(100));
+            assertNull(cache.get("first"));
+            assertTrue(first.isOffHeap());
+            assertEquals(10000, first.getContentLength());
+            assertFalse(second.moveOffHeap());
+
+            // but no longer once its buffer is collected
+            first = null;
+            long giveUp = System.currentTimeMillis() + 60000;
+            while (!second.moveOffHeap() && System.currentTimeMillis() < giveUp) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertTrue(second.isOffHeap());
+            assertEquals(10000, second.getContentLength());
+        } finally {
+            CachedContent.setOffHeapLimit(Long.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void testETag() throws Exception {
+        CachedContent content = new CachedContent(0);
+        assertNull(content.getETag());
+        content.getCachedWriter().write("hello");
+        content.close();
+
+        CachedContent same = new CachedContent(0);
+        same.getCachedWriter().write("hello");
+        same.close();
+
+        CachedContent other = new CachedContent(0);
+        other.getCachedWriter().write("hello!");
+        other.close();
+
+        assertTrue(content.getETag().startsWith("\"") && content.getETag().endsWith("\""));
+        assertEquals(content.getETag(), same.getETag());
+        assertNotEquals(content.getETag(), other.getETag());
+        assertNotEquals(content.getETag(), content.getGzippedETag());
+    }
+
+    private static CachedContent content(int size) throws Exception {
+        CachedContent content = new CachedContent(size);
+        for (int i = 0; i < size; i++) {
+            content.getCachedWriter().write('a' + (i % 4));
+        }
+        content.close();
+        return content;
+    }
+
+    private static byte[] gunzip(CachedContent content) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        content.writeGzippedTo(compressed);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            return in.readAllBytes();
+        }
+    }
+
+}
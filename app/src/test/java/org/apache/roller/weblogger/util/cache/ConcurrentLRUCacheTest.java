@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test ConcurrentLRUCacheImpl.
+ */
+public class ConcurrentLRUCacheTest {
+
+    @Test
+    public void testPutGetRemove() {
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 100, 0, 4);
+
+        cache.put("key1", "string1");
+        cache.put("key2", "string2");
+        assertEquals("string1", cache.get("key1"));
+        assertEquals("string2", cache.get("key2"));
+        assertNull(cache.get("key3"));
+
+        cache.remove("key1");
+        assertNull(cache.get("key1"));
+
+        cache.clear();
+        assertNull(cache.get("key2"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLRU() {
+        // a single segment which fits in one eviction sample gives us
+        // strict LRU ordering
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 3, 0, 1);
+
+        cache.put("key1", "string1");
+        cache.put("key2", "string2");
+        cache.put("key3", "string3");
+
+        // accessing key1 and key2 will make key3 LRU
+        cache.get("key1");
+        cache.get("key2");
+
+        // adding a forth key will push out the LRU entry
+        cache.put("key4", "string4");
+        assertNull(cache.get("key3"));
+        assertNotNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+        assertNotNull(cache.get("key4"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testPerEntryTimeout() throws Exception {
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 100, 0, 4);
+
+        cache.put("short", "string1", 1);
+        cache.put("long", "string2", TimeUnit.MINUTES.toMillis(5));
+        cache.put("forever", "string3");
+
+        Thread.sleep(20);
+
+        assertNull(cache.get("short"));
+        assertEquals("string2", cache.get("long"));
+        assertEquals("string3", cache.get("forever"));
+    }
+
+    @Test
+    public void testSizeBoundUnderConcurrency() throws Exception {
+        final ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 64, 0, 8);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            pool.execute(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    String key = "key" + thread + "-" + i;
+                    cache.put(key, key);
+                    cache.get(key);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertTrue(cache.size() <= 64, "cache grew to " + cache.size());
+    }
+
+    @Test
+    public void testStats() {
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 100, 0, 4);
+
+        cache.put("key1", "string1");
+        cache.get("key1");
+        cache.get("key2");
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1.0, stats.get("hits"));
+        assertEquals(1.0, stats.get("misses"));
+        assertEquals(1.0, stats.get("puts"));
+        assertNotNull(stats.get("startTime"));
+        assertNotNull(stats.get("efficiency"));
+    }
+
+    @Test
+    public void testByteBudget() throws Exception {
+        // 3000 byte budget in a single segment, plenty of room for entries
+        ConcurrentLRUCacheImpl cache = new ConcurrentLRUCacheImpl("test", 100, 3000, 0, 1);
+
+        cache.put("page1", new LazyExpiringCacheEntry(content(1000)));
+        cache.put("page2", new LazyExpiringCacheEntry(content(1000)));
+        cache.put("feed1", content(500));
+        assertEquals(2500, cache.getBytes());
+
+        // make page1 the least recently used
+        cache.get("page2");
+        cache.get("feed1");
+
+        cache.put("page3", new LazyExpiringCacheEntry(content(1000)));
+        assertNull(cache.get("page1"));
+        assertEquals(2500, cache.getBytes());
+
+        // replacing an entry only counts the new size
+        cache.put("feed1", content(200));
+        assertEquals(2200, cache.getBytes());
+
+        // too big to fit at all, must not flush the rest of the cache
+        cache.put("huge", content(5000));
+        assertNull(cache.get("huge"));
+        assertEquals(2200, cache.getBytes());
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(2200L, stats.get("bytes"));
+        assertEquals(1000L, stats.get("evictedBytes"));
+        assertEquals(1.0, stats.get("rejects"));
+        assertTrue(((List<?>) stats.get("largestEntries")).get(0).toString().endsWith("=1000"));
+
+        cache.remove("page2");
+        assertEquals(1200, cache.getBytes());
+        cache.clear();
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testFactory() {
+        Map<String, String> props = new HashMap<>();
+        props.put("id", "cache.test");
+        props.put("size", "10");
+        props.put("timeout", "60");
+
+        Cache cache = new ConcurrentLRUCacheFactoryImpl().constructCache(props);
+        assertEquals("cache.test", cache.getId());
+        assertTrue(cache instanceof ConcurrentLRUCacheImpl);
+    }
+
+    private static CachedContent content(int size) throws Exception {
+        CachedContent content = new CachedContent(size);
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        content.getCachedWriter().write(chars);
+        content.close();
+        return content;
+    }
+
+}